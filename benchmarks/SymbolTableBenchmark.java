@@ -0,0 +1,110 @@
+   import mars.*;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Times assembly of programs with many labels, which is where symbol table lookups
+ * dominate: every branch target is looked up by name in pass 2.  It is kept outside
+ * the mars source tree so it is not part of the MARS jar.
+ * <p>
+ * Usage, from the MARS directory:<br>
+ * <tt>javac -cp . benchmarks/SymbolTableBenchmark.java</tt><br>
+ * <tt>java -cp .:benchmarks SymbolTableBenchmark [labels ...]</tt><br>
+ * For each count of labels (default 12500, 25000 and 50000) a program is generated
+ * having that many labels, each on a CBZ to another label chosen so that about half
+ * the branches are forward and half backward.  It is assembled a few times in this JVM
+ * and the best time printed.  The program uses only MIPSprogram's assembly methods,
+ * so the same class can be compiled against an older tree to compare.
+ *
+ * @see mars.assembler.SymbolTable
+ * @version October 2026
+ */
+
+    public class SymbolTableBenchmark {
+
+      private static final int[] DEFAULT_LABEL_COUNTS = { 12500, 25000, 50000 };
+      private static final int RUNS = 3;
+
+       public static void main(String[] args) throws Exception {
+         int[] labelCounts = DEFAULT_LABEL_COUNTS;
+         if (args.length > 0) {
+            labelCounts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+               labelCounts[i] = Integer.parseInt(args[i]);
+            }
+         }
+         Globals.initialize(false);
+         MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
+         assemble(writeProgram(1000)); // warm up
+         System.out.println("labels\tmilliseconds");
+         for (int i = 0; i < labelCounts.length; i++) {
+            File file = writeProgram(labelCounts[i]);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+               best = Math.min(best, assemble(file));
+            }
+            System.out.println(labelCounts[i] + "\t" + best);
+         }
+      }
+
+    // Assemble the given file and return the time it took, in milliseconds.
+       private static long assemble(File file) throws ProcessingException {
+         MIPSprogram program = new MIPSprogram();
+         ArrayList<String> filenames = new ArrayList<String>();
+         filenames.add(file.getPath());
+         long start = System.nanoTime();
+         ArrayList<?> programs = program.prepareFilesForAssembly(filenames, file.getPath(), null);
+         program.assemble(programs, true, false);
+         return (System.nanoTime() - start) / 1000000;
+      }
+
+    // Write a program with the given number of labels, one on each CBZ, to a temporary
+    // file.  Label i branches to label (i * 7919) % labels: 7919 is prime, so targets
+    // are spread over the whole program, before and after the branch.
+       private static File writeProgram(int labels) throws IOException {
+         File file = File.createTempFile("symbols" + labels + "_", ".s");
+         file.deleteOnExit();
+         PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+         try {
+            out.println("        .text");
+            for (int i = 0; i < labels; i++) {
+               out.println("L" + i + ":    CBZ X1, L" + (int) ((i * 7919L) % labels));
+            }
+            out.println("        ADDI X8, XZR, 10");
+            out.println("        SVC 0");
+         }
+         finally {
+            out.close();
+         }
+         return file;
+      }
+   }
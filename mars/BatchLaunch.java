@@ -0,0 +1,357 @@
+   package mars;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.util.*;
+   import java.io.*;
+   import java.util.*;
+   import java.util.concurrent.*;
+
+/*
+Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Headless batch runner for grading: assembles a program once, then runs it against
+ * every test in a directory and writes a report.  Each run starts from a copy of the
+ * memory and registers as they were right after assembly, in a SimulationContext of its
+ * own, with standard input read from the test and standard output captured.  Tests
+ * run one at a time in this JVM, in order of name; the simulator can hold only one
+ * installed context, so they are not run in parallel.
+ * <p>
+ * Usage: <tt>java mars.BatchLaunch [options] file1.s [file2.s ...] testdir</tt><br>
+ * The first file named is the main file.  Tests are found by name in testdir:<br>
+ * <tt>name.in</tt> -- standard input for the run (empty if missing)<br>
+ * <tt>name.args</tt> -- program arguments, separated by white space (optional)<br>
+ * <tt>name.expected</tt> -- expected standard output (optional)<br>
+ * Every name having a .in or .args file is a test.  Options:<br>
+ * <tt>&lt;n&gt;</tt> -- maximum count of steps to simulate in each run<br>
+ * <tt>np</tt> -- no pseudo-instructions allowed<br>
+ * <tt>sm</tt> -- start execution at statement labeled 'main'<br>
+ * <tt>we</tt> -- assembler warnings will be considered errors<br>
+ * <tt>report &lt;file&gt;</tt> -- write report to file, as JSON if its name ends in .json
+ * and as CSV otherwise.  Default is CSV to standard output.
+ * <p>
+ * For each test the report gives its name, how the run ended (completed, step limit or
+ * error), the exit code set by the program, whether the output matched the expected
+ * output (blank if there is none), the output itself and any error message.  The exit
+ * code of this command is 0 if every test having expected output passed, 1 if any
+ * failed, and 2 if the program could not be assembled or the arguments are wrong.
+ *
+ * @see SimulationContext
+ * @version October 2026
+ */
+
+    public class BatchLaunch {
+   
+      private ArrayList<String> filenameList = new ArrayList<String>();
+      private File testDirectory = null;
+      private String reportFilename = null;
+      private int maxSteps = -1;
+      private boolean pseudo = true;
+      private boolean startAtMain = false;
+      private boolean warningsAreErrors = false;
+      private MIPSprogram program = new MIPSprogram();
+   
+       public static void main(String[] args) {
+         System.exit(new BatchLaunch().launch(args));
+      }
+   
+    // Parse arguments, assemble, run tests and report.  Returns exit code.
+       private int launch(String[] args) {
+         if (!parseCommandArgs(args)) {
+            displayHelp();
+            return 2;
+         }
+         Globals.initialize(false);
+         MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
+         SimulationContext assembled = new SimulationContext();
+         try {
+            ErrorList warnings = assembled.run(
+                   new Callable<ErrorList>() {
+                      public ErrorList call() throws Exception {
+                        ArrayList<?> programs = program.prepareFilesForAssembly(filenameList,
+                                             filenameList.get(0), null);
+                        ErrorList warnings = program.assemble(programs, pseudo, warningsAreErrors);
+                        RegisterFile.initializeProgramCounter(startAtMain);
+                        return warnings;
+                     }
+                  });
+            if (warnings != null && warnings.warningsOccurred()) {
+               System.err.println(warnings.generateWarningReport());
+            }
+         } 
+             catch (ProcessingException pe) {
+               System.err.println(pe.errors().generateErrorAndWarningReport());
+               System.err.println("Processing terminated due to errors.");
+               return 2;
+            } 
+             catch (Exception e) {
+               System.err.println("Processing terminated: " + e);
+               return 2;
+            }
+         
+         String[] tests = findTests();
+         ArrayList<TestResult> results = new ArrayList<TestResult>();
+         boolean allPassed = true;
+         for (int i = 0; i < tests.length; i++) {
+            TestResult result;
+            try {
+               result = runTest(tests[i], assembled.fork());
+            } 
+                catch (Exception e) {
+                  result = new TestResult(tests[i]);
+                  result.status = "error";
+                  result.message = e.toString();
+               }
+            if (result.passed == Boolean.FALSE) {
+               allPassed = false;
+            }
+            results.add(result);
+         }
+         try {
+            writeReport(results);
+         } 
+             catch (IOException e) {
+               System.err.println("Unable to write report " + reportFilename + ": " + e);
+               return 2;
+            }
+         return allPassed ? 0 : 1;
+      }
+   
+    // Arguments may come in any order, as for MarsLaunch.  Returns false if there is
+    // something wrong with them.
+       private boolean parseCommandArgs(String[] args) {
+         for (int i = 0; i < args.length; i++) {
+            if (args[i].toLowerCase().equals("np")) {
+               pseudo = false;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("sm")) {
+               startAtMain = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("we")) {
+               warningsAreErrors = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("report") && i + 1 < args.length) {
+               reportFilename = args[++i];
+               continue;
+            }
+            File file = new File(args[i]);
+            if (file.isDirectory()) {
+               testDirectory = file;
+               continue;
+            }
+            if (file.exists()) {
+               filenameList.add(file.getAbsolutePath());
+               continue;
+            }
+            try {
+               maxSteps = Integer.decode(args[i]).intValue();
+               continue;
+            } 
+                catch (NumberFormatException nfe) {
+               }
+            System.err.println("Invalid argument: " + args[i]);
+            return false;
+         }
+         return filenameList.size() > 0 && testDirectory != null;
+      }
+   
+       private void displayHelp() {
+         PrintStream out = System.err;
+         out.println("Usage:  BatchLaunch [options] file1.s [file2.s ...] testdir");
+         out.println("  Assembles the files once, then runs the program for each test in testdir.");
+         out.println("  A test is named by its files: name.in (standard input), name.args (program");
+         out.println("  arguments) and name.expected (expected output), each optional but one of");
+         out.println("  .in and .args must be present.  Options:");
+         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate in each run.");
+         out.println("     np  -- No Pseudo-instructions allowed.");
+         out.println("     sm  -- Start execution at statement with global label main, if defined.");
+         out.println("     we  -- assembler Warnings will be considered Errors.");
+         out.println("  report <file>  -- write report to <file>, as JSON if its name ends in .json,");
+         out.println("                    otherwise as CSV.  Default is CSV to standard output.");
+         out.println("  Exit code is 0 if all tests with expected output passed, 1 if any failed,");
+         out.println("  2 on assembly error.");
+      }
+   
+    // Names of all tests in test directory, in sorted order.
+       private String[] findTests() {
+         TreeSet<String> names = new TreeSet<String>();
+         String[] files = testDirectory.list();
+         for (int i = 0; i < files.length; i++) {
+            if (files[i].endsWith(".in") || files[i].endsWith(".args")) {
+               names.add(files[i].substring(0, files[i].lastIndexOf('.')));
+            }
+         }
+         return names.toArray(new String[names.size()]);
+      }
+   
+    // Contents of the test file with given name and extension, or null if there is none.
+       private byte[] readTestFile(String name, String extension) throws IOException {
+         File file = new File(testDirectory, name + extension);
+         if (!file.isFile()) {
+            return null;
+         }
+         byte[] contents = new byte[(int) file.length()];
+         DataInputStream in = new DataInputStream(new FileInputStream(file));
+         try {
+            in.readFully(contents);
+         } 
+         finally {
+            in.close();
+         }
+         return contents;
+      }
+   
+       private void writeReport(ArrayList<TestResult> results) throws IOException {
+         boolean json = reportFilename != null && reportFilename.toLowerCase().endsWith(".json");
+         PrintStream out = (reportFilename == null) ? System.out 
+                           : new PrintStream(new FileOutputStream(reportFilename));
+         if (json) {
+            out.println("[");
+         } 
+         else {
+            out.println("test,status,exitcode,passed,output,message");
+         }
+         for (int i = 0; i < results.size(); i++) {
+            TestResult r = results.get(i);
+            String passed = (r.passed == null) ? "" : r.passed.toString();
+            if (json) {
+               out.println("  {\"test\": " + jsonString(r.name) + ", \"status\": " + jsonString(r.status) +
+                           ", \"exitcode\": " + r.exitCode + ", \"passed\": " + ((r.passed == null) ? "null" : passed) +
+                           ", \"output\": " + jsonString(r.output) + ", \"message\": " + jsonString(r.message) + 
+                           "}" + ((i < results.size() - 1) ? "," : ""));
+            } 
+            else {
+               out.println(csvField(r.name) + "," + csvField(r.status) + "," + r.exitCode + "," + passed + 
+                           "," + csvField(r.output) + "," + csvField(r.message));
+            }
+         }
+         if (json) {
+            out.println("]");
+         }
+         out.flush();
+         if (out != System.out) {
+            out.close();
+         }
+      }
+   
+       private static String csvField(String s) {
+         if (s == null) {
+            return "";
+         }
+         if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            return s;
+         }
+         return "\"" + s.replace("\"", "\"\"") + "\"";
+      }
+   
+       private static String jsonString(String s) {
+         if (s == null) {
+            return "null";
+         }
+         StringBuffer result = new StringBuffer(s.length() + 2);
+         result.append('"');
+         for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+               case '"':  result.append("\\\""); 
+                  break;
+               case '\\': result.append("\\\\"); 
+                  break;
+               case '\n': result.append("\\n"); 
+                  break;
+               case '\r': result.append("\\r"); 
+                  break;
+               case '\t': result.append("\\t"); 
+                  break;
+               default:
+                  if (c < 0x20) {
+                     result.append("\\u" + Binary.intToHexString(c).substring(6));
+                  } 
+                  else {
+                     result.append(c);
+                  }
+            }
+         }
+         result.append('"');
+         return result.toString();
+      }
+   
+    // Outcome of one test.
+       private static class TestResult {
+         String name;
+         String status = "completed";
+         int exitCode = 0;
+         Boolean passed = null;
+         String output = "";
+         String message = null;
+      
+          TestResult(String name) {
+            this.name = name;
+         }
+      }
+   
+    // Runs one test in the given context.  The test files are read before the context is
+    // installed, and the output checked after.
+       private TestResult runTest(String name, SimulationContext context) throws Exception {
+         byte[] input = readTestFile(name, ".in");
+         byte[] args = readTestFile(name, ".args");
+         byte[] expected = readTestFile(name, ".expected");
+         final InputStream in = new ByteArrayInputStream((input == null) ? new byte[0] : input);
+         final String programArguments = (args == null) ? null : new String(args).trim();
+         final ByteArrayOutputStream out = new ByteArrayOutputStream();
+         final TestResult result = new TestResult(name);
+         context.run(
+                new Callable<Object>() {
+                   public Object call() {
+                     SystemIO.setStandardStreams(in, new PrintStream(out, true));
+                     if (programArguments != null && programArguments.length() > 0) {
+                        new ProgramArgumentList(programArguments).storeProgramArguments();
+                     }
+                     try {
+                        if (!program.simulate(maxSteps)) {
+                           result.status = "step limit";
+                        }
+                     } 
+                         catch (ProcessingException pe) {
+                           result.status = "error";
+                           result.message = pe.errors().generateErrorReport().trim();
+                        }
+                     result.exitCode = Globals.exitCode;
+                     return null;
+                  }
+               });
+         result.output = out.toString();
+         if (expected != null) {
+            result.passed = Boolean.valueOf(result.output.equals(new String(expected)));
+         }
+         return result;
+      }
+   }
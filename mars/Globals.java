@@ -92,7 +92,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		/** Array of strings to display for ASCII codes in ASCII display of data segment. ASCII code 0-255 is array index. */
 		public static final String[] ASCII_TABLE = getAsciiStrings();
       /** MARS exit code -- useful with SYSCALL 17 when running from command line (not GUI) */
-      public static int exitCode = 0;
+      public static volatile int exitCode = 0;
    	
       public static boolean runSpeedPanelExists = false;
    	
@@ -6,6 +6,7 @@
    import mars.mips.hardware.*;
 	
    import java.util.*;
+   import java.util.concurrent.*;
    import java.io.*;
    import java.awt.event.*;
    import javax.swing.*;
@@ -58,6 +59,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ArrayList parsedList;
       private ArrayList machineList;
       private BackStepper backStepper;
+      private Memory assembledMemory;
       private SymbolTable localSymbolTable;
       private MacroPool macroPool;
       private ArrayList<SourceLine> sourceLineList;
@@ -234,6 +236,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return;
       }
    
+   /**
+    * Sets the source program to lines already read, such as a copy kept of a
+    * file included by several others.
+    * @param file String containing name of MIPS source code file.
+    * @param lines ArrayList of String, one per source line.  Not copied, so it must 
+    * not be changed afterward.
+    **/
+   
+       public void setSource(String file, ArrayList<?> lines) {
+         this.filename = file;
+         this.sourceList = lines;
+      }
+   
    /**
     * Tokenizes the MIPS source program. Program must have already been read from file.
     * @throws ProcessingException Will throw exception if errors occured while tokenizing.
@@ -268,11 +283,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             filenames.add(0, exceptionHandler);
             leadFilePosition = 1;
          }
+         ArrayList<MIPSprogram> preparees = new ArrayList<MIPSprogram>();
          for (int i=0; i<filenames.size(); i++) {
             String filename = (String) filenames.get(i);  
-            MIPSprogram preparee = (filename.equals(leadFilename)) ? this : new MIPSprogram();
-            preparee.readSource(filename);
-            preparee.tokenize();
+            preparees.add((filename.equals(leadFilename)) ? this : new MIPSprogram());
+         }
+         Tokenizer.clearIncludeCache();
+         try {
+            readAndTokenize(preparees, filenames);
+         } 
+         finally {
+            Tokenizer.clearIncludeCache();
+         }
+         for (int i=0; i<filenames.size(); i++) {
+            MIPSprogram preparee = preparees.get(i);
          	// I want "this" MIPSprogram to be the first in the list...except for exception handler
             if (preparee == this && MIPSprogramsToAssemble.size()>0) {
                MIPSprogramsToAssemble.add(leadFilePosition,preparee);
@@ -284,6 +308,62 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return MIPSprogramsToAssemble;
       }
    
+   // Read and tokenize each file into its MIPSprogram.  Files are independent of each
+   // other until assembly, so when there are several they are done in parallel, one
+   // thread per processor.  If any fail, the exception thrown is the one for the first
+   // such file in the list, as when they are done one at a time.
+       private static void readAndTokenize(ArrayList<MIPSprogram> preparees, ArrayList<?> filenames) throws ProcessingException {
+         int threads = Math.min(filenames.size(), Runtime.getRuntime().availableProcessors());
+         if (threads <= 1) {
+            for (int i=0; i<filenames.size(); i++) {
+               MIPSprogram preparee = preparees.get(i);
+               preparee.readSource((String) filenames.get(i));
+               preparee.tokenize();
+            }
+            return;
+         }
+         ExecutorService pool = Executors.newFixedThreadPool(threads);
+         try {
+            ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i=0; i<filenames.size(); i++) {
+               final MIPSprogram preparee = preparees.get(i);
+               final String filename = (String) filenames.get(i);
+               futures.add(pool.submit(
+                      new Callable<Object>() {
+                         public Object call() throws ProcessingException {
+                           preparee.readSource(filename);
+                           preparee.tokenize();
+                           return null;
+                        }
+                     }));
+            }
+            for (int i=0; i<futures.size(); i++) {
+               try {
+                  futures.get(i).get();
+               } 
+                   catch (ExecutionException e) {
+                     Throwable cause = e.getCause();
+                     if (cause instanceof ProcessingException) {
+                        throw (ProcessingException) cause;
+                     }
+                     if (cause instanceof Error) {
+                        throw (Error) cause;
+                     }
+                     throw (RuntimeException) cause;
+                  }
+                   catch (InterruptedException e) {
+                     Thread.currentThread().interrupt();
+                     ErrorList errors = new ErrorList();
+                     errors.add(new ErrorMessage((MIPSprogram)null,0,0,"interrupted while reading "+filenames.get(i)));
+                     throw new ProcessingException(errors);
+                  }
+            }
+         } 
+         finally {
+            pool.shutdownNow();
+         }
+      }
+   
    /**
     * Assembles the MIPS source program. All files comprising the program must have 
     * already been tokenized.  Assembler warnings are not considered errors.
@@ -314,12 +394,121 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public ErrorList assemble(ArrayList MIPSprogramsToAssemble, boolean extendedAssemblerEnabled,
               boolean warningsAreErrors) throws ProcessingException {
          this.backStepper = null;
+         this.assembledMemory = null;
          Assembler asm = new Assembler();
          this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
+         if (!asm.getErrorList().warningsOccurred()) {
+            AssemblyCache.store(MIPSprogramsToAssemble, MIPSprogramsToAssemble.indexOf(this), 
+                                this.machineList, extendedAssemblerEnabled);
+         }
          this.backStepper = new BackStepper();
          return asm.getErrorList();
       }
    
+   /**
+    * Looks in the assembly cache for the given list of files, already assembled with
+    * the current settings.  If found, it is loaded as by loadObject() and there is no
+    * need to prepare and assemble the files.  Otherwise, assemble() will put them in
+    * the cache once they are assembled.  The arguments are those that would be given to
+    * prepareFilesForAssembly() and assemble().
+    * @param filenames ArrayList containing the source file name(s) in no particular order.  Not changed.
+    * @param leadFilename String containing name of source file that needs to go first.
+    * @param exceptionHandler String containing name of exception handler source file, or null.
+    * @param extendedAssemblerEnabled true if pseudo instructions are permitted.
+    * @return ArrayList containing one MIPSprogram object for each file, as prepareFilesForAssembly()
+    * does, or null if not found in the cache.
+    **/
+    
+       public ArrayList<MIPSprogram> loadFromAssemblyCache(ArrayList<?> filenames, String leadFilename, String exceptionHandler,
+              boolean extendedAssemblerEnabled) {
+         if (!AssemblyCache.isEnabled()) {
+            return null;
+         }
+         // same order as prepareFilesForAssembly(): exception handler, lead file, the rest
+         ArrayList<String> orderedFilenames = new ArrayList<String>();
+         if (exceptionHandler != null && exceptionHandler.length() > 0) {
+            orderedFilenames.add(exceptionHandler);
+         }
+         if (filenames.contains(leadFilename)) {
+            orderedFilenames.add(leadFilename);
+         }
+         for (int i=0; i<filenames.size(); i++) {
+            if (!filenames.get(i).equals(leadFilename)) {
+               orderedFilenames.add((String) filenames.get(i));
+            }
+         }
+         String objectFilename = AssemblyCache.lookup(orderedFilenames, extendedAssemblerEnabled);
+         if (objectFilename == null) {
+            return null;
+         }
+         try {
+            return loadObject(objectFilename);
+         } 
+             catch (ProcessingException e) {
+               return null; 
+            }
+      }
+   
+   /**
+    * Loads a program from an object file written by writeObject(), in place of reading,
+    * tokenizing and assembling its source files.  Afterward memory and symbol tables are
+    * as assemble() would leave them, and the program may be simulated.
+    * @param objectFilename String containing name of object file.
+    * @throws ProcessingException Will throw exception if the object file cannot be loaded.
+    * @return ArrayList containing one MIPSprogram object for each source file of the
+    * program, as prepareFilesForAssembly() does.  This MIPSprogram is one of them.
+    **/
+    
+       public ArrayList<MIPSprogram> loadObject(String objectFilename) throws ProcessingException {
+         this.backStepper = null;
+         this.assembledMemory = null;
+         this.machineList = null;
+         ObjectFile objectFile = ObjectFile.load(objectFilename, this);
+         this.machineList = objectFile.getMachineList();
+         this.backStepper = new BackStepper();
+         return objectFile.getPrograms();
+      }
+   
+   /**
+    * Writes the program to an object file, which loadObject() can load later.  Must be
+    * called right after assemble(), before the program is simulated.
+    * @param MIPSprogramsToAssemble ArrayList of MIPSprogram objects that were assembled.
+    * @param objectFilename String containing name of object file to write.
+    * @throws ProcessingException Will throw exception if the object file cannot be written.
+    **/
+    
+       public void writeObject(ArrayList<?> MIPSprogramsToAssemble, String objectFilename) throws ProcessingException {
+         ObjectFile.write(objectFilename, MIPSprogramsToAssemble, MIPSprogramsToAssemble.indexOf(this), this.machineList);
+      }
+   
+   /**
+    * Takes a snapshot of memory for restoreAssembledMemory().  Must be called right after
+    * assemble() or loadObject(), before the program is simulated.  Not done by assemble()
+    * itself, so that programs that are never reset do not pay for the snapshot.
+    **/
+    
+       public void saveAssembledMemory() {
+         this.assembledMemory = Globals.memory.copy();
+      }
+   
+   /**
+    * Puts memory back the way it was right after this program was assembled, using the
+    * snapshot taken by saveAssembledMemory(), and starts a fresh BackStepper.  This is
+    * how Reset returns to the initial state without assembling again.  Registers are
+    * not affected.
+    * @return true if memory was restored, false if there is no snapshot since the
+    * program was last assembled.
+    **/
+    
+       public boolean restoreAssembledMemory() {
+         if (assembledMemory == null) {
+            return false;
+         }
+         Globals.memory.restore(assembledMemory);
+         this.backStepper = new BackStepper();
+         return true;
+      }
+   
    
    /**
     * Simulates execution of the MIPS program. Program must have already been assembled.
@@ -418,5 +607,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void setLocalMacroPool(MacroPool macroPool) {
          this.macroPool = macroPool;
       }
+   
+   /**
+    * Sets local symbol table for this program.  Normally it is created by tokenize();
+    * this is for programs loaded from an object file.
+    * @param localSymbolTable reference to SymbolTable
+    */   
+       public void setLocalSymbolTable(SymbolTable localSymbolTable) {
+         this.localSymbolTable = localSymbolTable;
+      }
     
    }  // MIPSprogram
@@ -2,7 +2,9 @@
    import mars.venus.*;
    import mars.util.*;
    import mars.mips.dump.*;
+   import mars.assembler.*;
    import mars.mips.hardware.*;
+   import mars.mips.instructions.SyscallProfile;
    import mars.simulator.*;
    import java.io.*;
    import java.util.*;
@@ -56,6 +58,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
    	  ascii  -- display memory or register contents interpreted as ASCII
    		   b  -- brief - do not display register/memory address along with contents<br>
+        cache  -- keep assembled programs in a cache directory, and load them from there<br>
+                  instead of assembling if their source files have not changed.  Option has<br>
+                  1 argument, e.g. <tt>cache &lt;dir&gt;</tt>.<br>
    		   d  -- print debugging statements<br>
            da  -- both a and d<br>
            db  -- MIPS delayed branching is enabled.<br>
@@ -65,6 +70,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   an address range (see <i>m-n</i> below).  Current supported <br>
                   segments are <tt>.text</tt> and <tt>.data</tt>.  Current supported dump formats <br>
                   are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
+        flush  -- when program output is written out: Newline (at each newline, the default),<br>
+                  Read (when the program reads input) or Exit (only when it stops).  Output<br>
+                  is always written before the program stops and when much is held back.<br>
+                  Option has 1 argument, e.g. <tt>flush Exit</tt>.<br>
             h  -- display help.  Use by itself and with no filename</br>
           hex  -- display memory or register contents in hexadecimal (default)<br>
            ic  -- display count of MIPS basic instructions 'executed'");
@@ -76,10 +85,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
            me  -- display MARS messages to standard err instead of standard out. Can separate via redirection.</br>
            nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
    		  np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
+          obj  -- write the assembled program to an object file.  Option has 1 argument, e.g.<br>
+                  <tt>obj &lt;file&gt;</tt>.  An object file may be given in place of source files,<br>
+                  and is then loaded without being assembled again.<br>
    		   p  -- Project mode - assemble all files in the same directory as given file.<br>
    	  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
            sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
           smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+           sp  -- display syscall profile: number of times each syscall service was invoked and<br>
+                  the total time those took, in microseconds<br>
            we  -- assembler Warnings will be considered Errors<br>
           <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
                   If 0, negative or not specified, there is no maximum.<br>
@@ -107,6 +121,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private boolean warningsAreErrors; // Whether assembler warnings should be considered errors.
       private boolean startAtMain; // Whether to start execution at statement labeled 'main' 
       private boolean countInstructions; // Whether to count and report number of instructions executed 
+      private boolean profileSyscalls; // Whether to count, time and report syscalls invoked
       private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
       private static final String rangeSeparator = "-";
       private static final int splashDuration = 2000; // time in MS to show splash screen
@@ -122,6 +137,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private int instructionCount;
       private PrintStream out; // stream for display of command line output
       private ArrayList dumpTriples = null; // each element holds 3 arguments for dump option
+      private String objectFilename; // write assembled program to this object file, if not null
+      private String assemblyCacheDirectory; // directory of cached object files, empty if none
+      private String outputFlushPolicy; // when program output is written out
+      private String memoryMappedDirectory; // directory of segment files, null if not mapping
+      private boolean keepMappedSegments; // map segment files without clearing them
       private ArrayList programArgumentList; // optional program args for MIPS program (becomes argc, argv)
       private int assembleErrorExitCode;  // MARS command exit code to return if assemble error occurs
       private int simulateErrorExitCode;// MARS command exit code to return if simulation error occurs
@@ -144,6 +164,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             warningsAreErrors = false;
             startAtMain = false;
             countInstructions = false;
+            profileSyscalls = false;
 				selfModifyingCode = false;
             instructionCount = 0;
             assembleErrorExitCode = 0;
@@ -151,6 +172,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             registerDisplayList = new ArrayList();
             memoryDisplayList = new ArrayList();
             filenameList = new ArrayList();
+            objectFilename = null;
+            assemblyCacheDirectory = "";
+            outputFlushPolicy = Settings.OUTPUT_FLUSH_ON_NEWLINE;
+            memoryMappedDirectory = null;
+            keepMappedSegments = false;
             MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
          	// do NOT use Globals.program for command line MARS -- it triggers 'backstep' log.
             code = new MIPSprogram();  
@@ -311,6 +337,54 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
                continue;
             } 
+            if (args[i].toLowerCase().equals("obj")) {
+               if (args.length <= (i+1)) {
+                  out.println("Obj command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  objectFilename = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("cache")) {
+               if (args.length <= (i+1)) {
+                  out.println("Cache command line argument requires a directory name.");
+                  argsOK = false;
+               } 
+               else {
+                  assemblyCacheDirectory = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("seg") || args[i].toLowerCase().equals("segload")) {
+               if (args.length <= (i+1)) {
+                  out.println("Seg and segload command line arguments require a directory name.");
+                  argsOK = false;
+               } 
+               else {
+                  keepMappedSegments = args[i].toLowerCase().equals("segload");
+                  memoryMappedDirectory = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("flush")) {
+               String policy = (args.length <= (i+1)) ? "" : args[++i];
+               if (policy.equalsIgnoreCase(Settings.OUTPUT_FLUSH_ON_NEWLINE)) {
+                  outputFlushPolicy = Settings.OUTPUT_FLUSH_ON_NEWLINE;
+               } 
+               else if (policy.equalsIgnoreCase(Settings.OUTPUT_FLUSH_ON_READ)) {
+                  outputFlushPolicy = Settings.OUTPUT_FLUSH_ON_READ;
+               } 
+               else if (policy.equalsIgnoreCase(Settings.OUTPUT_FLUSH_ON_EXIT)) {
+                  outputFlushPolicy = Settings.OUTPUT_FLUSH_ON_EXIT;
+               } 
+               else {
+                  out.println("Flush command line argument requires Newline, Read or Exit.");
+                  argsOK = false;
+               }
+               continue;
+            } 
             if (args[i].toLowerCase().equals("mc")) {
                String configName = args[++i];
                MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -403,6 +477,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                countInstructions = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("sp")) {
+               profileSyscalls = true;
+               continue;
+            }
          
          
             if (args[i].indexOf("$") == 0) {
@@ -467,6 +545,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          try {
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+            Globals.getSettings().setStringSettingNonPersistent(Settings.ASSEMBLY_CACHE_DIRECTORY, assemblyCacheDirectory);
+            Globals.getSettings().setStringSettingNonPersistent(Settings.OUTPUT_FLUSH_POLICY, outputFlushPolicy);
+            if (memoryMappedDirectory != null) {
+               Globals.getSettings().setStringSettingNonPersistent(Settings.MEMORY_BACKEND, Settings.MEMORY_BACKEND_FLAT);
+               Globals.getSettings().setStringSettingNonPersistent(Settings.MEMORY_MAPPED_DIRECTORY, memoryMappedDirectory);
+               Globals.getSettings().setBooleanSettingNonPersistent(Settings.MEMORY_MAPPED_KEEP_CONTENTS, keepMappedSegments);
+            }
             File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
             ArrayList filesToAssemble;
             if (assembleProject) { 
@@ -492,18 +577,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             else {
                filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
             }
-            if (Globals.debug) {
-               out.println("--------  TOKENIZING BEGINS  -----------");
+            ArrayList MIPSprogramsToAssemble;
+            if (ObjectFile.isObjectFile(mainFile.getPath())) {
+               // already assembled, so load it as is
+               MIPSprogramsToAssemble = code.loadObject(mainFile.getPath());
+            } 
+            else {
+               MIPSprogramsToAssemble = 
+                      code.loadFromAssemblyCache(filesToAssemble, mainFile.getAbsolutePath(), null, pseudo);
             }
-            ArrayList MIPSprogramsToAssemble = 
+            if (MIPSprogramsToAssemble == null) {
+               if (Globals.debug) {
+                  out.println("--------  TOKENIZING BEGINS  -----------");
+               }
+               MIPSprogramsToAssemble = 
                       code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
-            if (Globals.debug) {
-               out.println("--------  ASSEMBLY BEGINS  -----------");
+               if (Globals.debug) {
+                  out.println("--------  ASSEMBLY BEGINS  -----------");
+               }
+            	// Added logic to check for warnings and print if any. DPS 11/28/06
+               ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
+               if (warnings != null && warnings.warningsOccurred()) {
+                  out.println(warnings.generateWarningReport());
+               }
             }
-         	// Added logic to check for warnings and print if any. DPS 11/28/06
-            ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
-            if (warnings != null && warnings.warningsOccurred()) {
-               out.println(warnings.generateWarningReport());
+            if (objectFilename != null) {
+               code.writeObject(MIPSprogramsToAssemble, objectFilename);
             }
             RegisterFile.initializeProgramCounter(startAtMain); // DPS 3/9/09
             if (simulate) {
@@ -560,8 +659,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
       /////////////////////////////////////////////////////////////////
    	// Required for counting instructions executed, if that option is specified.
-   	// DPS 19 July 2012
+   	// DPS 19 July 2012.  Also starts the syscall profile, if that option is specified.
       private void establishObserver() { 
+         if (profileSyscalls) {
+            Globals.instructionSet.resetSyscallProfile();
+            Globals.instructionSet.setSyscallTiming(true);
+         }
          if (countInstructions) {
             Observer instructionCounter = 
                new Observer() {
@@ -592,12 +695,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    	     		   	
    	//////////////////////////////////////////////////////////////////////
-   	// Displays any specified runtime properties. Initially just instruction count 
+   	// Displays any specified runtime properties: instruction count and syscall profile
    	// DPS 19 July 2012  	
       private void displayMiscellaneousPostMortem() {
          if (countInstructions) {
             out.println("\n"+instructionCount);
          }
+         if (profileSyscalls) {
+            out.println("\nSyscall\tName\tCalls\tMicroseconds");
+            ArrayList<SyscallProfile> profile = Globals.instructionSet.getSyscallProfile();
+            for (int i = 0; i < profile.size(); i++) {
+               SyscallProfile entry = profile.get(i);
+               out.println(entry.getNumber()+"\t"+entry.getName()+"\t"+entry.getCount()+"\t"+entry.getTime()/1000);
+            }
+         }
       }
    
    	     		   	
@@ -792,6 +903,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
          out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
          out.println("      b  -- brief - do not display register/memory address along with contents");
+         out.println("  cache <dir> -- keep assembled programs in directory <dir>, and load them from");
+         out.println("            there instead of assembling if their source files have not changed.");
          out.println("      d  -- display MARS debugging statements");
          out.println("     db  -- MIPS delayed branching is enabled");
          out.println("    dec  -- display memory or register contents in decimal.");
@@ -801,6 +914,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("            Segment and format are case-sensitive and possible values are:");
          out.println("            <segment> = "+segments);
          out.println("            <format> = "+formats);
+         out.println("  flush <when> -- when program output is written out: Newline (at each newline,");
+         out.println("            the default), Read (when the program reads input) or Exit (only when");
+         out.println("            it stops).  Output is also written whenever much is held back.");
          out.println("      h  -- display this help.  Use by itself with no filename.");
          out.println("    hex  -- display memory or register contents in hexadecimal (default)");
          out.println("     ic  -- display count of MIPS basic instructions 'executed'");
@@ -813,10 +929,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("            Can separate messages from program output using redirection");
          out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
          out.println("     np  -- use of pseudo instructions and formats not permitted");
+         out.println("    obj <file> -- write the assembled program to object file <file>.  An object");
+         out.println("            file may be given in place of source files, and is then loaded");
+         out.println("            without being assembled again.");
          out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
          out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
+         out.println("    seg <dir> -- keep the data, kernel data, stack and MMIO segments in files");
+         out.println("            data.seg, kdata.seg, stack.seg and mmio.seg in directory <dir>.");
+         out.println("            The files are cleared first and left holding the segments afterward.");
+         out.println(" segload <dir> -- same as seg, but the segments start with what the files in");
+         out.println("            <dir> already hold, such as those left by an earlier run.  Data");
+         out.println("            declared by the program is still stored over it.");
          out.println("     sm  -- start execution at statement with global label main, if defined");
          out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+         out.println("     sp  -- display syscall profile: number of times each syscall service was invoked");
+         out.println("            and the total time those took, in microseconds");
          out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
          out.println("            If 0, negative or not specified, there is no maximum.");
          out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
@@ -47,7 +47,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private MIPSprogram sourceMIPSprogram;
       private String source, basicAssemblyStatement, machineStatement;
       private TokenList originalTokenList, strippedTokenList;
-      private BasicStatementList basicStatementList;
       private int[] operands;
       private int numOperands;
       private Instruction instruction;
@@ -55,7 +54,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private int sourceLine;
       private int binaryStatement;
       private boolean altered;
+      private boolean jumpOperandShifted;
       private static final String invalidOperator = "<INVALID>";
+      private static final int DISPLAY_CACHE_SIZE = 4096;
+      // Printable forms of basic statements are built from the operands only when asked
+      // for, which is mostly by the Text Segment window, and the most recently used are
+      // kept here instead of in every statement.  See getBasicStatementList().
+      private static final Map<ProgramStatement,BasicStatementList> displayCache = 
+         Collections.synchronizedMap(
+            new LinkedHashMap<ProgramStatement,BasicStatementList>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<ProgramStatement,BasicStatementList> eldest) {
+                  return size() > DISPLAY_CACHE_SIZE;
+               }
+            });
     
     //////////////////////////////////////////////////////////////////////////////////
     /**
@@ -81,13 +92,42 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          this.textAddress = textAddress;
          this.sourceLine = sourceLine;
          this.basicAssemblyStatement = null;
-         this.basicStatementList = new BasicStatementList();
          this.machineStatement = null;
          this.binaryStatement = 0;  // nop, or sll X0, X0, 0  (32 bits of 0's)
          this.altered = false;
       }
    
    
+    //////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Constructor for ProgramStatement loaded from an object file.  The statement was
+     * assembled when the object file was written, so its operand values and binary code
+     * are given here instead of being built from tokens.  The original token list is
+     * not kept in object files and will be null.
+     * @param sourceMIPSprogram The MIPSprogram object that contains this statement
+     * @param source The corresponding MIPS source statement.
+     * @param strippedTokenList List of Token objects with all but operators and operands removed.
+     * @param inst The Instruction object for this statement's operator.
+     * @param textAddress The Text Segment address in memory where the binary machine code for this statement
+     * is stored.
+     * @param sourceLine The line number of the source statement.
+     * @param operands The operand values, as built by buildBasicStatementFromBasicInstruction().
+     * @param numOperands The number of operand values given.
+     * @param binaryStatement The 32-bit machine code.
+     **/
+       public ProgramStatement(MIPSprogram sourceMIPSprogram, String source, TokenList strippedTokenList,
+                            Instruction inst, int textAddress, int sourceLine,
+                            int[] operands, int numOperands, int binaryStatement) {
+         this(sourceMIPSprogram, source, null, strippedTokenList, inst, textAddress, sourceLine);
+         System.arraycopy(operands, 0, this.operands, 0, numOperands);
+         this.numOperands = numOperands;
+         this.binaryStatement = binaryStatement;
+         // buildMachineStatementFromBasicStatement() leaves a jump target as a word address
+         this.jumpOperandShifted = inst instanceof BasicInstruction &&
+            ((BasicInstruction) inst).getInstructionFormat() == BasicInstructionFormat.J_FORMAT;
+      }
+   
+   
     //////////////////////////////////////////////////////////////////////////////////
     /**
      * Constructor for ProgramStatement used only for writing a binary machine 
@@ -143,7 +183,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             this.numOperands = numOps;
          }
          this.altered = false;
-         this.basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement, instr, operands, numOperands);
       }
    	
    
@@ -151,15 +190,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     /**
      * Given specification of BasicInstruction for this operator, build the
      * corresponding assembly statement in basic assembly format (e.g. substituting
-     * register numbers for register names, replacing labels by values).
+     * register numbers for register names, replacing labels by values).  Only the
+     * operand values are kept; the printable statement is generated from them when
+     * it is asked for.
      * @param errors The list of assembly errors encountered so far.  May add to it here.
      **/
        public void buildBasicStatementFromBasicInstruction(ErrorList errors) {
-         Token token = strippedTokenList.get(0);
-         String basicStatementElement = token.getValue()+" ";;
-         String basic = basicStatementElement;
-         basicStatementList.addString(basicStatementElement); // the operator
-         TokenTypes tokenType, nextTokenType;
+         Token token;
+         TokenTypes tokenType;
          String tokenValue;
          int registerNumber;
          this.numOperands = 0;
@@ -168,9 +206,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             tokenType = token.getType();
             tokenValue = token.getValue();
             if (tokenType == TokenTypes.REGISTER_NUMBER) {
-               basicStatementElement = tokenValue;
-               basic += basicStatementElement;
-               basicStatementList.addString(basicStatementElement);
                try {
                   registerNumber = RegisterFile.getUserRegister(tokenValue).getNumber();
                } 
@@ -183,9 +218,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             } 
             else if (tokenType == TokenTypes.REGISTER_NAME) {
                registerNumber = RegisterFile.getNumber(tokenValue);
-               basicStatementElement = "X" + registerNumber;
-               basic += basicStatementElement;
-               basicStatementList.addString(basicStatementElement);
                if (registerNumber < 0) {
                     // should never happen; should be caught before now...
                   errors.add(new ErrorMessage(this.sourceMIPSprogram, token.getSourceLine(), token.getStartPos(),"invalid register name"));
@@ -195,9 +227,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             } 
             else if (tokenType == TokenTypes.FP_REGISTER_NAME) {
                registerNumber = Coprocessor1.getRegisterNumber(tokenValue);
-               basicStatementElement = "S" + registerNumber;
-               basic += basicStatementElement;
-               basicStatementList.addString(basicStatementElement);
                if (registerNumber < 0) {
                     // should never happen; should be caught before now...
                   errors.add(new ErrorMessage(this.sourceMIPSprogram, token.getSourceLine(), token.getStartPos(),"invalid FPU register name"));
@@ -212,7 +241,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                                    "Symbol \""+tokenValue+"\" not found in symbol table."));
                   return;
                }
-               boolean absoluteAddress = true; // (used below)
             	 //////////////////////////////////////////////////////////////////////
             	 // added code 12-20-2004. If basic instruction with I_BRANCH format, then translate
             	 // address from absolute to relative and shift left 2. 
@@ -236,17 +264,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   if (format ==  BasicInstructionFormat.I_BRANCH_FORMAT) {
                      //address = (address - (this.textAddress+((Globals.getSettings().getDelayedBranchingEnabled())? Instruction.INSTRUCTION_LENGTH : 0))) >> 2;
                      address = (address - (this.textAddress+Instruction.INSTRUCTION_LENGTH)) >> 2;
-                     absoluteAddress = false;
                   }
                }
             	 //////////////////////////////////////////////////////////////////////
-               basic += address;
-               if (absoluteAddress) { // record as address if absolute, value if relative
-                  basicStatementList.addAddress(address);
-               } 
-               else {
-                  basicStatementList.addValue(address);
-               }
                this.operands[this.numOperands++] = address;
             } 
             else if (tokenType == TokenTypes.INTEGER_5 || tokenType == TokenTypes.INTEGER_16 ||
@@ -295,30 +315,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             *        }
             **************************  END DPS 3-July-2008 COMMENTS *******************************/
             
-               basic += tempNumeric;
-               basicStatementList.addValue(tempNumeric);  
                this.operands[this.numOperands++] = tempNumeric;
                 ///// End modification 1/7/05 KENV   ///////////////////////////////////////////
             } 
-            else {
-               basicStatementElement = tokenValue;
-               basic += basicStatementElement;
-               basicStatementList.addString(basicStatementElement);
-            }
-            // add separator if not at end of token list AND neither current nor 
-            // next token is a parenthesis
-            if ((i < strippedTokenList.size()-1)) {
-               nextTokenType = strippedTokenList.get(i+1).getType();
-               if (tokenType != TokenTypes.LEFT_PAREN  &&  tokenType != TokenTypes.RIGHT_PAREN  &&
-                   nextTokenType != TokenTypes.LEFT_PAREN && nextTokenType != TokenTypes.RIGHT_PAREN)
-               {
-                  basicStatementElement = ",";
-                  basic += basicStatementElement;
-                  basicStatementList.addString(basicStatementElement);
-               }
-            }
          }
-         this.basicAssemblyStatement = basic;
       } //buildBasicStatementFromBasicInstruction()
     
     
@@ -330,10 +330,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @param errors The list of assembly errors encountered so far.  May add to it here.
      **/
        public void buildMachineStatementFromBasicStatement(ErrorList errors) {
-      
+         BasicInstruction basicInstruction;
          try {
-               //mask indicates bit positions for 'f'irst, 's'econd, 't'hird operand
-            this.machineStatement = ((BasicInstruction)instruction).getOperationMask();
+               //fixed bits come from the mask; operand fields are filled in below
+            basicInstruction = (BasicInstruction)instruction;
          }   // This means the pseudo-instruction expansion generated another
              // pseudo-instruction (expansion must be to all basic instructions).
          	 // This is an error on the part of the pseudo-instruction author.
@@ -342,7 +342,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                           "INTERNAL ERROR: pseudo-instruction expansion contained a pseudo-instruction"));
                return;            
             }        
-         BasicInstructionFormat format = ((BasicInstruction)instruction).getInstructionFormat();
+         this.machineStatement = null;
+         this.binaryStatement = basicInstruction.getOpcodeMatch();
+         BasicInstructionFormat format = basicInstruction.getInstructionFormat();
       
          if (format == BasicInstructionFormat.J_FORMAT) {
             if ((this.textAddress & 0xF0000000) != (this.operands[0] & 0xF0000000)) {
@@ -354,19 +356,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
             // Note the  bit shift to make this a word address.
             this.operands[0] = this.operands[0] >>> 2;
-            this.insertBinaryCode(this.operands[0], Instruction.operandMask[0], errors);          
+            this.jumpOperandShifted = true;
+            this.insertBinaryCode(basicInstruction, this.operands[0], 0, errors);          
          } 
-         else if (format == BasicInstructionFormat.I_BRANCH_FORMAT) { 
-            for (int i=0; i<this.numOperands-1; i++) {
-               this.insertBinaryCode(this.operands[i], Instruction.operandMask[i], errors);
-            }
-            this.insertBinaryCode(operands[this.numOperands-1], Instruction.operandMask[this.numOperands-1], errors);         
-         } 
-         else {  // R_FORMAT or I_FORMAT
+         else {  // R_FORMAT, I_FORMAT or I_BRANCH_FORMAT
             for (int i=0; i<this.numOperands; i++)
-               this.insertBinaryCode(this.operands[i], Instruction.operandMask[i], errors);
+               this.insertBinaryCode(basicInstruction, this.operands[i], i, errors);
          }
-         this.binaryStatement = Binary.binaryStringToInt(this.machineStatement);
          return;
       } // buildMachineStatementFromBasicStatement(
         
@@ -382,10 +378,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
         // a crude attempt at string formatting.  Where's C when you need it?
          String blanks = "                               ";
          String result = "["+this.textAddress+"]";
-         if (this.basicAssemblyStatement != null) {
-            int firstSpace = this.basicAssemblyStatement.indexOf(" ");
-            result += blanks.substring(0, 16-result.length()) + this.basicAssemblyStatement.substring(0,firstSpace);
-            result += blanks.substring(0, 24-result.length()) + this.basicAssemblyStatement.substring(firstSpace+1);;
+         String basic = this.getBasicAssemblyStatement();
+         if (basic != null) {
+            int firstSpace = basic.indexOf(" ");
+            result += blanks.substring(0, 16-result.length()) + basic.substring(0,firstSpace);
+            result += blanks.substring(0, 24-result.length()) + basic.substring(firstSpace+1);;
          } 
          else {
             result += blanks.substring(0, 16 - result.length()) + "0x" + Integer.toString(this.binaryStatement, 16);
@@ -396,11 +393,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             // result += operands[i] + " ";
                result += Integer.toString(operands[i], 16) + " ";
          }
-         if (this.machineStatement != null) {
-            result += "["+Binary.binaryStringToHexString(this.machineStatement)+"]";
-            result += "  "+this.machineStatement.substring(0,6)+"|" + this.machineStatement.substring(6,11)+"|"+
-               this.machineStatement.substring(11,16)+"|" + this.machineStatement.substring(16,21)+"|"+
-               this.machineStatement.substring(21,26)+"|" + this.machineStatement.substring(26,32);
+         String machine = this.getMachineStatement();
+         if (machine != null) {
+            result += "["+Binary.binaryStringToHexString(machine)+"]";
+            result += "  "+machine.substring(0,6)+"|" + machine.substring(6,11)+"|"+
+               machine.substring(11,16)+"|" + machine.substring(16,21)+"|"+
+               machine.substring(21,26)+"|" + machine.substring(26,32);
          }
          return result;
       } // toString()
@@ -484,11 +482,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     /**
      * Produces Basic Assembly statement for this MIPS source statement.
      * All numeric values are in decimal.
-     * @return The Basic Assembly statement.
+     * @return The Basic Assembly statement, or null if there is no source for it.
      **/
      
        public String getBasicAssemblyStatement() {
-         return basicAssemblyStatement;
+         if (basicAssemblyStatement != null || strippedTokenList == null) {
+            return basicAssemblyStatement;
+         }
+         return getBasicStatementList().toString(mars.venus.NumberDisplayBaseChooser.DECIMAL, 
+                                                 mars.venus.NumberDisplayBaseChooser.DECIMAL);
       }
     
     /**
@@ -499,16 +501,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @return The Basic Assembly statement.
      **/   
        public String getPrintableBasicAssemblyStatement() {
-         return basicStatementList.toString();
+         return getBasicStatementList().toString();
       }
    	 
     /**
      * Produces binary machine statement as 32 character string, all '0' and '1' chars.
+     * Unless one was assigned by setMachineStatement(), it is generated from the
+     * binary statement each time it is asked for, so only callers that display it
+     * pay for the String.
      * @return The String version of 32-bit binary machine code.
      **/
      
        public String getMachineStatement() {
-         return machineStatement;
+         if (machineStatement != null) {
+            return machineStatement;
+         }
+         return (instruction == null) ? null : Binary.intToBinaryString(binaryStatement);
       }
     
     /**
@@ -568,28 +576,105 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return -1;
          }
       }
+    /**
+     * Produces the number of operand values for this statement.
+     * @return Number of operands required by this statement's operator, 0 if none.
+     **/
+       public int getNumOperands() {
+         return numOperands;
+      }
    
     
     //////////////////////////////////////////////////////////////////////////////
-    //  Given operand (register or integer) and mask character ('f', 's', or 't'),
-    //  generate the correct sequence of bits and replace the mask with them.
-       private void insertBinaryCode(int value, char mask, ErrorList errors) {
-         int startPos = this.machineStatement.indexOf(mask);
-         int endPos = this.machineStatement.lastIndexOf(mask);
-         if (startPos == -1 || endPos == -1) { // should NEVER occur
+    //  Given operand (register or integer) and its position, place its bits into the
+    //  field the instruction's mask reserves for it ('f', 's', or 't').  As with the
+    //  String version this replaced, bits that do not fit the field are dropped.
+       private void insertBinaryCode(BasicInstruction basicInstruction, int value, int operand, ErrorList errors) {
+         int shift = basicInstruction.getOperandShift(operand);
+         if (shift < 0) { // should NEVER occur
             errors.add(new ErrorMessage(this.sourceMIPSprogram,this.sourceLine,0,
                    "INTERNAL ERROR: mismatch in number of operands in statement vs mask"));
             return;
          }
-         String bitString = Binary.intToBinaryString(value, endPos-startPos+1);
-         String state = this.machineStatement.substring(0, startPos) + bitString;
-         if (endPos < this.machineStatement.length()-1)
-            state = state + this.machineStatement.substring(endPos+1);
-         this.machineStatement = state;
+         this.binaryStatement |= (value & basicInstruction.getOperandFieldMask(operand)) << shift;
          return;
       } // insertBinaryCode()
    
    
+    //////////////////////////////////////////////////////////////////////////////
+    //  Get the basic statement list for this statement, from the display cache if it
+    //  was built recently.  Statements assembled from source build it from their
+    //  stripped token list and operands; the others from their binary code.
+       private BasicStatementList getBasicStatementList() {
+         BasicStatementList statementList = displayCache.get(this);
+         if (statementList == null) {
+            if (strippedTokenList == null) {
+               statementList = buildBasicStatementListFromBinaryCode(binaryStatement, 
+                                  (operands == null) ? null : (BasicInstruction) instruction, operands, numOperands);
+            } 
+            else {
+               statementList = buildBasicStatementListFromOperands();
+            }
+            displayCache.put(this, statementList);
+         }
+         return statementList;
+      }
+   
+   
+    //////////////////////////////////////////////////////////////////////////////
+    //  Build the basic statement list for a statement assembled from source.  This follows
+    //  the stripped token list the way buildBasicStatementFromBasicInstruction() does, taking
+    //  register numbers, addresses and values from the operands it produced.  A jump target
+    //  was shifted to a word address when the machine code was built, so it is shifted back.
+       private BasicStatementList buildBasicStatementListFromOperands() {
+         BasicStatementList statementList = new BasicStatementList();
+         statementList.addString(strippedTokenList.get(0).getValue()+" "); // the operator
+         boolean branch = instruction instanceof BasicInstruction &&
+            ((BasicInstruction)instruction).getInstructionFormat() == BasicInstructionFormat.I_BRANCH_FORMAT;
+         int operand = 0;
+         for (int i=1; i<strippedTokenList.size(); i++) {
+            Token token = strippedTokenList.get(i);
+            TokenTypes tokenType = token.getType();
+            if (tokenType == TokenTypes.REGISTER_NUMBER) {
+               statementList.addString(token.getValue());
+               operand++;
+            } 
+            else if (tokenType == TokenTypes.REGISTER_NAME) {
+               statementList.addString("X" + operands[operand++]);
+            } 
+            else if (tokenType == TokenTypes.FP_REGISTER_NAME) {
+               statementList.addString("S" + operands[operand++]);
+            } 
+            else if (tokenType == TokenTypes.IDENTIFIER || tokenType == TokenTypes.INTEGER_5 || 
+                     tokenType == TokenTypes.INTEGER_16 || tokenType == TokenTypes.INTEGER_16U || 
+                     tokenType == TokenTypes.INTEGER_32) {
+               int value = (operand == 0 && jumpOperandShifted) ? operands[0] << 2 : operands[operand];
+               operand++;
+               if (tokenType == TokenTypes.IDENTIFIER && !branch) { // address if absolute, value if relative
+                  statementList.addAddress(value);
+               } 
+               else {
+                  statementList.addValue(value);
+               }
+            } 
+            else {
+               statementList.addString(token.getValue());
+            }
+            // add separator if not at end of token list AND neither current nor 
+            // next token is a parenthesis
+            if ((i < strippedTokenList.size()-1)) {
+               TokenTypes nextTokenType = strippedTokenList.get(i+1).getType();
+               if (tokenType != TokenTypes.LEFT_PAREN  &&  tokenType != TokenTypes.RIGHT_PAREN  &&
+                   nextTokenType != TokenTypes.LEFT_PAREN && nextTokenType != TokenTypes.RIGHT_PAREN)
+               {
+                  statementList.addString(",");
+               }
+            }
+         }
+         return statementList;
+      } // buildBasicStatementListFromOperands()
+   
+   
     //////////////////////////////////////////////////////////////////////////////
    /*
     *   Given a model BasicInstruction and the assembled (not source) operand array for a statement, 
@@ -667,7 +752,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 //
    	 //  DPS 29-July-2010
    	 
-       private class BasicStatementList {
+       private static class BasicStatementList {
       
          private ArrayList list;
       
@@ -690,7 +775,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           public String toString() {
             int addressBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_ADDRESSES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
             int valueBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_VALUES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
-         	
+            return toString(addressBase, valueBase);
+         }
+      
+          String toString(int addressBase, int valueBase) {
             StringBuffer result = new StringBuffer();
             for (int i=0; i<list.size(); i++) {
                ListElement e = (ListElement) list.get(i);
@@ -715,7 +803,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return result.toString();
          }
       	
-          private class ListElement {
+          private static class ListElement {
             int type;
             String sValue;
             int iValue;
@@ -112,6 +112,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     /** Flag to determine whether a program can write binary code to the text or data segment and
         execute that code.  */
       public static final int SELF_MODIFYING_CODE_ENABLED = 20;	
+    /** Flag to determine whether segments that the flat memory backend maps to files start
+        with what the files already hold, such as segment images left by an earlier run,
+        instead of being cleared.  */
+      public static final int MEMORY_MAPPED_KEEP_CONTENTS = 21;
    
       // NOTE: key sequence must match up with labels above which are used for array indexes!
       private static String[] booleanSettingsKeys = {"ExtendedAssembler", "BareMachine", "AssembleOnOpen", "AssembleAll",
@@ -120,7 +124,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          												"WarningsAreErrors", "ProgramArguments", "DataSegmentHighlighting",
          												"RegistersHighlighting", "StartAtMain", "EditorCurrentLineHighlighting",
          												"PopupInstructionGuidance", "PopupSyscallInput", "GenericTextEditor", 
-         												"AutoIndent", "SelfModifyingCode" };
+         												"AutoIndent", "SelfModifyingCode", "MemoryMappedKeepContents" };
    
       /** Last resort default values for boolean settings; will use only  if neither
    	 *  the Preferences nor the properties file work. If you wish to change them, 
@@ -129,7 +133,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
       public static boolean[] defaultBooleanSettingsValues = { // match the above list by position
                                               true, false, false, false, false, true, true, false, false, 
-         												 true, false, false, true, true, false, true, true, false, false, true, false };
+         												 true, false, false, true, true, false, true, true, false, false, true, false, false };
    
       // STRING SETTINGS.  Each array position has associated name.
    	/** Current specified exception handler file (a MIPS assembly source file) */
@@ -146,15 +150,35 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int EDITOR_TAB_SIZE = 5;
    	/** Number of letters to be matched by editor's instruction guide before popup generated (if popup enabled) */
       public static final int EDITOR_POPUP_PREFIX_LENGTH = 6;
+   	/** Storage used for data, stack, kernel data and MMIO segments: MEMORY_BACKEND_BLOCK_TABLE or MEMORY_BACKEND_FLAT */
+      public static final int MEMORY_BACKEND = 7;
+   	/** Directory in which the flat memory backend maps segments to files, empty for none */
+      public static final int MEMORY_MAPPED_DIRECTORY = 8;
+   	/** Directory in which assembled programs are cached as object files, empty for no cache */
+      public static final int ASSEMBLY_CACHE_DIRECTORY = 9;
+   	/** When output of a program run from the command line is written out: OUTPUT_FLUSH_ON_NEWLINE, OUTPUT_FLUSH_ON_READ or OUTPUT_FLUSH_ON_EXIT */
+      public static final int OUTPUT_FLUSH_POLICY = 10;
    	// Match the above by position.
-      private static final String[] stringSettingsKeys = { "ExceptionHandler", "TextColumnOrder", "LabelSortState", "MemoryConfiguration", "CaretBlinkRate", "EditorTabSize", "EditorPopupPrefixLength" };
+      private static final String[] stringSettingsKeys = { "ExceptionHandler", "TextColumnOrder", "LabelSortState", "MemoryConfiguration", "CaretBlinkRate", "EditorTabSize", "EditorPopupPrefixLength",
+                                                          "MemoryBackend", "MemoryMappedDirectory", "AssemblyCacheDirectory", "OutputFlushPolicy" };
+   
+   	/** Value of MEMORY_BACKEND setting for the original table of lazily allocated 4K blocks (the default) */
+      public static final String MEMORY_BACKEND_BLOCK_TABLE = "BlockTable";
+   	/** Value of MEMORY_BACKEND setting for one flat ByteBuffer per segment */
+      public static final String MEMORY_BACKEND_FLAT = "Flat";
+   	/** Value of OUTPUT_FLUSH_POLICY setting to write output at each newline, before reading input and at exit (the default) */
+      public static final String OUTPUT_FLUSH_ON_NEWLINE = "Newline";
+   	/** Value of OUTPUT_FLUSH_POLICY setting to write output when the buffer fills, before reading input and at exit */
+      public static final String OUTPUT_FLUSH_ON_READ = "Read";
+   	/** Value of OUTPUT_FLUSH_POLICY setting to write output only when the buffer fills and at exit */
+      public static final String OUTPUT_FLUSH_ON_EXIT = "Exit";
    
       /** Last resort default values for String settings; 
    	 *  will use only if neither the Preferences nor the properties file work.
    	 *  If you wish to change, do so before instantiating the Settings object.
    	 *  Must match key by list position.
    	 */
-      private static String[] defaultStringSettingsValues = { "", "0 1 2 3 4", "0", "", "500", "8", "2" }; 
+      private static String[] defaultStringSettingsValues = { "", "0 1 2 3 4", "0", "", "500", "8", "2", MEMORY_BACKEND_BLOCK_TABLE, "", "", OUTPUT_FLUSH_ON_NEWLINE }; 
    
    
       // FONT SETTINGS.  Each array position has associated name.
@@ -627,6 +651,38 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return stringSettingsValues[MEMORY_CONFIGURATION];
       }
    		
+   	/**
+   	 * Returns the memory backend used for data-like segments.
+   	 * @return MEMORY_BACKEND_BLOCK_TABLE or MEMORY_BACKEND_FLAT
+   	 */
+       public String getMemoryBackend() {
+         return stringSettingsValues[MEMORY_BACKEND];
+      }
+   		
+   	/**
+   	 * Returns directory in which the flat memory backend maps segments to files.
+   	 * @return String pathname of directory, empty if segments are not file-backed.
+   	 */
+       public String getMemoryMappedDirectory() {
+         return stringSettingsValues[MEMORY_MAPPED_DIRECTORY];
+      }
+   		
+   	/**
+   	 * Returns directory in which assembled programs are cached as object files.
+   	 * @return String pathname of directory, empty if assembled programs are not cached.
+   	 */
+       public String getAssemblyCacheDirectory() {
+         return stringSettingsValues[ASSEMBLY_CACHE_DIRECTORY];
+      }
+   		
+   	/**
+   	 * Returns when output of a program run from the command line is written out.
+   	 * @return OUTPUT_FLUSH_ON_NEWLINE, OUTPUT_FLUSH_ON_READ or OUTPUT_FLUSH_ON_EXIT
+   	 */
+       public String getOutputFlushPolicy() {
+         return stringSettingsValues[OUTPUT_FLUSH_POLICY];
+      }
+   		
    	/**
    	 * Current editor font.  Retained for compatibility but replaced  
    	 * by: getFontByPosition(Settings.EDITOR_FONT)
@@ -995,6 +1051,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
     
    	
+      /**
+   	 * Temporarily establish String setting.  This setting will NOT be written to persisent
+   	 * store!  Currently this is used only when running MARS from the command line 
+   	 * @param id setting identifier.  These are defined for this class as static final int.
+   	 * @param value String value for the setting.
+   	 */		
+       public void setStringSettingNonPersistent(int id, String value) {
+         if (id >=0 && id < stringSettingsValues.length) {
+            stringSettingsValues[id] = value;
+         } 
+         else {
+            throw new IllegalArgumentException("Invalid String setting ID");
+         } 
+      }
+    
+   	
       /**
    	 * Establish setting for whether delayed branching will be applied during
    	 * MIPS program execution.  This setting will NOT be written to persisent
@@ -1030,6 +1102,43 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          setStringSetting(MEMORY_CONFIGURATION, config);
       }
       
+   	 /**
+   	  * Store the memory backend used for data-like segments.  Takes effect the next
+   	  * time memory is cleared (normally at assembly).
+   	  * @param backend MEMORY_BACKEND_BLOCK_TABLE or MEMORY_BACKEND_FLAT
+   	  */
+   	  
+       public void setMemoryBackend(String backend) {
+         setStringSetting(MEMORY_BACKEND, backend);
+      }
+      
+   	 /**
+   	  * Store the directory in which the flat memory backend maps segments to files.
+   	  * @param directory pathname of directory, empty for no file-backed segments
+   	  */
+   	  
+       public void setMemoryMappedDirectory(String directory) {
+         setStringSetting(MEMORY_MAPPED_DIRECTORY, directory);
+      }
+      
+   	 /**
+   	  * Store the directory in which assembled programs are cached as object files.
+   	  * @param directory pathname of directory, empty for no cache
+   	  */
+   	  
+       public void setAssemblyCacheDirectory(String directory) {
+         setStringSetting(ASSEMBLY_CACHE_DIRECTORY, directory);
+      }
+      
+   	 /**
+   	  * Store when output of a program run from the command line is written out.
+   	  * @param policy OUTPUT_FLUSH_ON_NEWLINE, OUTPUT_FLUSH_ON_READ or OUTPUT_FLUSH_ON_EXIT
+   	  */
+   	  
+       public void setOutputFlushPolicy(String policy) {
+         setStringSetting(OUTPUT_FLUSH_POLICY, policy);
+      }
+      
    	/**
    	 * Set the caret blinking rate in milliseconds.  Rate of 0 means no blinking.
    	 * @param rate blink rate in milliseconds
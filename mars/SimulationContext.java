@@ -0,0 +1,283 @@
+   package mars;
+   import mars.assembler.*;
+   import mars.simulator.*;
+   import mars.mips.hardware.*;
+   import mars.util.*;
+   import java.util.*;
+   import java.util.concurrent.*;
+
+/*
+Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Saved state of one simulated machine, which can be swapped in and out of the
+ * simulator: memory and heap address, registers and flags, coprocessor registers,
+ * pending delayed branch, syscall file descriptors, symbol table, current program and
+ * exit code, plus optionally its own Settings.  The simulator keeps all of these in
+ * statics (Globals.memory, RegisterFile and so on), which remain the API everything
+ * else uses.  run() installs a context's state into the statics for the duration of a
+ * task and saves it back afterwards, putting the previous context's state back.
+ * <p>
+ * This is a snapshot and restore facility, not isolation.  The Simulator singleton,
+ * memory and register observers, and Settings (unless a context is given its own) are
+ * shared by every context.  Only one context can be installed at a time, so run() is
+ * serialized across threads and programs in different contexts never run concurrently.
+ * <p>
+ * The statics at startup, which is what the IDE and command-mode MARS work on, are the
+ * default context.  Further contexts start out with empty memory and reset registers.
+ * Do not switch contexts while the IDE is simulating, since the default context is
+ * then in use without being installed through run().
+ *
+ * @version October 2026
+ */
+
+    public class SimulationContext {
+   
+      private static final Object switchLock = new Object();
+      private static final SimulationContext defaultContext = new SimulationContext();
+      private static volatile SimulationContext current = defaultContext;
+   
+      private Memory memory;
+      private int heapAddress;
+      private MIPSprogram program;
+      private SymbolTable symbolTable;
+      private Settings settings;
+      private volatile int exitCode;
+      private int[] registers;
+      private int[] coprocessor0;
+      private int[] coprocessor1;
+      private int[] delayedBranch;
+      private Object files;
+   
+   /**
+    * Create a new context with empty memory, reset registers and the shared Settings.
+    */
+       public SimulationContext() {
+         this(null);
+      }
+   
+   /**
+    * Create a new context with empty memory, reset registers and its own Settings.
+    * Settings changed through its non-persistent setters affect only this context.
+    * @param settings Settings to use while this context is installed, or null to
+    * use those of the context that is current when it is installed.
+    */
+       public SimulationContext(Settings settings) {
+         this.settings = settings;
+      }
+   
+   /**
+    * Get the default context, whose state is in the statics unless another context is
+    * installed.
+    * @return the default SimulationContext
+    */
+       public static SimulationContext getDefault() {
+         return defaultContext;
+      }
+   
+   /**
+    * Get the context that is currently installed.
+    * @return the current SimulationContext, the default one if run() is not in progress.
+    */
+       public static SimulationContext getCurrent() {
+         return current;
+      }
+   
+   /**
+    * Install this context, perform the given task and put the previous context back.
+    * Blocks while another context is installed by a different thread.  While the task
+    * runs, Globals.memory, RegisterFile, SystemIO and the rest refer to this context.
+    * Calls may be nested, for this or other contexts.
+    * @param task the work to do, for instance assembling and simulating a MIPSprogram.
+    * @return the value returned by the task.
+    * @throws Exception whatever the task throws, typically ProcessingException.
+    */
+       public <T> T run(Callable<T> task) throws Exception {
+         synchronized (switchLock) {
+            SimulationContext previous = current;
+            if (previous != this) {
+               previous.save();
+               install();
+               current = this;
+            }
+            try {
+               return task.call();
+            } 
+            finally {
+               if (previous != this) {
+                  save();
+                  previous.install();
+                  current = previous;
+               }
+            }
+         }
+      }
+   
+   /**
+    * Create a new context in the same state as this one, for instance to run an
+    * assembled program several times without assembling it again.  The new context
+    * gets a copy of this one's memory and registers and shares its program, symbol
+    * table and Settings.  Files opened by this context are not carried over; the new
+    * one starts with just the standard streams.
+    * @return the new SimulationContext
+    */
+       public SimulationContext fork() {
+         synchronized (switchLock) {
+            if (current == this) {
+               save();
+            }
+            SimulationContext copy = new SimulationContext(settings);
+            if (memory != null) {
+               copy.memory = memory.copy();
+               copy.heapAddress = heapAddress;
+            }
+            copy.program = program;
+            copy.symbolTable = symbolTable;
+            copy.exitCode = exitCode;
+            copy.registers = registers;
+            copy.coprocessor0 = coprocessor0;
+            copy.coprocessor1 = coprocessor1;
+            copy.delayedBranch = delayedBranch;
+            return copy;
+         }
+      }
+   
+   /**
+    * Assemble the given source files into this context's memory, and set its program
+    * counter to the starting address.  The first file is the main file.
+    * @param program MIPSprogram to hold the assembled program.
+    * @param filenames the source files to assemble.
+    * @param extendedAssemblerEnabled true if pseudo-instructions are permitted.
+    * @param warningsAreErrors true if assembler warnings are to be treated as errors.
+    * @return ErrorList containing nothing or only warnings.
+    * @throws ProcessingException if the files cannot be read or assembled.
+    */
+       public ErrorList assemble(final MIPSprogram program, final ArrayList<String> filenames,
+              final boolean extendedAssemblerEnabled, final boolean warningsAreErrors) throws ProcessingException {
+         return runProcessing(
+                new Callable<ErrorList>() {
+                   public ErrorList call() throws ProcessingException {
+                     ArrayList<?> programs = program.prepareFilesForAssembly(new ArrayList<String>(filenames),
+                                          filenames.get(0), null);
+                     ErrorList warnings = program.assemble(programs, extendedAssemblerEnabled, warningsAreErrors);
+                     RegisterFile.initializeProgramCounter(Globals.getSettings().getBooleanSetting(Settings.START_AT_MAIN));
+                     return warnings;
+                  }
+               });
+      }
+   
+   /**
+    * Simulate the given program in this context, from its current program counter.
+    * The program must already have been assembled in this context.
+    * @param program the assembled MIPSprogram.
+    * @param maxSteps maximum number of steps to simulate, -1 for no maximum.
+    * @return true if execution completed, false if the step limit was reached.
+    * @throws ProcessingException if a runtime exception occurs.
+    */
+       public boolean simulate(final MIPSprogram program, final int maxSteps) throws ProcessingException {
+         Boolean done = runProcessing(
+                new Callable<Boolean>() {
+                   public Boolean call() throws ProcessingException {
+                     return Boolean.valueOf(program.simulate(maxSteps));
+                  }
+               });
+         return done.booleanValue();
+      }
+   
+   /**
+    * Get the memory of this context.  Do not use it while another context is installed
+    * unless the simulator is not running anywhere.
+    * @return Memory of this context, null if it has never been installed.
+    */
+       public Memory getMemory() {
+         return memory;
+      }
+   
+   /**
+    * Get the exit code set by this context's program, as by Globals.exitCode.
+    * @return exit code, 0 if none was set.
+    */
+       public int getExitCode() {
+         return (current == this) ? Globals.exitCode : exitCode;
+      }
+   
+    // run() with the exception narrowed back down to ProcessingException.
+       private <T> T runProcessing(Callable<T> task) throws ProcessingException {
+         try {
+            return run(task);
+         } 
+             catch (ProcessingException pe) {
+               throw pe;
+            } 
+             catch (RuntimeException re) {
+               throw re;
+            } 
+             catch (Exception e) {
+               throw new RuntimeException(e);
+            }
+      }
+   
+    // Copy state out of the statics into this context.
+       private void save() {
+         memory = Globals.memory;
+         heapAddress = Memory.heapAddress;
+         program = Globals.program;
+         symbolTable = Globals.symbolTable;
+         settings = Globals.settings;
+         exitCode = Globals.exitCode;
+         registers = RegisterFile.saveState();
+         coprocessor0 = Coprocessor0.saveState();
+         coprocessor1 = Coprocessor1.saveState();
+         delayedBranch = DelayedBranch.saveState();
+         files = SystemIO.saveFileState();
+      }
+   
+    // Copy state of this context into the statics.  A context that has never been
+    // installed gets new memory and symbol table and reset registers.
+       private void install() {
+         if (memory == null) {
+            memory = Memory.createInstance(); // sets heap address to heap base
+            symbolTable = new SymbolTable("global");
+         } 
+         else {
+            Memory.heapAddress = heapAddress;
+         }
+         Globals.memory = memory;
+         Globals.program = program;
+         Globals.symbolTable = symbolTable;
+         if (settings != null) {
+            Globals.settings = settings;
+         }
+         Globals.exitCode = exitCode;
+         RegisterFile.restoreState(registers);
+         Coprocessor0.restoreState(coprocessor0);
+         Coprocessor1.restoreState(coprocessor1);
+         DelayedBranch.restoreState(delayedBranch);
+         SystemIO.restoreFileState(files);
+      }
+   }
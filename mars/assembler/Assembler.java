@@ -441,14 +441,12 @@
             //                }
                for (int i = macro.getFromLine() + 1; i < macro.getToLine(); i++) {
                  
-                  String substituted = macro.getSubstitutedLine(i, tokens, counter, errors);
-                  TokenList tokenList2 = fileCurrentlyBeingAssembled.getTokenizer().tokenizeLine(
-                     i, substituted, errors);
+                  TokenList tokenList2 = macro.getSubstitutedTokens(i, tokens, counter, errors, 
+                     fileCurrentlyBeingAssembled.getTokenizer());
                
-                  // If token list getProcessedLine() is not empty, then .eqv was performed and it contains the modified source.
+                  // The processed line is the substituted source, after .eqv if that was performed.
                	// Put it into the line to be parsed, so it will be displayed properly in text segment display. DPS 23 Jan 2013
-                  if (tokenList2.getProcessedLine().length() > 0)
-                     substituted = tokenList2.getProcessedLine();
+                  String substituted = tokenList2.getProcessedLine();
                
                   // recursively parse lines of expanded macro
                   ArrayList<ProgramStatement> statements = parseLine(tokenList2, "<" + (i-macro.getFromLine()+macro.getOriginalFromLine()) + "> "
@@ -0,0 +1,144 @@
+   package mars.assembler;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.security.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * On-disk cache of assembled programs, kept as object files in the directory named
+ * by the AssemblyCacheDirectory setting.  Nothing is cached if it is empty.
+ * <p>
+ * An object file is found by a key that is a SHA-256 hash of everything that goes
+ * into assembly: the object file version, the instruction set, the memory
+ * configuration, the settings the assembler looks at, and the names and contents of
+ * the files to assemble, in assembly order.  Files brought in by .include are not
+ * known until the program is tokenized, so they are not part of the key; instead the
+ * object file records the hash of every source file and is used only if all of them
+ * still match (see ObjectFile.isCurrent()).  A program is put in the cache only if it
+ * assembled without errors or warnings, so loading it from the cache leaves nothing
+ * to report.
+ *
+ * @see ObjectFile
+ * @version October 2026
+ */
+
+    public class AssemblyCache {
+   /** File name extension of object files in the cache */
+      public static final String EXTENSION = ".aobj";
+
+   /**
+    * Determine whether the cache is in use.
+    * @return true if the AssemblyCacheDirectory setting names a directory.
+    */
+       public static boolean isEnabled() {
+         String directory = Globals.getSettings().getAssemblyCacheDirectory();
+         return directory != null && directory.length() > 0;
+      }
+
+   /**
+    * Find the up to date object file for a program in the cache.
+    * @param filenames ArrayList of String, names of files to assemble in assembly order.
+    * @param extendedAssemblerEnabled whether pseudo instructions will be permitted.
+    * @return name of object file, or null if the cache is not in use or has none.
+    */
+       public static String lookup(ArrayList<String> filenames, boolean extendedAssemblerEnabled) {
+         if (!isEnabled()) {
+            return null;
+         }
+         try {
+            File file = getFile(filenames, extendedAssemblerEnabled);
+            return (file.isFile() && ObjectFile.isCurrent(file.getPath())) ? file.getPath() : null;
+         }
+             catch (IOException e) {
+               return null;
+            }
+      }
+
+   /**
+    * Put a program that was just assembled into the cache.  Nothing is done if the
+    * cache is not in use.  Failure to write the cache is not an error; the program
+    * will simply be assembled again next time.
+    * @param programs ArrayList of MIPSprogram that were assembled, in assembly order.
+    * @param leadIndex position in programs of the one that represents the whole program.
+    * @param machineList ArrayList of ProgramStatement produced by the assembler.
+    * @param extendedAssemblerEnabled whether pseudo instructions were permitted.
+    */
+       public static void store(ArrayList<?> programs, int leadIndex, ArrayList<?> machineList,
+                                boolean extendedAssemblerEnabled) {
+         if (!isEnabled()) {
+            return;
+         }
+         ArrayList<String> filenames = new ArrayList<String>();
+         for (int i = 0; i < programs.size(); i++) {
+            filenames.add(((MIPSprogram) programs.get(i)).getFilename());
+         }
+         File temporary = null;
+         try {
+            File file = getFile(filenames, extendedAssemblerEnabled);
+            file.getParentFile().mkdirs();
+            // written under another name then renamed, so no one sees a partial file
+            temporary = File.createTempFile("mars", ".tmp", file.getParentFile());
+            ObjectFile.write(temporary.getPath(), programs, leadIndex, machineList);
+            file.delete();
+            if (temporary.renameTo(file)) {
+               temporary = null;
+            }
+         }
+             catch (IOException e) { }
+             catch (ProcessingException e) { }
+         finally {
+            if (temporary != null) {
+               temporary.delete();
+            }
+         }
+      }
+
+    // Object file in the cache directory for this program.
+       private static File getFile(ArrayList<String> filenames, boolean extendedAssemblerEnabled) throws IOException {
+         MessageDigest digest = ObjectFile.newDigest();
+         Settings settings = Globals.getSettings();
+         StringBuffer description = new StringBuffer();
+         description.append(ObjectFile.VERSION).append('\n');
+         description.append(ObjectFile.getInstructionSetFingerprint()).append('\n');
+         description.append(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier()).append('\n');
+         description.append(extendedAssemblerEnabled).append(' ');
+         description.append(settings.getBooleanSetting(Settings.BARE_MACHINE_ENABLED)).append(' ');
+         description.append(settings.getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED)).append('\n');
+         for (int i = 0; i < filenames.size(); i++) {
+            String filename = filenames.get(i);
+            description.append(new File(filename).getAbsolutePath()).append('\n');
+            description.append(ObjectFile.hashFile(filename)).append('\n');
+         }
+         digest.update(description.toString().getBytes("UTF-8"));
+         return new File(settings.getAssemblyCacheDirectory(), ObjectFile.toHex(digest.digest()) + EXTENSION);
+      }
+   }
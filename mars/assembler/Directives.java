@@ -1,6 +1,8 @@
    package mars.assembler;
 
    import java.util.ArrayList;
+   import java.util.HashMap;
+   import java.util.Locale;
 
 /*
 Copyright (c) 2003-2012,  Pete Sanderson and Kenneth Vollmar
@@ -43,6 +45,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     public final class Directives {
    
       private static ArrayList directiveList = new ArrayList();
+      // Directives by lower case name, for matchDirective().
+      private static HashMap<String,Directives> directiveIndex = new HashMap<String,Directives>();
       public static final Directives DATA   = new Directives(".data", "Subsequent items stored in Data segment at next available address");
       public static final Directives TEXT   = new Directives(".text", "Subsequent items (instructions) stored in Text segment at next available address");
       public static final Directives WORD   = new Directives(".word", "Store the listed value(s) as 32 bit words on word boundary");
@@ -82,6 +86,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          this.descriptor  = name;
          this.description = description;
          directiveList.add(this);
+         directiveIndex.put(name.toLowerCase(Locale.ROOT), this);
       }
    
    /**
@@ -92,14 +97,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
     
        public static Directives matchDirective(String str) {
-         Directives match;
-         for (int i=0; i<directiveList.size(); i++) {
-            match = (Directives) directiveList.get(i);
-            if (str.equalsIgnoreCase(match.descriptor)) {
-               return match;
-            }
-         }
-         return null;
+         return directiveIndex.get(str.toLowerCase(Locale.ROOT));
       }
    
    
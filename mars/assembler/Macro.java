@@ -56,6 +56,13 @@ public class Macro {
  * arguments like <code>%arg</code> will be substituted by macro expansion
  */
    private ArrayList<String> args;
+/**
+ * tokens of each line of macro body, tokenized once and copied by each expansion.
+ * {@link #NO_TEMPLATE} marks lines that have to be tokenized again every time.
+ * @see #getSubstitutedTokens(int, TokenList, long, ErrorList, Tokenizer)
+ */
+   private TokenList[] bodyTemplates;
+   private static final TokenList NO_TEMPLATE = new TokenList();
 
    public Macro() {
       name = "";
@@ -156,6 +163,44 @@ public class Macro {
  */
 
    public String getSubstitutedLine(int line, TokenList args, long counter, ErrorList errors) {
+      return substituteLine(line, args, counter, errors, null);
+   }
+
+/**
+ * Same as {@link #getSubstitutedLine(int, TokenList, long, ErrorList)} but produces
+ * the tokens of the substituted line, as tokenizing it would.  Lines of the macro body
+ * are tokenized once, on first expansion, and later expansions copy those tokens,
+ * putting in the substitutes and moving the tokens after them.  Where that cannot be
+ * relied on to give the same tokens, such as when an argument would not be read
+ * back as a single token or an <code>.eqv</code> symbol is involved, the substituted
+ * line is tokenized as before.
+ * 
+ * @param line
+ *            source line number in macro definition to be substituted
+ * @param args
+ * @param counter
+ *            unique macro expansion id
+ * @param errors
+ * @param tokenizer
+ *            tokenizer of the program containing this macro
+ * @return tokens of <code>line</code>-th line of source code, with substituted
+ *         arguments.  Its processed line is the substituted source.
+ */
+   public TokenList getSubstitutedTokens(int line, TokenList args, long counter, ErrorList errors, Tokenizer tokenizer) {
+      String[] substitutes = new String[((TokenList) program.getTokenList().get(line - 1)).size()];
+      String s = substituteLine(line, args, counter, errors, substitutes);
+      TokenList tokens = expandTemplate(getBodyTemplate(line, tokenizer), substitutes, s, tokenizer);
+      if (tokens == null) {
+         tokens = tokenizer.tokenizeLine(line, s, errors);
+         if (tokens.getProcessedLine().length() == 0)
+            tokens.setProcessedLine(s);
+      }
+      return tokens;
+   }
+
+// Does the work of getSubstitutedLine().  If substitutes is not null, the value put in
+// place of each token is recorded at that token's position.
+   private String substituteLine(int line, TokenList args, long counter, ErrorList errors, String[] substitutes) {
       TokenList tokens = (TokenList) program.getTokenList().get(line - 1);
       String s = program.getSourceLine(line);
    
@@ -177,15 +222,121 @@ public class Macro {
                   token.getStartPos(), "Unknown macro parameter"));
             } 
             s = replaceToken(s, token, substitute);
+            if (substitutes != null)
+               substitutes[i] = substitute;
          } 
          else if (tokenIsMacroLabel(token.getValue())){
             String substitute = token.getValue()+"_M"+counter;
             s=replaceToken(s, token, substitute); 
+            if (substitutes != null)
+               substitutes[i] = substitute;
          }
       }
       return s;
    }
 
+// Template for given line of macro body, created on first use.  It is the line's tokens
+// when the line is such that substituting into its source text only ever replaces the
+// token being substituted: no .eqv substitution was made or is defined in it, and each
+// parameter or label appears in the text first where its token is.  A +/- token right
+// after a parameter or label is also excluded, since whether the sign is read as part
+// of a number depends on the type of the token before it.
+   private TokenList getBodyTemplate(int line, Tokenizer tokenizer) {
+      if (bodyTemplates == null)
+         bodyTemplates = new TokenList[Math.max(toLine - fromLine - 1, 0)];
+      int index = line - fromLine - 1;
+      if (index < 0 || index >= bodyTemplates.length)
+         return NO_TEMPLATE;
+      if (bodyTemplates[index] != null)
+         return bodyTemplates[index];
+      bodyTemplates[index] = NO_TEMPLATE;
+      TokenList tokens = (TokenList) program.getTokenList().get(line - 1);
+      String s = program.getSourceLine(line);
+      ErrorList lexicalErrors = new ErrorList();
+      TokenList template = tokenizer.tokenizeLine(line, s, lexicalErrors, false);
+      if (s.length() == 0 || lexicalErrors.errorsOccurred() || template.size() != tokens.size())
+         return NO_TEMPLATE;
+      boolean previousSubstituted = false;
+      for (int i = 0; i < template.size(); i++) {
+         Token token = template.get(i);
+         String value = token.getValue();
+         if (!value.equals(tokens.get(i).getValue()) || 
+             (token.getType() == TokenTypes.DIRECTIVE && Directives.matchDirective(value) == Directives.EQV))
+            return NO_TEMPLATE;
+         if (previousSubstituted && (value.charAt(0) == '+' || value.charAt(0) == '-'))
+            return NO_TEMPLATE;
+         previousSubstituted = tokenIsMacroParameter(value, true) || tokenIsMacroLabel(value);
+         if (previousSubstituted && s.indexOf(value) != token.getStartPos() - 1)
+            return NO_TEMPLATE;
+      }
+      bodyTemplates[index] = template;
+      return template;
+   }
+
+// Copy the template tokens, putting in the substitutes.  Returns null if the template
+// cannot be used for this expansion and the substituted line must be tokenized instead.
+   private TokenList expandTemplate(TokenList template, String[] substitutes, String substitutedLine, Tokenizer tokenizer) {
+      if (template == NO_TEMPLATE)
+         return null;
+      TokenList tokens = new TokenList();
+      TokenTypes previousType = null;
+      int shift = 0;
+      for (int i = 0; i < template.size(); i++) {
+         Token token = template.get(i);
+         String value = token.getValue();
+         TokenTypes type = token.getType();
+         int startPos = token.getStartPos() + shift;
+         if (substitutes[i] != null && !substitutes[i].equals(value)) {
+            shift += substitutes[i].length() - value.length();
+            value = substitutes[i];
+            if (!isSingleToken(value, previousType))
+               return null;
+            type = TokenTypes.matchTokenType(value);
+            if (type == TokenTypes.ERROR)
+               return null;
+         }
+         if (type == TokenTypes.IDENTIFIER && tokenizer.isEquivalent(value))
+            return null;
+         tokens.add(new Token(type, value, token.getSourceMIPSprogram(), token.getSourceLine(), startPos));
+         previousType = type;
+      }
+      tokens.setProcessedLine(substitutedLine);
+      return tokens;
+   }
+
+// Whether the tokenizer would read value as one token, equal to value, where it follows
+// a token of given type (null if first on the line).  Anything containing delimiters or
+// starting a character literal is rejected outright.
+   private static boolean isSingleToken(String value, TokenTypes previousType) {
+      if (value.length() == 0 || value.charAt(0) == '\'')
+         return false;
+      if (value.charAt(0) == '"') {
+         for (int i = 1; i < value.length(); i++) {
+            if (value.charAt(i) == '"' && value.charAt(i - 1) != '\\')
+               return i == value.length() - 1;
+         }
+         return false;
+      }
+      for (int i = 0; i < value.length(); i++) {
+         switch (value.charAt(i)) {
+            case '/' : case '#' : case ' ' : case '\t' : case ',' : case ':' :
+            case '[' : case ']' : case '(' : case ')' : case '"' : case '\'' :
+               return false;
+            case '+' :
+            case '-' : // a sign of a number, or the sign of an E-notation exponent
+               if (i == 0 && value.length() > 1 && Character.isDigit(value.charAt(1)) && previousType != TokenTypes.IDENTIFIER)
+                  break;
+               if (i > 0 && i + 1 < value.length() && Character.isDigit(value.charAt(i + 1)) &&
+                   (value.charAt(i - 1) == 'e' || value.charAt(i - 1) == 'E'))
+                  break;
+               return false;
+            default :
+               break;
+         }
+      }
+      return true;
+   }
+
 
 /**
  * returns true if <code>value</code> is name of a label defined in this macro's body.
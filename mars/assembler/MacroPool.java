@@ -1,6 +1,7 @@
    package mars.assembler;
 
    import java.util.ArrayList;
+   import java.util.HashMap;
    import java.util.Stack;
 
    import mars.ErrorList;
@@ -52,6 +53,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * List of macros defined by now
     */
       private ArrayList<Macro> macroList;
+   /**
+    * Macros of {@link #macroList} by name, in order of definition
+    */
+      private HashMap<String, ArrayList<Macro>> macrosByName;
    /**
     * @see #BeginMacro(String, int)
     */
@@ -71,6 +76,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public MacroPool(MIPSprogram mipsProgram) {
          this.program = mipsProgram;
          macroList = new ArrayList<Macro>();
+         macrosByName = new HashMap<String, ArrayList<Macro>>();
          callStack=new ArrayList<Integer>();
          callStackOrigLines=new ArrayList<Integer>();
          current = null;
@@ -110,6 +116,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          current.setOriginalToLine(endToken.getOriginalSourceLine());
          current.readyForCommit();
          macroList.add(current);
+         ArrayList<Macro> sameName = macrosByName.get(current.getName());
+         if (sameName == null) {
+            sameName = new ArrayList<Macro>();
+            macrosByName.put(current.getName(), sameName);
+         }
+         sameName.add(current);
          current = null;
       }
    	   		
@@ -126,9 +138,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return null;
          Macro ret = null;
          Token firstToken = tokens.get(0);
-         for (Macro macro : macroList) {
-            if (macro.getName().equals(firstToken.getValue())
-            	&& macro.getArgs().size() + 1 == tokens.size()
+         ArrayList<Macro> sameName = macrosByName.get(firstToken.getValue());
+         if (sameName == null)
+            return null;
+         for (Macro macro : sameName) {
+            if (macro.getArgs().size() + 1 == tokens.size()
             	//&& macro.getToLine() < callerLine  // condition removed; doesn't work nicely in conjunction with .include, and does not seem necessary.  DPS 8-MAR-2013
             	&& (ret == null || ret.getFromLine() < macro.getFromLine()))
                ret = macro;
@@ -142,10 +156,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     *         by now, not concerning arguments count.
     */
        public boolean matchesAnyMacroName(String value) {
-         for (Macro macro : macroList)
-            if (macro.getName().equals(value))
-               return true;
-         return false;
+         return macrosByName.containsKey(value);
       }
    
    
@@ -0,0 +1,536 @@
+   package mars.assembler;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+   import java.io.*;
+   import java.security.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Reads and writes object files: an assembled program in binary form, which can be
+ * loaded into memory again without reading, tokenizing or assembling its source.
+ * An object file holds, in this order:
+ * <ul>
+ * <li>a header: magic number, format version, a fingerprint of the instruction set
+ * and the identifier of the memory configuration the program was assembled for.  A
+ * file whose header does not match the running MARS is refused.
+ * <li>the source files, including those brought in by .include, each with a SHA-256
+ * hash of its contents, so it can be told whether the object file is out of date.
+ * <li>the program files with their local symbol tables, then the global symbol table,
+ * which has the labels declared by .globl and .extern.
+ * <li>the text segment: for each statement its address, file and source line (the
+ * line-number map), operator, operand values, binary code, source and operand tokens.
+ * Everything the Text Segment window and runtime error messages need is there.
+ * <li>the data segment image: each 4K block of the data and kernel data segments that
+ * was written by the assembler.
+ * </ul>
+ * Operand values are kept along with the binary code because a statement cannot be
+ * faithfully rebuilt from its binary code alone; signed immediates and branch offsets
+ * would not display as written.
+ *
+ * @see AssemblyCache
+ * @version October 2026
+ */
+
+    public class ObjectFile {
+   /** First word of every object file, "AOBJ" in ASCII */
+      public static final int MAGIC = 0x414F424A;
+   /** Object file format version.  Files of any other version are refused. */
+      public static final int VERSION = 1;
+
+      private static final int BLOCK_LENGTH_BYTES = BlockTableStorage.BLOCK_LENGTH_WORDS * Memory.WORD_LENGTH_BYTES;
+      // Token types are stored by position in this table.  Change VERSION if it changes.
+      private static final TokenTypes[] tokenTypes = {
+         TokenTypes.COMMENT, TokenTypes.DIRECTIVE, TokenTypes.OPERATOR, TokenTypes.DELIMITER,
+         TokenTypes.REGISTER_NAME, TokenTypes.REGISTER_NUMBER, TokenTypes.FP_REGISTER_NAME,
+         TokenTypes.IDENTIFIER, TokenTypes.LEFT_PAREN, TokenTypes.RIGHT_PAREN,
+         TokenTypes.LEFT_BRACKET, TokenTypes.RIGHT_BRACKET, TokenTypes.INTEGER_5,
+         TokenTypes.INTEGER_16, TokenTypes.INTEGER_16U, TokenTypes.INTEGER_32,
+         TokenTypes.REAL_NUMBER, TokenTypes.QUOTED_STRING, TokenTypes.PLUS, TokenTypes.MINUS,
+         TokenTypes.COLON, TokenTypes.ERROR, TokenTypes.MACRO_PARAMETER };
+      private static String instructionSetFingerprint;
+
+      private ArrayList<MIPSprogram> programs;
+      private ArrayList<ProgramStatement> machineList;
+
+       private ObjectFile() {
+         programs = new ArrayList<MIPSprogram>();
+         machineList = new ArrayList<ProgramStatement>();
+      }
+
+   /**
+    * Get the programs, one per source file, of an object file that was loaded.  Their
+    * local symbol tables are filled in but their source and token lists are not.
+    * @return ArrayList of MIPSprogram, in the order they were assembled.
+    */
+       public ArrayList<MIPSprogram> getPrograms() {
+         return programs;
+      }
+
+   /**
+    * Get the statements of an object file that was loaded, as the assembler would
+    * have produced them.
+    * @return ArrayList of ProgramStatement, sorted by address.
+    */
+       public ArrayList<ProgramStatement> getMachineList() {
+         return machineList;
+      }
+
+   /**
+    * Determine whether the named file is an object file, by its first word.
+    * @param filename name of file.
+    * @return true if it begins with MAGIC, false if not or if it cannot be read.
+    */
+       public static boolean isObjectFile(String filename) {
+         DataInputStream in = null;
+         try {
+            in = new DataInputStream(new FileInputStream(filename));
+            return in.readInt() == MAGIC;
+         }
+             catch (IOException e) {
+               return false;
+            }
+         finally {
+            close(in);
+         }
+      }
+
+   /**
+    * Write an assembled program to an object file.  Must be called right after the
+    * program was assembled, since the symbol tables and data segment image are taken
+    * from Globals.
+    * @param filename name of object file to write.
+    * @param programs ArrayList of MIPSprogram that were assembled.
+    * @param leadIndex position in programs of the one that represents the whole program.
+    * @param machineList ArrayList of ProgramStatement produced by the assembler.
+    * @throws ProcessingException if the file cannot be written or a source file read.
+    */
+       public static void write(String filename, ArrayList<?> programs, int leadIndex, ArrayList<?> machineList)
+              throws ProcessingException {
+         DataOutputStream out = null;
+         try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(getInstructionSetFingerprint());
+            out.writeUTF(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier());
+            ArrayList<String> sourceFiles = getSourceFiles(programs);
+            out.writeInt(sourceFiles.size());
+            for (int i = 0; i < sourceFiles.size(); i++) {
+               String sourceFile = sourceFiles.get(i);
+               out.writeUTF(sourceFile);
+               out.writeUTF(hashFile(sourceFile));
+            }
+            HashMap<MIPSprogram,Integer> programIndex = new HashMap<MIPSprogram,Integer>();
+            out.writeInt(programs.size());
+            out.writeInt(leadIndex);
+            for (int i = 0; i < programs.size(); i++) {
+               MIPSprogram program = (MIPSprogram) programs.get(i);
+               programIndex.put(program, Integer.valueOf(i));
+               out.writeUTF(program.getFilename());
+               writeSymbols(out, program.getLocalSymbolTable());
+            }
+            writeSymbols(out, Globals.symbolTable);
+            writeText(out, machineList, programIndex);
+            writeData(out, Memory.dataSegmentBaseAddress, Memory.dataSegmentLimitAddress);
+            writeData(out, Memory.kernelDataBaseAddress, Memory.kernelDataSegmentLimitAddress);
+            out.close();
+            out = null;
+         }
+             catch (IOException e) {
+               throw error("cannot write object file " + filename + ": " + e);
+            }
+         finally {
+            close(out);
+         }
+      }
+
+   /**
+    * Determine whether the named object file can be loaded and is up to date: its header
+    * matches the running MARS and every source file it was assembled from still has
+    * the same contents.  Only the beginning of the object file is read.
+    * @param filename name of object file.
+    * @return true if up to date, false otherwise or if it cannot be read.
+    */
+       public static boolean isCurrent(String filename) {
+         DataInputStream in = null;
+         try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+            if (checkHeader(in) != null) {
+               return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+               String sourceFile = in.readUTF();
+               if (!in.readUTF().equals(hashFile(sourceFile))) {
+                  return false;
+               }
+            }
+            return true;
+         }
+             catch (IOException e) {
+               return false;
+            }
+         finally {
+            close(in);
+         }
+      }
+
+   /**
+    * Load an object file into memory, in place of assembling.  Memory and the global
+    * symbol table are cleared and then filled in from the object file, leaving them
+    * the way they were after the program was assembled.
+    * @param filename name of object file to load.
+    * @param leadProgram MIPSprogram to represent the file that represented the whole
+    * program when it was assembled.  Other files get new MIPSprogram objects.
+    * @return ObjectFile from which the programs and statements may be obtained.
+    * @throws ProcessingException if the file cannot be read, is not a valid object file
+    * or was not written by a matching version of MARS.
+    */
+       public static ObjectFile load(String filename, MIPSprogram leadProgram) throws ProcessingException {
+         DataInputStream in = null;
+         try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+            String mismatch = checkHeader(in);
+            if (mismatch != null) {
+               throw error(filename + " " + mismatch);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+               in.readUTF();
+               in.readUTF();
+            }
+            Globals.symbolTable.clear();
+            Globals.memory.clear();
+            ObjectFile objectFile = new ObjectFile();
+            count = in.readInt();
+            int leadIndex = in.readInt();
+            for (int i = 0; i < count; i++) {
+               MIPSprogram program = (i == leadIndex) ? leadProgram : new MIPSprogram();
+               String programFilename = in.readUTF();
+               program.setSource(programFilename, new ArrayList<String>());
+               SymbolTable localSymbolTable = new SymbolTable(programFilename);
+               readSymbols(in, localSymbolTable);
+               program.setLocalSymbolTable(localSymbolTable);
+               objectFile.programs.add(program);
+            }
+            readSymbols(in, Globals.symbolTable);
+            objectFile.readText(in);
+            readData(in);
+            readData(in);
+            return objectFile;
+         }
+             catch (AddressErrorException e) {
+               throw error(filename + " is not a valid object file: " + e.getMessage());
+            }
+             catch (EOFException e) {
+               throw error(filename + " is not a valid object file: it ends too soon");
+            }
+             catch (InvalidObjectException e) {
+               throw error(filename + " is not a valid object file: " + e.getMessage());
+            }
+             catch (IOException e) {
+               throw error("cannot read object file " + filename + ": " + e);
+            }
+             catch (RuntimeException e) {
+               // whatever the checks in readText() miss in a corrupt or foreign file
+               throw error(filename + " is not a valid object file");
+            }
+         finally {
+            close(in);
+         }
+      }
+
+   /**
+    * Get the SHA-256 hash of the contents of a file.
+    * @param filename name of file.
+    * @return hash as a String of 64 hex digits.
+    * @throws IOException if the file cannot be read.
+    */
+       public static String hashFile(String filename) throws IOException {
+         MessageDigest digest = newDigest();
+         InputStream in = new FileInputStream(filename);
+         try {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+               digest.update(buffer, 0, length);
+            }
+         }
+         finally {
+            in.close();
+         }
+         return toHex(digest.digest());
+      }
+
+   /**
+    * Get a fingerprint of the instruction set: a hash of the name, format and encoding
+    * of every instruction.  Object files refer to instructions by position in the list,
+    * so they may only be loaded by a MARS with the same fingerprint.
+    * @return fingerprint as a String of hex digits.
+    */
+       public static synchronized String getInstructionSetFingerprint() {
+         if (instructionSetFingerprint == null) {
+            MessageDigest digest = newDigest();
+            ArrayList<Instruction> instructions = Globals.instructionSet.getInstructionList();
+            for (int i = 0; i < instructions.size(); i++) {
+               Instruction instruction = instructions.get(i);
+               String description = instruction.getName() + "\n" + instruction.getExampleFormat() + "\n";
+               if (instruction instanceof BasicInstruction) {
+                  description += ((BasicInstruction) instruction).getOperationMask() + "\n";
+               }
+               try {
+                  digest.update(description.getBytes("UTF-8"));
+               }
+                   catch (UnsupportedEncodingException e) { } // will not occur, UTF-8 is always supported
+            }
+            instructionSetFingerprint = toHex(digest.digest());
+         }
+         return instructionSetFingerprint;
+      }
+
+   /**
+    * Get a new SHA-256 message digest.
+    * @return the digest.
+    */
+       static MessageDigest newDigest() {
+         try {
+            return MessageDigest.getInstance("SHA-256");
+         }
+             catch (NoSuchAlgorithmException e) {
+               // every Java platform is required to support SHA-256
+               throw new RuntimeException(e);
+            }
+      }
+
+   /**
+    * Convert bytes to a String of two hex digits per byte.
+    * @param bytes the bytes.
+    * @return hex String.
+    */
+       static String toHex(byte[] bytes) {
+         StringBuffer hex = new StringBuffer(bytes.length * 2);
+         for (int i = 0; i < bytes.length; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(bytes[i] & 0xF, 16));
+         }
+         return hex.toString();
+      }
+
+    // Check magic number, version, instruction set and memory configuration.  Returns null
+    // if they match, otherwise the reason the object file cannot be loaded.
+       private static String checkHeader(DataInputStream in) throws IOException {
+         if (in.readInt() != MAGIC) {
+            return "is not an object file";
+         }
+         int version = in.readInt();
+         if (version != VERSION) {
+            return "is object file version " + version + " but version " + VERSION + " is required";
+         }
+         if (!in.readUTF().equals(getInstructionSetFingerprint())) {
+            return "was written for a different instruction set";
+         }
+         String configuration = in.readUTF();
+         if (!configuration.equals(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier())) {
+            return "was assembled for memory configuration " + configuration;
+         }
+         return null;
+      }
+
+    // Every file the programs were read from: the programs' own files then, in order
+    // of appearance, any brought in by .include.
+       private static ArrayList<String> getSourceFiles(ArrayList<?> programs) {
+         LinkedHashSet<String> sourceFiles = new LinkedHashSet<String>();
+         for (int i = 0; i < programs.size(); i++) {
+            sourceFiles.add(((MIPSprogram) programs.get(i)).getFilename());
+         }
+         for (int i = 0; i < programs.size(); i++) {
+            ArrayList<SourceLine> sourceLineList = ((MIPSprogram) programs.get(i)).getSourceLineList();
+            if (sourceLineList != null) {
+               for (int j = 0; j < sourceLineList.size(); j++) {
+                  String sourceFile = sourceLineList.get(j).getFilename();
+                  if (sourceFile != null) {
+                     sourceFiles.add(sourceFile);
+                  }
+               }
+            }
+         }
+         return new ArrayList<String>(sourceFiles);
+      }
+
+       private static void writeSymbols(DataOutputStream out, SymbolTable symbolTable) throws IOException {
+         ArrayList<?> symbols = (symbolTable == null) ? new ArrayList<Symbol>() : symbolTable.getAllSymbols();
+         out.writeInt(symbols.size());
+         for (int i = 0; i < symbols.size(); i++) {
+            Symbol symbol = (Symbol) symbols.get(i);
+            out.writeUTF(symbol.getName());
+            out.writeInt(symbol.getAddress());
+            out.writeBoolean(symbol.getType());
+         }
+      }
+
+       private static void readSymbols(DataInputStream in, SymbolTable symbolTable) throws IOException {
+         int count = in.readInt();
+         ErrorList errors = new ErrorList();
+         for (int i = 0; i < count; i++) {
+            Token name = new Token(TokenTypes.IDENTIFIER, in.readUTF(), null, 0, 0);
+            int address = in.readInt();
+            symbolTable.addSymbol(name, address, in.readBoolean(), errors);
+         }
+      }
+
+       private static void writeText(DataOutputStream out, ArrayList<?> machineList, 
+              HashMap<MIPSprogram,Integer> programIndex) throws IOException {
+         IdentityHashMap<Instruction,Integer> instructionIndex = new IdentityHashMap<Instruction,Integer>();
+         ArrayList<Instruction> instructions = Globals.instructionSet.getInstructionList();
+         for (int i = 0; i < instructions.size(); i++) {
+            instructionIndex.put(instructions.get(i), Integer.valueOf(i));
+         }
+         out.writeInt(machineList.size());
+         for (int i = 0; i < machineList.size(); i++) {
+            ProgramStatement statement = (ProgramStatement) machineList.get(i);
+            Integer program = programIndex.get(statement.getSourceMIPSprogram());
+            out.writeInt(statement.getAddress());
+            out.writeInt((program == null) ? -1 : program.intValue());
+            out.writeInt(statement.getSourceLine());
+            out.writeInt(instructionIndex.get(statement.getInstruction()).intValue());
+            out.writeInt(statement.getBinaryStatement());
+            out.writeByte(statement.getNumOperands());
+            for (int j = 0; j < statement.getNumOperands(); j++) {
+               out.writeInt(statement.getOperand(j));
+            }
+            out.writeUTF(statement.getSource());
+            TokenList tokens = statement.getStrippedTokenList();
+            out.writeInt((tokens == null) ? -1 : tokens.size());
+            for (int j = 0; tokens != null && j < tokens.size(); j++) {
+               Token token = tokens.get(j);
+               out.writeByte(Arrays.asList(tokenTypes).indexOf(token.getType()));
+               out.writeUTF(token.getValue());
+               out.writeInt(token.getStartPos());
+            }
+         }
+      }
+
+       private void readText(DataInputStream in) throws IOException, AddressErrorException {
+         ArrayList<Instruction> instructions = Globals.instructionSet.getInstructionList();
+         int[] operands = new int[4];
+         int count = in.readInt();
+         for (int i = 0; i < count; i++) {
+            int address = in.readInt();
+            int program = in.readInt();
+            MIPSprogram sourceProgram = (program < 0) ? null 
+                                        : programs.get(checkIndex(program, programs.size(), "program"));
+            int sourceLine = in.readInt();
+            Instruction instruction = instructions.get(checkIndex(in.readInt(), instructions.size(), "instruction"));
+            int binaryStatement = in.readInt();
+            int numOperands = checkIndex(in.readByte(), operands.length + 1, "operand count");
+            for (int j = 0; j < numOperands; j++) {
+               operands[j] = in.readInt();
+            }
+            String source = in.readUTF();
+            int tokenCount = in.readInt();
+            TokenList tokens = (tokenCount < 0) ? null : new TokenList();
+            for (int j = 0; j < tokenCount; j++) {
+               TokenTypes type = tokenTypes[checkIndex(in.readByte(), tokenTypes.length, "token type")];
+               String value = in.readUTF();
+               tokens.add(new Token(type, value, sourceProgram, sourceLine, in.readInt()));
+            }
+            ProgramStatement statement = new ProgramStatement(sourceProgram, source, tokens, instruction,
+                                  address, sourceLine, operands, numOperands, binaryStatement);
+            Globals.memory.setStatement(address, statement);
+            machineList.add(statement);
+         }
+      }
+
+    // Index read from the file, checked against the number of things it may refer to.
+       private static int checkIndex(int index, int size, String what) throws InvalidObjectException {
+         if (index < 0 || index >= size) {
+            throw new InvalidObjectException(what + " " + index + " out of range");
+         }
+         return index;
+      }
+
+    // Image of a segment: each 4K block that was written, as its address and length in
+    // words followed by its words.  The length is less than a full block only at the end
+    // of a segment of a compact memory configuration.  A block that was never written
+    // reads as null, see Memory.getRawWordOrNull().
+       private static void writeData(DataOutputStream out, int baseAddress, int limitAddress)
+              throws IOException {
+         ArrayList<Integer> blocks = new ArrayList<Integer>();
+         try {
+            for (int address = baseAddress; address < limitAddress && address >= baseAddress; address += BLOCK_LENGTH_BYTES) {
+               if (Globals.memory.getRawWordOrNull(address) != null) {
+                  blocks.add(Integer.valueOf(address));
+               }
+            }
+            out.writeInt(blocks.size());
+            for (int i = 0; i < blocks.size(); i++) {
+               int blockAddress = blocks.get(i).intValue();
+               int length = (int) Math.min(BlockTableStorage.BLOCK_LENGTH_WORDS,
+                                           ((long) limitAddress - blockAddress) / Memory.WORD_LENGTH_BYTES);
+               out.writeInt(blockAddress);
+               out.writeInt(length);
+               for (int j = 0; j < length; j++) {
+                  out.writeInt(Globals.memory.getRawWordOrNull(blockAddress + j * Memory.WORD_LENGTH_BYTES).intValue());
+               }
+            }
+         }
+             catch (AddressErrorException e) {
+               throw new IOException("data segment not readable at " + mars.util.Binary.intToHexString(e.getAddress()));
+            }
+      }
+
+       private static void readData(DataInputStream in) throws IOException, AddressErrorException {
+         int count = in.readInt();
+         for (int i = 0; i < count; i++) {
+            int blockAddress = in.readInt();
+            int length = in.readInt();
+            for (int j = 0; j < length; j++) {
+               Globals.memory.setRawWord(blockAddress + j * Memory.WORD_LENGTH_BYTES, in.readInt());
+            }
+         }
+      }
+
+       private static ProcessingException error(String message) {
+         ErrorList errors = new ErrorList();
+         errors.add(new ErrorMessage((MIPSprogram) null, 0, 0, message));
+         return new ProcessingException(errors);
+      }
+
+       private static void close(Closeable stream) {
+         if (stream != null) {
+            try {
+               stream.close();
+            }
+                catch (IOException e) { }
+         }
+      }
+   }
@@ -40,6 +40,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static String startLabel = "main";
       private String filename;
       private ArrayList table;
+      // Indexes into table: Symbol by name, and ArrayList of Symbols by address (sorted).
+      // Kept up to date by every method that changes the table, so lookups do not need
+      // to search it.  This matters for large programs, since the assembler looks up
+      // every label reference.
+      private HashMap<String,Symbol> nameIndex;
+      private TreeMap<Integer,ArrayList<Symbol>> addressIndex;
    	// Note -1 is legal 32 bit address (0xFFFFFFFF) but it is the high address in 
    	// kernel address space so highly unlikely that any symbol will have this as 
    	// its associated address!
@@ -53,6 +59,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public SymbolTable(String filename) {
          this.filename = filename;
          this.table = new ArrayList();
+         this.nameIndex = new HashMap<String,Symbol>();
+         this.addressIndex = new TreeMap<Integer,ArrayList<Symbol>>();
       }    
    	/**
    	  *  Adds a Symbol object into the array of Symbols.
@@ -70,6 +78,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else {
             Symbol s= new Symbol(label, address, b);
             table.add(s);
+            nameIndex.put(label, s);
+            addToAddressIndex(s);
             if (Globals.debug) System.out.println("The symbol " + label + " with address " + address + " has been added to the "+this.filename+" symbol table.");
          }
       }
@@ -84,12 +94,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public void removeSymbol(Token token) {
          String label = token.getValue();
-         for (int i=0; i < table.size(); i++) {
-            if (((Symbol)(table.get(i))).getName().equals(label)){
-               table.remove(i);
-               if (Globals.debug) System.out.println("The symbol " + label + " has been removed from the "+this.filename+" symbol table.");
-               break;
-            }
+         Symbol symbol = nameIndex.remove(label);
+         if (symbol != null) {
+            table.remove(symbol);
+            removeFromAddressIndex(symbol);
+            if (Globals.debug) System.out.println("The symbol " + label + " has been removed from the "+this.filename+" symbol table.");
          }
          return; 
       }
@@ -101,12 +110,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return The memory address of the label given, or NOT_FOUND if not found in symbol table.
    	  **/
        public int getAddress(String s){
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getName().equals(s)){
-               return((Symbol) table.get(i)).getAddress();
-            }
-         }
-         return NOT_FOUND;
+         Symbol symbol = nameIndex.get(s);
+         return (symbol == null) ? NOT_FOUND : symbol.getAddress();
       }
       
    	/**
@@ -129,12 +134,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        **/
        
        public Symbol getSymbol(String s){
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getName().equals(s)){
-               return (Symbol) table.get(i);
-            }
-         }
-         return null;
+         return nameIndex.get(s);
       }
    
       /**
@@ -151,13 +151,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
              catch (NumberFormatException e) {
                return null;
             }
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getAddress() == address){
-               return (Symbol) table.get(i);
-            }
-         }
-         return null;
-      }      
+         return getSymbolGivenAddress(address);
+      }
+      
+      /**
+       * Produce Symbol object from symbol table that has the given address.  If more
+       * than one does, the one added first.
+       * @param address the address
+       * @return Symbol object having requested address, null if address not found in symbol table.
+       **/
+       
+       public Symbol getSymbolGivenAddress(int address){
+         ArrayList<Symbol> symbols = addressIndex.get(Integer.valueOf(address));
+         return (symbols == null) ? null : symbols.get(0);
+      }
    
       /**
        * Produce Symbol object from either local or global symbol table that has the 
@@ -231,6 +238,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 
        public void clear(){
          table= new ArrayList();
+         nameIndex = new HashMap<String,Symbol>();
+         addressIndex = new TreeMap<Integer,ArrayList<Symbol>>();
       }
    	
    /**
@@ -243,14 +252,40 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     */
    
        public void fixSymbolTableAddress(int originalAddress, int replacementAddress) {
-         Symbol label = getSymbolGivenAddress(Integer.toString(originalAddress));
-         while (label != null) {
-            label.setAddress(replacementAddress);
-            label = getSymbolGivenAddress(Integer.toString(originalAddress));
+         ArrayList<Symbol> labels = addressIndex.remove(Integer.valueOf(originalAddress));
+         if (labels != null) {
+            for (int i=0; i < labels.size(); i++) {
+               Symbol label = labels.get(i);
+               label.setAddress(replacementAddress);
+               addToAddressIndex(label);
+            }
          }
          return;
       }
    
+   	// Symbol addresses change only through fixSymbolTableAddress(), which
+   	// keeps the address index in step.
+       private void addToAddressIndex(Symbol symbol) {
+         Integer key = Integer.valueOf(symbol.getAddress());
+         ArrayList<Symbol> symbols = addressIndex.get(key);
+         if (symbols == null) {
+            symbols = new ArrayList<Symbol>(1);
+            addressIndex.put(key, symbols);
+         }
+         symbols.add(symbol);
+      }
+   
+       private void removeFromAddressIndex(Symbol symbol) {
+         Integer key = Integer.valueOf(symbol.getAddress());
+         ArrayList<Symbol> symbols = addressIndex.get(key);
+         if (symbols != null) {
+            symbols.remove(symbol);
+            if (symbols.isEmpty()) {
+               addressIndex.remove(key);
+            }
+         }
+      }
+   
      /**
       *  Fetches the text segment label (symbol) which, if declared global, indicates
    	*  the starting address for execution.
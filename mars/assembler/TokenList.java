@@ -1,5 +1,6 @@
 package mars.assembler;
 import java.util.ArrayList;
+import mars.MIPSprogram;
 
 /*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -41,6 +42,12 @@ public class TokenList implements Cloneable {
 	
 	private ArrayList tokenList;
 	private String processedLine;// DPS 03-Jan-2013
+	// Tokens from the Tokenizer that have not been made into Token objects yet.  Most
+	// lists are only looked at, so Token objects are made when first asked for; until
+	// then tokenList is null.  See materialize().
+	private Tokenizer.LineTokens pendingTokens;
+	private MIPSprogram pendingProgram;
+	private int pendingLine;
 
 	/**
 	 * Constructor for objects of class TokenList
@@ -49,6 +56,20 @@ public class TokenList implements Cloneable {
         tokenList = new ArrayList();
 		  processedLine = ""; // DPS 03-Jan-2013
 	}
+
+	/**
+	 * Constructor for the token list of a line, from the tokens found by the Tokenizer.
+	 * 
+	 * @param tokens the tokens of the line
+	 * @param program MIPSprogram containing the line
+	 * @param line line number of the line
+	 */
+	TokenList(Tokenizer.LineTokens tokens, MIPSprogram program, int line) {
+		pendingTokens = tokens;
+		pendingProgram = program;
+		pendingLine = line;
+		processedLine = "";
+	}
 	
 	/**
 	 * Use this to record the source line String for this token list 
@@ -79,9 +100,41 @@ public class TokenList implements Cloneable {
 	 * @return     the requested token, or ArrayIndexOutOfBounds exception 
 	 */
     public Token get(int pos) {
+        materialize();
         return (Token) tokenList.get(pos);
     }
 
+	/**
+	 * Returns type of token at given position, the same as get(pos).getType().
+	 * 
+	 * @param  pos   Position in token list.
+	 * @return     the token type
+	 */
+    TokenTypes getType(int pos) {
+        return (pendingTokens != null) ? pendingTokens.getType(pos) : get(pos).getType();
+    }
+
+	/**
+	 * Returns source code of token at given position, the same as get(pos).getValue().
+	 * 
+	 * @param  pos   Position in token list.
+	 * @return     the token's source code
+	 */
+    String getValue(int pos) {
+        return (pendingTokens != null) ? pendingTokens.getValue(pos) : get(pos).getValue();
+    }
+
+	/**
+	 * Returns position in source line of token at given position, the same as
+	 * get(pos).getStartPos().
+	 * 
+	 * @param  pos   Position in token list.
+	 * @return     the token's starting position in the line, the first being 1
+	 */
+    int getStartPosition(int pos) {
+        return (pendingTokens != null) ? pendingTokens.getStartPosition(pos) : get(pos).getStartPos();
+    }
+
 	/**
 	 * Replaces token at position with different one.  Will throw
 	 * ArrayIndexOutOfBounds exception if position does not exist.
@@ -90,6 +143,7 @@ public class TokenList implements Cloneable {
 	 * @param  replacement Replacement token
 	 */
     public void set(int pos, Token replacement) {
+        materialize();
         tokenList.set(pos, replacement); 
     }
 	 
@@ -99,7 +153,7 @@ public class TokenList implements Cloneable {
 	 * @return  token count. 
 	 */    
     public int size() {
-        return tokenList.size();
+        return (pendingTokens != null) ? pendingTokens.size() : tokenList.size();
     }
 
 	/**
@@ -108,6 +162,7 @@ public class TokenList implements Cloneable {
 	 * @param  token   Token object to be added.
 	 */    
     public void add(Token token) {
+        materialize();
         tokenList.add(token);
     }
 
@@ -118,6 +173,7 @@ public class TokenList implements Cloneable {
 	 * @throws IndexOutOfBoundsException if <tt>pos</tt> is < 0 or >= <tt>size()</tt>
 	 */    
     public void remove(int pos) {
+        materialize();
         tokenList.remove(pos);
     }
 
@@ -127,7 +183,7 @@ public class TokenList implements Cloneable {
 	 * @return     <tt>true</tt> if list has no tokens, else <tt>false</tt>. 
 	 */    
     public boolean isEmpty() {
-        return tokenList.isEmpty();
+        return (pendingTokens != null) ? pendingTokens.size() == 0 : tokenList.isEmpty();
     }
 
 	/**
@@ -138,6 +194,7 @@ public class TokenList implements Cloneable {
 	 */
 	     
 	 public String toString() {
+	    materialize();
 	    String stringified = "";
 		 for (int i=0; i<tokenList.size(); i++) {
 		   stringified += tokenList.get(i).toString()+" ";
@@ -154,6 +211,7 @@ public class TokenList implements Cloneable {
 	 */
 	     
 	 public String toTypeString() {
+	    materialize();
 	    String stringified = "";
 		 for (int i=0; i<tokenList.size(); i++) {
 		   stringified += ((Token)tokenList.get(i)).getType().toString()+" ";
@@ -170,6 +228,7 @@ public class TokenList implements Cloneable {
 	// but the ArrayList itself has to be cloned separately -- otherwise clone will have
 	// alias to original token list!!
     public Object clone() {
+        materialize(); // so the clone shares the Token objects, as a shallow copy does
         try {
             TokenList t = (TokenList) super.clone();
             t.tokenList = (ArrayList) tokenList.clone();
@@ -178,4 +237,13 @@ public class TokenList implements Cloneable {
             return null;
         }
     }
+
+	// Make the Token objects of a list from the Tokenizer, if not done yet.
+    private void materialize() {
+        if (pendingTokens != null) {
+            tokenList = pendingTokens.createTokens(pendingProgram, pendingLine);
+            pendingTokens = null;
+            pendingProgram = null;
+        }
+    }
 }
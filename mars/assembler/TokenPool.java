@@ -0,0 +1,209 @@
+   package mars.assembler;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Strings that tokens are made of, each with its token type.  The tokenizer looks
+ * up a token here by its position in the source line, so a token seen before needs
+ * neither a new String nor to be classified again, and every use of a label, register
+ * or number in a program shares one String.
+ * <p>
+ * Each Tokenizer has a pool of its own for the program it is tokenizing.  Behind
+ * those is one pool shared by all, of the instruction mnemonics, directives and
+ * register names.  The shared pool is not changed once made, so it is used by
+ * tokenizers on different threads without locking.  A pool takes no more strings
+ * once it holds its limit; tokens not in a pool are made and classified as before.
+ *
+ * @see Tokenizer
+ * @version October 2026
+ */
+
+    public class TokenPool {
+      private static final int INITIAL_CAPACITY = 64;
+      private static TokenPool shared;
+
+      private TokenPool parent;
+      private Entry[] entries;
+      private int count;
+      private int limit;
+
+   /**
+    * Create an empty pool.
+    * @param parent pool looked in first, or null if none.
+    * @param limit largest number of strings the pool will hold.
+    */
+       public TokenPool(TokenPool parent, int limit) {
+         this.parent = parent;
+         this.limit = limit;
+         this.entries = new Entry[INITIAL_CAPACITY];
+      }
+
+   /**
+    * Get the pool shared by all tokenizers, of the instruction mnemonics, directives and
+    * register names.  It is made the first time it is asked for, so must not be asked
+    * for until the instruction set is complete.
+    * @return the shared pool
+    */
+       public static synchronized TokenPool getShared() {
+         if (shared == null) {
+            ArrayList<String> words = new ArrayList<String>();
+            ArrayList<Instruction> instructions = Globals.instructionSet.getInstructionList();
+            for (int i = 0; i < instructions.size(); i++) {
+               words.add(instructions.get(i).getName());
+            }
+            ArrayList<?> directives = Directives.getDirectiveList();
+            for (int i = 0; i < directives.size(); i++) {
+               words.add(((Directives) directives.get(i)).getName());
+            }
+            Register[] registers = RegisterFile.getRegisters();
+            for (int i = 0; i < registers.length; i++) {
+               words.add(registers[i].getName());
+            }
+            TokenPool pool = new TokenPool(null, Integer.MAX_VALUE);
+            for (int i = 0; i < words.size(); i++) {
+               String word = words.get(i);
+               if (word.length() > 0 && pool.find(word, 0, word.length()) == null) {
+                  pool.add(word, TokenTypes.matchTokenType(word));
+               }
+            }
+            shared = pool;
+         }
+         return shared;
+      }
+
+   /**
+    * Find the pooled string having the characters of part of a line, looking first in
+    * the parent pool.
+    * @param line the source line
+    * @param start position in line of the first character
+    * @param end position in line after the last character
+    * @return the pooled string and its token type, or null if not in the pool.
+    */
+       public Entry find(String line, int start, int end) {
+         int hash = 0;
+         for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+         }
+         if (parent != null) {
+            Entry entry = parent.find(line, start, end, hash);
+            if (entry != null) {
+               return entry;
+            }
+         }
+         return find(line, start, end, hash);
+      }
+
+   /**
+    * Put a string and its token type in the pool, if there is room.  It should not be
+    * in the pool already.
+    * @param value the string
+    * @param type its token type
+    * @return the pool entry, or null if the pool is full.
+    */
+       public Entry add(String value, TokenTypes type) {
+         if (count >= limit) {
+            return null;
+         }
+         if (2 * (count + 1) > entries.length) {
+            grow();
+         }
+         Entry entry = new Entry(value, type);
+         insert(entry);
+         count++;
+         return entry;
+      }
+
+    // Look in this pool only, given the hash of the characters (the same as String.hashCode()).
+       private Entry find(String line, int start, int end, int hash) {
+         int length = end - start;
+         int mask = entries.length - 1;
+         for (int i = spread(hash) & mask; entries[i] != null; i = (i + 1) & mask) {
+            String value = entries[i].value;
+            if (value.length() == length && value.hashCode() == hash &&
+                line.regionMatches(start, value, 0, length)) {
+               return entries[i];
+            }
+         }
+         return null;
+      }
+
+       private void grow() {
+         Entry[] old = entries;
+         entries = new Entry[old.length * 2];
+         for (int i = 0; i < old.length; i++) {
+            if (old[i] != null) {
+               insert(old[i]);
+            }
+         }
+      }
+
+       private void insert(Entry entry) {
+         int mask = entries.length - 1;
+         int i = spread(entry.value.hashCode()) & mask;
+         while (entries[i] != null) {
+            i = (i + 1) & mask;
+         }
+         entries[i] = entry;
+      }
+
+       private static int spread(int hash) {
+         return hash ^ (hash >>> 16);
+      }
+
+   /**
+    * A pooled string and its token type.
+    */
+       public static class Entry {
+         private String value;
+         private TokenTypes type;
+
+          Entry(String value, TokenTypes type) {
+            this.value = value;
+            this.type = type;
+         }
+
+      /**
+       * @return the pooled string
+       */
+          public String getValue() {
+            return value;
+         }
+
+      /**
+       * @return token type of the string
+       */
+          public TokenTypes getType() {
+            return type;
+         }
+      }
+   }
@@ -156,6 +156,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (reg != null)
             return TokenTypes.FP_REGISTER_NAME;
        
+       // Nothing beginning with a letter is a number, except NaN and Infinity, so for
+       // operators and identifiers skip the attempts to parse one (and the exceptions).
+         if (!mayBeNumber(value))
+            return matchNonNumericTokenType(value);
+       
        // See if it is an immediate (constant) integer value
        // Classify based on # bits needed to represent in binary
        // This is needed because most immediate operands limited to 16 bits
@@ -231,6 +236,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             // NO ACTION -- exception suppressed
             }
       	 
+         return matchNonNumericTokenType(value);
+      }
+   
+    // Remaining tests of matchTokenType(), for values that are not numbers.
+       private static TokenTypes matchNonNumericTokenType(String value)
+      {
        // See if it is an instruction operator
          if (Globals.instructionSet.matchOperator(value) != null)
             return TokenTypes.OPERATOR;
@@ -255,6 +266,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return TokenTypes.ERROR;
       }
    
+    // False if value cannot be an integer or real number literal.
+       private static boolean mayBeNumber(String value) {
+         char first = value.charAt(0);
+         return !(Character.isLetter(first) || first == '_' || first == '$') ||
+                value.equals("NaN") || value.equals("Infinity");
+      }
+   
 	   /**
 		 *
 		 *  Lets you know if given tokentype is for integers (INTGER_5, INTEGER_16, INTEGER_32).
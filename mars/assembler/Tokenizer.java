@@ -52,6 +52,36 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ErrorList errors;
       private MIPSprogram sourceMIPSprogram;
       private HashMap<String,String> equivalents; // DPS 11-July-2012
+      private HashMap<String,HashMap<String,LineTokens>> cachedLines;
+      private HashMap<String,HashMap<String,LineTokens>> reusableLines;
+      private TokenPool pool;
+      // Tokens of the line being tokenized, in the order found.  See findTokens().
+      private TokenTypes[] lineTypes = new TokenTypes[16];
+      private String[] lineValues = new String[16];
+      private int[] lineStartPositions = new int[16];
+      private int lineTokenCount;
+      // Largest number of strings in the pool of one Tokenizer.
+      private static final int POOL_LIMIT = 1 << 16;
+      // Tokens of the lines of recently tokenized programs, by program file name, then by
+      // file (the program's own and those it includes), then by line.  When a program is
+      // tokenized again, as on every Assemble in the IDE, lines that have not changed are
+      // taken from here instead of tokenized again.  Only lines that tokenize the same
+      // anywhere in the file are kept: no errors and no .eqv definition or substitution.
+      // Each program's entry holds just the lines it had when last tokenized, and is
+      // dropped when its file is closed (see forgetLines()).  Only the IDE re-assembles,
+      // so nothing is kept when there is no GUI.
+      private static final int LINE_CACHE_PROGRAMS = 64;
+      private static final Map<String,HashMap<String,HashMap<String,LineTokens>>> lineCache = 
+         Collections.synchronizedMap(
+             new LinkedHashMap<String,HashMap<String,HashMap<String,LineTokens>>>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String,HashMap<String,HashMap<String,LineTokens>>> eldest) {
+                  return size() > LINE_CACHE_PROGRAMS;
+               }
+            });
+      // Lines of files included while preparing the current program for assembly, by
+      // canonical path.  See readIncludeFile() and clearIncludeCache().
+      private static final Map<String,IncludedFile> includeCache = 
+         Collections.synchronizedMap(new HashMap<String,IncludedFile>());
    	// The 8 escaped characters are: single quote, double quote, backslash, newline (linefeed),
    	// tab, backspace, return, form feed.  The characters and their corresponding decimal codes:
       private static final String escapedCharacters = "'\"\\ntbrf0";
@@ -86,25 +116,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public ArrayList tokenize(MIPSprogram p) throws ProcessingException {
          sourceMIPSprogram = p;
          equivalents = new HashMap<String,String>(); // DPS 11-July-2012
-         ArrayList tokenList = new ArrayList();
-         //ArrayList source = p.getSourceList();
-         ArrayList<SourceLine> source = processIncludes(p, new HashMap<String,String>()); // DPS 9-Jan-2013
+         pool = new TokenPool(TokenPool.getShared(), POOL_LIMIT);
+         cachedLines = (p.getFilename() == null) ? null : lineCache.get(p.getFilename());
+         reusableLines = new HashMap<String,HashMap<String,LineTokens>>();
+         ArrayList<TokenList> tokenList = new ArrayList<TokenList>();
+         ArrayList<?> programSource = p.getSourceList();
+         ArrayList<SourceLine> source = new ArrayList<SourceLine>(programSource.size());
+         // Error messages map line numbers through this list, so it is set before it is filled.
          p.setSourceLineList(source);
-         TokenList currentLineTokens;
-         String sourceLine;
-         for (int i=0; i<source.size(); i++) {
-            sourceLine = source.get(i).getSource(); 
-            currentLineTokens = this.tokenizeLine(i+1, sourceLine);
-            tokenList.add(currentLineTokens); 
-            // DPS 03-Jan-2013. Related to 11-July-2012. If source code substitution was made
-         	// based on .eqv directive during tokenizing, the processed line, a String, is 
-         	// not the same object as the original line.  Thus I can use != instead of !equals()
-         	// This IF statement will replace original source with source modified by .eqv substitution.
-         	// Not needed by assembler, but looks better in the Text Segment Display.
-            if (sourceLine.length() > 0 && sourceLine != currentLineTokens.getProcessedLine()) {
-               source.set(i,new SourceLine(currentLineTokens.getProcessedLine(),source.get(i).getMIPSprogram(), source.get(i).getLineNumber())); 
-            } 
+         HashMap<Integer,String> processedLines = new HashMap<Integer,String>();
+         tokenizeSource(p, programSource, tokenList, source, processedLines, new HashMap<String,String>());
+         p.setSourceLineList(source);
+         // DPS 03-Jan-2013. Related to 11-July-2012. If source code substitution was made
+      	// based on .eqv directive during tokenizing, the processed line, a String, is 
+      	// not the same object as the original line.  This will replace original source
+      	// with source modified by .eqv substitution.
+      	// Not needed by assembler, but looks better in the Text Segment Display.
+         Iterator<Map.Entry<Integer,String>> substitutions = processedLines.entrySet().iterator();
+         while (substitutions.hasNext()) {
+            Map.Entry<Integer,String> substitution = substitutions.next();
+            SourceLine original = source.get(substitution.getKey());
+            source.set(substitution.getKey(), new SourceLine(substitution.getValue(), original.getMIPSprogram(), original.getLineNumber())); 
          }
+         if (Globals.getGui() != null && p.getFilename() != null) {
+            lineCache.put(p.getFilename(), reusableLines);
+         }
+         cachedLines = null;
+         reusableLines = null;
+         pool = null; // the program's tokens keep what they need of it
          if (errors.errorsOccurred()) {
             throw new ProcessingException(errors);
          }
@@ -112,60 +151,152 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
    
-     
-   // pre-pre-processing pass through source code to process any ".include" directives.
-   // When one is encountered, the contents of the included file are inserted at that 
-   // point.  If no .include statements, the return value is a new array list but
-   // with the same lines of source code.  Uses recursion to correctly process included
-   // files that themselves have .include.  Plus it will detect and report recursive
-   // includes both direct and indirect.
-   // DPS 11-Jan-2013
-       private ArrayList<SourceLine> processIncludes(MIPSprogram program, Map<String,String> inclFiles) throws ProcessingException {
-         ArrayList source = program.getSourceList();
-         ArrayList<SourceLine> result = new ArrayList<SourceLine>(source.size());
-         for (int i=0; i<source.size(); i++) {
-            String line = (String) source.get(i);
-            TokenList tl = tokenizeLine(program, i+1, line, false);
-            boolean hasInclude = false;
-            for (int ii=0; ii<tl.size(); ii++) {
-               if (tl.get(ii).getValue().equalsIgnoreCase(Directives.INCLUDE.getName()) 
-                      && (tl.size() > ii+1) 
-                      && tl.get(ii+1).getType() == TokenTypes.QUOTED_STRING) {
-                  String filename = tl.get(ii+1).getValue();
-                  filename = filename.substring(1, filename.length()-1); // get rid of quotes
-                  // Handle either absolute or relative pathname for .include file
-                  if (!new File(filename).isAbsolute()) {
-                     filename = new File(program.getFilename()).getParent()+File.separator+filename;
-                  }
-                  if (inclFiles.containsKey(filename)) {
-                     // This is a recursive include.  Generate error message and return immediately.
-                     Token t = tl.get(ii+1);
-                     errors.add(new ErrorMessage(program, t.getSourceLine(),t.getStartPos(), 
-                        "Recursive include of file "+filename));
+   // Tokenize the lines of one source file, adding them and their tokens to the lists for
+   // the whole program.  When an ".include" directive is encountered, the contents of the
+   // included file are tokenized at that point in its place, by recursion, so every line is
+   // tokenized just once.  Recursive includes, both direct and indirect, are detected and
+   // reported.  Lines are numbered by position in the whole program, as the assembler does.
+   // DPS 11-Jan-2013 (.include)
+       private void tokenizeSource(MIPSprogram program, ArrayList<?> lines, ArrayList<TokenList> tokenList, 
+                                   ArrayList<SourceLine> source, HashMap<Integer,String> processedLines,
+                                   Map<String,String> inclFiles) throws ProcessingException {
+         HashMap<String,LineTokens> cached = getCachedLines(program.getFilename());
+         HashMap<String,LineTokens> reusable = getReusableLines(program.getFilename());
+         for (int i=0; i<lines.size(); i++) {
+            String line = (String) lines.get(i);
+            source.add(new SourceLine(line, program, i+1));
+            int lineNum = source.size();
+            LineTokens lineTokens = (cached == null || !equivalents.isEmpty() || line.length() == 0) 
+                                    ? null : cached.get(line);
+            if (lineTokens != null) {
+               // A line in the cache was tokenized after includes were processed, so has none.
+               tokenList.add(lineTokens.createTokenList(sourceMIPSprogram, lineNum, line));
+               reusable.put(line, lineTokens);
+               continue;
+            }
+            int errorsBefore = errors.getErrorMessages().size();
+            boolean noEquivalentsBefore = equivalents.isEmpty();
+            lineTokens = findTokens(sourceMIPSprogram, lineNum, line);
+            if (includeFile(program, lineTokens, lineNum, tokenList, source, processedLines, inclFiles)) {
+               continue;
+            }
+            TokenList tl = new TokenList(lineTokens, sourceMIPSprogram, lineNum);
+            if (line.length() > 0) {
+               tl = processEqv(sourceMIPSprogram, lineNum, line, tl);
+               if (line != tl.getProcessedLine()) {
+                  processedLines.put(Integer.valueOf(lineNum-1), tl.getProcessedLine());
+               }
+            }
+            if (noEquivalentsBefore && equivalents.isEmpty() && line.length() > 0 &&
+                errors.getErrorMessages().size() == errorsBefore) {
+               reusable.put(line, lineTokens);
+            }
+            tokenList.add(tl);
+         }
+      }
+   
+   // If the tokens are those of an ".include" directive, tokenize the included file in
+   // place of the line and return true, else return false.
+       private boolean includeFile(MIPSprogram program, LineTokens tl, int lineNum, ArrayList<TokenList> tokenList, 
+                                   ArrayList<SourceLine> source, HashMap<Integer,String> processedLines,
+                                   Map<String,String> inclFiles) throws ProcessingException {
+         for (int ii=0; ii<tl.size(); ii++) {
+            if (tl.getValue(ii).equalsIgnoreCase(Directives.INCLUDE.getName()) 
+                   && (tl.size() > ii+1) 
+                   && tl.getType(ii+1) == TokenTypes.QUOTED_STRING) {
+               String filename = tl.getValue(ii+1);
+               filename = filename.substring(1, filename.length()-1); // get rid of quotes
+               // Handle either absolute or relative pathname for .include file
+               if (!new File(filename).isAbsolute()) {
+                  filename = new File(program.getFilename()).getParent()+File.separator+filename;
+               }
+               if (inclFiles.containsKey(filename)) {
+                  // This is a recursive include.  Generate error message and return immediately.
+                  errors.add(new ErrorMessage(sourceMIPSprogram, lineNum, tl.getStartPosition(ii+1), 
+                     "Recursive include of file "+filename));
+                  throw new ProcessingException(errors);
+               }
+               inclFiles.put(filename, filename);
+               MIPSprogram incl = new MIPSprogram();
+               try {
+                  incl.setSource(filename, readIncludeFile(filename));
+               }
+                   catch (ProcessingException p) {
+                     errors.add(new ErrorMessage(sourceMIPSprogram, lineNum, tl.getStartPosition(ii+1), 
+                        "Error reading include file "+filename));	
                      throw new ProcessingException(errors);
                   }
-                  inclFiles.put(filename, filename);
-                  MIPSprogram incl = new MIPSprogram();
-                  try {
-                     incl.readSource(filename);
-                  }
-                      catch (ProcessingException p) {
-                        Token t = tl.get(ii+1);
-                        errors.add(new ErrorMessage(program, t.getSourceLine(),t.getStartPos(), 
-                           "Error reading include file "+filename));	
-                        throw new ProcessingException(errors);
-                     }
-                  ArrayList<SourceLine> allLines = processIncludes(incl, inclFiles);
-                  result.addAll(allLines);
-                  hasInclude = true;
-                  break;                  	
-               } 
+               source.remove(source.size()-1);  // replaced by the contents of the file
+               tokenizeSource(incl, incl.getSourceList(), tokenList, source, processedLines, inclFiles);
+               return true;                  	
+            } 
+         }
+         return false;
+      }
+   
+   // Get the lines of an included file.  A file included by several source files of a
+   // program is split into lines only once per assembly: the lines are kept, by canonical
+   // path, with the file's modification time and length, and reused while both are
+   // unchanged.  Nothing is kept from one assembly to the next.
+       private static ArrayList<?> readIncludeFile(String filename) throws ProcessingException {
+         File file = new File(filename);
+         String path;
+         try {
+            path = file.getCanonicalPath();
+         } 
+             catch (IOException e) {
+               path = file.getAbsolutePath();
             }
-            if (!hasInclude){
-               result.add(new SourceLine(line, program, i+1));//line);
+         long modified = file.lastModified();
+         long length = file.length();
+         IncludedFile included = includeCache.get(path);
+         if (included == null || included.modified != modified || included.length != length) {
+            MIPSprogram reader = new MIPSprogram();
+            reader.readSource(filename);
+            included = new IncludedFile(modified, length, reader.getSourceList());
+            includeCache.put(path, included);
+         }
+         return included.lines;
+      }
+   
+   /**
+    * Forget the included files read so far.  Called at the start and end of preparing a
+    * program for assembly, so that the lines of a file included by several of its source
+    * files are shared within one assembly but not kept from one to the next.
+    */
+       public static void clearIncludeCache() {
+         includeCache.clear();
+      }
+   
+   // Cached tokens of lines of given file, from when it was last tokenized.
+       private HashMap<String,LineTokens> getCachedLines(String filename) {
+         if (filename == null || cachedLines == null) {
+            return null;
+         }
+         return cachedLines.get(filename);
+      }
+   
+   // Tokens of lines of given file that can be reused next time it is tokenized.
+       private HashMap<String,LineTokens> getReusableLines(String filename) {
+         HashMap<String,LineTokens> reusable = reusableLines.get(filename);
+         if (reusable == null) {
+            reusable = new HashMap<String,LineTokens>();
+            if (filename != null) {
+               reusableLines.put(filename, reusable);
             }
          }
-         return result;
+         return reusable;
+      }
+   
+   /**
+    * Drop the tokens kept for re-assembling the given program, for instance when its
+    * file is closed in the editor.
+    * @param filename name of the program's main file, as given to MIPSprogram.
+    */
+       public static void forgetLines(String filename) {
+         if (filename != null) {
+            lineCache.remove(filename);
+         }
       }
    	
    /**
@@ -276,27 +407,36 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * 
     **/		
        public TokenList tokenizeLine(MIPSprogram program, int lineNum, String theLine, boolean doEqvSubstitutes) {
-         TokenTypes tokenType;
-         TokenList result = new TokenList();
+         TokenList result = new TokenList(findTokens(program, lineNum, theLine), program, lineNum);
+         if (doEqvSubstitutes && theLine.length() > 0) {
+            result = processEqv(program, lineNum, theLine, result); // DPS 11-July-2012
+         }
+         return result;
+      }
+   
+   // Find the tokens of one source line.  A token is found as its position and length in
+   // the line, and its String and type come from the pool when it has been seen before,
+   // so the usual token costs nothing more than the scan.  Token objects are not made
+   // here but by the TokenList, when they are used.
+       private LineTokens findTokens(MIPSprogram program, int lineNum, String theLine) {
+         lineTokenCount = 0;
          if (theLine.length() == 0)
-            return result;
-      // will be faster to work with char arrays instead of strings
+            return LineTokens.NONE;
          char c;
-         char[] line = theLine.toCharArray();
+         int lineLength = theLine.length();
          int linePos = 0;
-         char[] token = new char[line.length];
-         int tokenPos = 0;
+         int tokenPos = 0;   // length of the token so far; it starts at tokenStartPos-1
          int tokenStartPos = 1;
          boolean insideQuotedString = false;  
          if (Globals.debug) 
             System.out.println("source line --->"+theLine+"<---");
       // Each iteration of this loop processes one character in the source line.
-         while (linePos < line.length) {
-            c = line[linePos];
+         while (linePos < lineLength) {
+            c = theLine.charAt(linePos);
             if (insideQuotedString) { // everything goes into token
-               token[tokenPos++] = c;
-               if (c == '"' && token[tokenPos-2] != '\\') { // If quote not preceded by backslash, this is end
-                  this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+               tokenPos++;
+               if (c == '"' && theLine.charAt(linePos-1) != '\\') { // If quote not preceded by backslash, this is end
+                  this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                   tokenPos = 0;
                   insideQuotedString = false;
                } 
@@ -305,14 +445,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                switch(c) {
                   case '/' :  // # denotes comment that takes remainder of line
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                      }
                      tokenStartPos = linePos+1;
-                     tokenPos = line.length-linePos;
-                     System.arraycopy(line, linePos, token, 0, tokenPos);
-                     this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                     linePos = line.length;
+                     tokenPos = lineLength-linePos;
+                     this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
+                     linePos = lineLength;
                      tokenPos = 0;
                      break;
                   case '#' :
@@ -320,7 +459,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   case '\t':
                   case ',' : // space, tab or comma is delimiter; pound is required to be allowed before numbers but has no real significance
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                      }
                      break;
@@ -332,22 +471,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   case '-' :
                       // Here's the REAL hack: recognizing signed exponent in E-notation floating point!
                   	 // (e.g. 1.2e-5) Add the + or - to the token and keep going.  DPS 17 Aug 2005
-                     if (tokenPos > 0 && line.length >= linePos+2 && Character.isDigit(line[linePos+1]) &&
-                                                       (line[linePos-1]=='e' || line[linePos-1]=='E')) {
-                        token[tokenPos++] = c;
+                     if (tokenPos > 0 && lineLength >= linePos+2 && Character.isDigit(theLine.charAt(linePos+1)) &&
+                                                       (theLine.charAt(linePos-1)=='e' || theLine.charAt(linePos-1)=='E')) {
+                        tokenPos++;
                         break;
                      }
                   	 // End of REAL hack.  
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                      }
                      tokenStartPos = linePos+1;
-                     token[tokenPos++] = c;
-                     if ( !((result.isEmpty() || ((Token)result.get(result.size()-1)).getType() != TokenTypes.IDENTIFIER) &&
-                           (line.length >= linePos+2 && Character.isDigit(line[linePos+1]))) ) {
+                     tokenPos++;
+                     if ( !((lineTokenCount == 0 || lineTypes[lineTokenCount-1] != TokenTypes.IDENTIFIER) &&
+                           (lineLength >= linePos+2 && Character.isDigit(theLine.charAt(linePos+1)))) ) {
                            // treat it as binary.....
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                      }
                      break; 
@@ -358,44 +497,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   case '(' :
                   case ')' :
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                      }
                      tokenStartPos = linePos+1;
-                     token[tokenPos++] = c;
-                     this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                     tokenPos++;
+                     this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                      tokenPos = 0;
                      break; 
                   case '"' : // we're not inside a quoted string, so start a new token...
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                      }
                      tokenStartPos = linePos+1;
-                     token[tokenPos++] = c;
+                     tokenPos++;
                      insideQuotedString = true;
                      break;
                   case '\'' : // start of character constant (single quote).
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                      }
                   	// Our strategy is to process the whole thing right now...
                      tokenStartPos = linePos+1;
-                     token[tokenPos++] = c; // Put the quote in token[0]
-                     int lookaheadChars = line.length - linePos - 1;
+                     tokenPos++; // the quote
+                     int lookaheadChars = lineLength - linePos - 1;
                   	// need minimum 2 more characters, 1 for char and 1 for ending quote
                      if (lookaheadChars < 2) 
                         break;  // gonna be an error
-                     c = line[++linePos]; 
-                     token[tokenPos++] = c; // grab second character, put it in token[1]
+                     c = theLine.charAt(++linePos); 
+                     tokenPos++; // grab second character
                      if (c == '\'') 
                         break; // gonna be an error: nothing between the quotes
-                     c = line[++linePos];  
-                     token[tokenPos++] = c; // grab third character, put it in token[2]
+                     c = theLine.charAt(++linePos);  
+                     tokenPos++; // grab third character
                      // Process if we've either reached second, non-escaped, quote or end of line.
-                     if (c == '\'' && token[1] != '\\' || lookaheadChars==2) { 
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                     if (c == '\'' && theLine.charAt(tokenStartPos) != '\\' || lookaheadChars==2) { 
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                         tokenStartPos = linePos+1;
                         break;
@@ -403,11 +542,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   	// At this point, there is at least one more character on this line. If we're 
                   	// still here after seeing a second quote, it was escaped.  Not done yet;
                   	// we either have an escape code, an octal code (also escaped) or invalid.
-                     c = line[++linePos]; 
-                     token[tokenPos++] = c; // grab fourth character, put it in token[3]
+                     c = theLine.charAt(++linePos); 
+                     tokenPos++; // grab fourth character
                   	// Process, if this is ending quote for escaped character or if at end of line
                      if (c == '\'' || lookaheadChars==3) { 
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                         tokenPos = 0;
                         tokenStartPos = linePos+1;
                         break;
@@ -415,36 +554,33 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   	// At this point, we've handled all legal possibilities except octal, e.g. '\377'
                   	// Proceed, if enough characters remain to finish off octal.
                      if (lookaheadChars >= 5) {
-                        c = line[++linePos]; 
-                        token[tokenPos++] = c;  // grab fifth character, put it in token[4]
+                        c = theLine.charAt(++linePos); 
+                        tokenPos++;  // grab fifth character
                         if (c != '\'') {
                            // still haven't reached end, last chance for validity!
-                           c = line[++linePos];   
-                           token[tokenPos++] = c;  // grab sixth character, put it in token[5]
+                           c = theLine.charAt(++linePos);   
+                           tokenPos++;  // grab sixth character
                         }
                      }
                   	// process no matter what...we either have a valid character by now or not
-                     this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                     this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
                      tokenPos = 0;
                      tokenStartPos = linePos+1;
                      break;																			
                   default :
                      if (tokenPos == 0)
                         tokenStartPos = linePos+1;
-                     token[tokenPos++] = c;
+                     tokenPos++;
                      break; 
                }  // switch
             } // if (insideQuotedString)
             linePos++;
          }  // while
          if (tokenPos > 0) {
-            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos);
             tokenPos = 0;
          }
-         if (doEqvSubstitutes) {
-            result = processEqv(program, lineNum, theLine, result); // DPS 11-July-2012
-         }
-         return result;
+         return new LineTokens(lineTypes, lineValues, lineStartPositions, lineTokenCount);
       }
    
       // Process the .eqv directive, which needs to be applied prior to tokenizing of subsequent statements.
@@ -457,30 +593,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	// See if it is .eqv directive.  If so, record it...
       	// Have to assure it is a well-formed statement right now (can't wait for assembler).
       
-         if (tokens.size()>2 && (tokens.get(0).getType() == TokenTypes.DIRECTIVE || tokens.get(2).getType() == TokenTypes.DIRECTIVE)) {
+         if (tokens.size()>2 && (tokens.getType(0) == TokenTypes.DIRECTIVE || tokens.getType(2) == TokenTypes.DIRECTIVE)) {
             // There should not be a label but if there is, the directive is in token position 2 (ident, colon, directive).
-            int dirPos = (tokens.get(0).getType() == TokenTypes.DIRECTIVE) ? 0 : 2; 
-            if (Directives.matchDirective(tokens.get(dirPos).getValue()) == Directives.EQV) {
+            int dirPos = (tokens.getType(0) == TokenTypes.DIRECTIVE) ? 0 : 2; 
+            if (Directives.matchDirective(tokens.getValue(dirPos)) == Directives.EQV) {
                // Get position in token list of last non-comment token
-               int tokenPosLastOperand = tokens.size() - ((tokens.get(tokens.size()-1).getType()==TokenTypes.COMMENT)? 2 : 1);
+               int tokenPosLastOperand = tokens.size() - ((tokens.getType(tokens.size()-1)==TokenTypes.COMMENT)? 2 : 1);
                // There have to be at least two non-comment tokens beyond the directive
                if (tokenPosLastOperand < dirPos+2) {
-                  errors.add(new ErrorMessage(program, lineNum,tokens.get(dirPos).getStartPos(), 
+                  errors.add(new ErrorMessage(program, lineNum,tokens.getStartPosition(dirPos), 
                        "Too few operands for "+Directives.EQV.getName()+" directive"));
                   return tokens;
                }
                // Token following the directive has to be IDENTIFIER
-               if (tokens.get(dirPos+1).getType() != TokenTypes.IDENTIFIER) {
-                  errors.add(new ErrorMessage(program, lineNum,tokens.get(dirPos).getStartPos(), 
+               if (tokens.getType(dirPos+1) != TokenTypes.IDENTIFIER) {
+                  errors.add(new ErrorMessage(program, lineNum,tokens.getStartPosition(dirPos), 
                        "Malformed "+Directives.EQV.getName()+" directive"));
                   return tokens;
                }
-               String symbol = tokens.get(dirPos+1).getValue();
+               String symbol = tokens.getValue(dirPos+1);
             	// Make sure the symbol is not contained in the expression.  Not likely to occur but if left
             	// undetected it will result in infinite recursion.  e.g.  .eqv ONE, (ONE)
                for (int i=dirPos+2; i<tokens.size(); i++) {
-                  if (tokens.get(i).getValue().equals(symbol)) {
-                     errors.add(new ErrorMessage(program, lineNum,tokens.get(dirPos).getStartPos(), 
+                  if (tokens.getValue(i).equals(symbol)) {
+                     errors.add(new ErrorMessage(program, lineNum,tokens.getStartPosition(dirPos), 
                         "Cannot substitute "+symbol+" for itself in "+Directives.EQV.getName()+" directive"));
                      return tokens;
                   }
@@ -488,12 +624,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                // Expected syntax is symbol, expression.  I'm allowing the expression to comprise
                // multiple tokens, so I want to get everything from the IDENTIFIER to either the
             	// COMMENT or to the end.
-               int startExpression = tokens.get(dirPos+2).getStartPos();
-               int endExpression = tokens.get(tokenPosLastOperand).getStartPos() + tokens.get(tokenPosLastOperand).getValue().length();
+               int startExpression = tokens.getStartPosition(dirPos+2);
+               int endExpression = tokens.getStartPosition(tokenPosLastOperand) + tokens.getValue(tokenPosLastOperand).length();
                String expression = theLine.substring(startExpression-1,endExpression-1);
             	// Symbol cannot be redefined - the only reason for this is to act like the Gnu .eqv
                if (equivalents.containsKey(symbol) && !equivalents.get(symbol).equals(expression)) { 
-                  errors.add(new ErrorMessage(program, lineNum,tokens.get(dirPos+1).getStartPos(), 
+                  errors.add(new ErrorMessage(program, lineNum,tokens.getStartPosition(dirPos+1), 
                        "\""+symbol+"\" is already defined"));
                   return tokens;
                }
@@ -501,26 +637,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                return tokens;
             }
          }
-      	// Check if a substitution from defined .eqv is to be made.  If so, make one.
-         boolean substitutionMade = false;
-         for (int i=0; i<tokens.size(); i++) {
-            Token token = tokens.get(i);
-            if (token.getType() == TokenTypes.IDENTIFIER && equivalents != null && equivalents.containsKey(token.getValue())) {
-               // do the substitution
-               String sub = equivalents.get(token.getValue());
-               int startPos = token.getStartPos(); 
-               theLine = theLine.substring(0,startPos-1) + sub + theLine.substring(startPos+token.getValue().length()-1);
-               substitutionMade = true;             	// one substitution per call.  If there are multiple, will catch next one on the recursion
-               break; 
+      	// Check if substitutions from defined .eqv are to be made.  If so, make them all,
+      	// then tokenize the line again (by recursion, in case a substitute has symbols).
+         StringBuffer substituted = null;
+         if (equivalents != null && !equivalents.isEmpty()) {
+            int copied = 0;
+            for (int i=0; i<tokens.size(); i++) {
+               if (tokens.getType(i) == TokenTypes.IDENTIFIER && equivalents.containsKey(tokens.getValue(i))) {
+                  if (substituted == null) {
+                     substituted = new StringBuffer(theLine.length() + 32);
+                  }
+                  int startPos = tokens.getStartPosition(i) - 1;
+                  substituted.append(theLine, copied, startPos).append(equivalents.get(tokens.getValue(i)));
+                  copied = startPos + tokens.getValue(i).length();
+               }
+            }
+            if (substituted != null) {
+               theLine = substituted.append(theLine, copied, theLine.length()).toString();
             }
          }
          tokens.setProcessedLine(theLine); // DPS 03-Jan-2013. Related to changes of 11-July-2012.
       
-         return (substitutionMade) ? tokenizeLine(lineNum, theLine) : tokens;
+         return (substituted != null) ? tokenizeLine(lineNum, theLine) : tokens;
       }
    	
 	
    
+   /**
+    * Tells whether given symbol has been defined by an .eqv directive, in which case
+    * tokenizing a line with it as an identifier substitutes the symbol's expression.
+    *
+    * @param symbol the symbol
+    * @return true if an .eqv directive defined it, false otherwise
+    */
+       public boolean isEquivalent(String symbol) {
+         return equivalents != null && equivalents.containsKey(symbol);
+      }
+   
+   
    /** 
     * Fetch this Tokenizer's error list.
     *
@@ -531,19 +685,48 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    	 
    
-   // Given candidate token and its position, will classify and record it.
-       private void processCandidateToken(char[] token, MIPSprogram program, int line, String theLine, 
-       int tokenPos, int tokenStartPos, TokenList tokenList) {
-         String value = new String(token, 0, tokenPos);
-         if (value.length() > 0 && value.charAt(0)=='\'') value = preprocessCharacterLiteral(value);
-         TokenTypes type = TokenTypes.matchTokenType(value);
+   // Given candidate token's length and position, will classify and record it.  Quoted
+   // strings, comments and character literals are seldom repeated, so are not pooled.
+   // Nor is anything tokenized outside of tokenize(), such as instruction examples and
+   // macro expansions, since there is no pool then and one made here would never go.
+       private void processCandidateToken(MIPSprogram program, int line, String theLine, 
+       int tokenPos, int tokenStartPos) {
+         int start = tokenStartPos-1;
+         int end = start+tokenPos;
+         char first = theLine.charAt(start);
+         String value;
+         TokenTypes type;
+         TokenPool.Entry pooled = null;
+         if (pool == null || first == '"' || first == '/' || first == '\'') {
+            value = theLine.substring(start, end);
+            if (first == '\'') value = preprocessCharacterLiteral(value);
+            type = TokenTypes.matchTokenType(value);
+         } 
+         else {
+            pooled = pool.find(theLine, start, end);
+            if (pooled == null) {
+               value = theLine.substring(start, end);
+               type = TokenTypes.matchTokenType(value);
+               pool.add(value, type);
+            } 
+            else {
+               value = pooled.getValue();
+               type = pooled.getType();
+            }
+         }
          if (type == TokenTypes.ERROR) {
             errors.add(new ErrorMessage(program, line, tokenStartPos, 
                        theLine+"\nInvalid language element: "+value));
          }
-         Token toke = new Token(type, value, program, line, tokenStartPos);
-         tokenList.add(toke);
-         return;
+         if (lineTokenCount == lineTypes.length) {
+            lineTypes = Arrays.copyOf(lineTypes, 2*lineTokenCount);
+            lineValues = Arrays.copyOf(lineValues, 2*lineTokenCount);
+            lineStartPositions = Arrays.copyOf(lineStartPositions, 2*lineTokenCount);
+         }
+         lineTypes[lineTokenCount] = type;
+         lineValues[lineTokenCount] = value;
+         lineStartPositions[lineTokenCount] = tokenStartPos;
+         lineTokenCount++;
       }
    	
    	
@@ -577,4 +760,65 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }	
          return value;
       }
+   
+   // Tokens of one source line, without the program and line number, as found by
+   // findTokens().  A TokenList makes its Token objects from these when they are first
+   // wanted.  The same line anywhere, in this or a later tokenizing of the file, has the
+   // same tokens, so they are shared; TokenLists are changed by the assembler, so each
+   // gets Token objects of its own.
+       static class LineTokens {
+         static final LineTokens NONE = new LineTokens(new TokenTypes[0], new String[0], new int[0], 0);
+         private TokenTypes[] types;
+         private String[] values;
+         private int[] startPositions;
+      
+          LineTokens(TokenTypes[] types, String[] values, int[] startPositions, int count) {
+            this.types = Arrays.copyOf(types, count);
+            this.values = Arrays.copyOf(values, count);
+            this.startPositions = Arrays.copyOf(startPositions, count);
+         }
+      
+          int size() {
+            return types.length;
+         }
+      
+          TokenTypes getType(int i) {
+            return types[i];
+         }
+      
+          String getValue(int i) {
+            return values[i];
+         }
+      
+          int getStartPosition(int i) {
+            return startPositions[i];
+         }
+      
+          ArrayList<Token> createTokens(MIPSprogram program, int lineNum) {
+            ArrayList<Token> tokens = new ArrayList<Token>(types.length);
+            for (int i=0; i<types.length; i++) {
+               tokens.add(new Token(types[i], values[i], program, lineNum, startPositions[i]));
+            }
+            return tokens;
+         }
+      
+          TokenList createTokenList(MIPSprogram program, int lineNum, String theLine) {
+            TokenList tokens = new TokenList(this, program, lineNum);
+            tokens.setProcessedLine(theLine);
+            return tokens;
+         }
+      }
+   
+   // Lines of an included file, with the modification time and length it had when read.
+       private static class IncludedFile {
+         private long modified;
+         private long length;
+         private ArrayList<?> lines;
+      
+          IncludedFile(long modified, long length, ArrayList<?> lines) {
+            this.modified = modified;
+            this.length = length;
+            this.lines = lines;
+         }
+      }
    }
@@ -0,0 +1,198 @@
+   package mars.mips.hardware;
+   import java.nio.*;
+
+/*
+Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * The original MARS segment storage: a table of references to blocks of 1024 words
+ * (4K bytes).  Only the table is created initially; a block is not allocated until a
+ * value is written to an address within it, so small programs use very little space.
+ * The index into both arrays is easily computed from the word index; access time is
+ * constant.  See comments in Memory for the history of this scheme.
+ * <p>
+ * Blocks are copy-on-write.  copy() just copies the table, so the copy and the original
+ * share all their blocks, each marked shared; the first store into a shared block gives
+ * the storing side a private copy of it.  Each storage also remembers the blocks it has
+ * replaced since its last copy() or restore(), so restoring to that copy only needs to
+ * put those blocks back.
+ *
+ * @see SegmentStorage
+ * @version October 2026
+ */
+
+    public class BlockTableStorage implements SegmentStorage {
+   /** Number of words in each lazily allocated block. */
+      public static final int BLOCK_LENGTH_WORDS = 1024;  // 1024 ints == 4K bytes
+      private static final int[] EMPTY_BLOCK = new int[BLOCK_LENGTH_WORDS]; // never written
+      private int[][] blockTable;
+      private boolean[] shared;       // true if block may also be referenced by another storage
+      private int[] dirtyBlocks;      // blocks replaced or allocated since lastCopy was made
+      private boolean[] dirty;
+      private int dirtyCount;
+      private int replacements;       // count of blocks ever allocated or replaced
+      private BlockTableStorage lastCopy;
+      private int lastCopyReplacements; // lastCopy.replacements when it was made
+   
+   /**
+    * Create storage for a segment.
+    * @param tableLength number of entries in block table.  Capacity is
+    * tableLength * BLOCK_LENGTH_WORDS words.
+    */
+       public BlockTableStorage(int tableLength) {
+         blockTable = new int[tableLength][]; // array of null int[] references
+         shared = new boolean[tableLength];
+         dirtyBlocks = new int[tableLength];
+         dirty = new boolean[tableLength];
+      }
+   
+       public int fetchWord(int relative) {
+         int[] block = blockTable[relative / BLOCK_LENGTH_WORDS];
+         if (block == null) {
+            // first reference to an address in this block.  Assume initialized to 0.
+            return 0;
+         }
+         return block[relative % BLOCK_LENGTH_WORDS];
+      }
+   
+       public Integer fetchWordOrNull(int relative) {
+         int[] block = blockTable[relative / BLOCK_LENGTH_WORDS];
+         if (block == null) {
+            return null;
+         }
+         return Integer.valueOf(block[relative % BLOCK_LENGTH_WORDS]);
+      }
+   
+       public int storeWord(int relative, int value) {
+         int[] block = writableBlock(relative / BLOCK_LENGTH_WORDS);
+         int offset = relative % BLOCK_LENGTH_WORDS;
+         int oldValue = block[offset];
+         block[offset] = value;
+         return oldValue;
+      }
+   
+       public void fetchWords(int relative, IntBuffer buffer, int count) {
+         while (count > 0) {
+            int[] block = blockTable[relative / BLOCK_LENGTH_WORDS];
+            int offset = relative % BLOCK_LENGTH_WORDS;
+            int length = Math.min(count, BLOCK_LENGTH_WORDS - offset);
+            buffer.put((block == null) ? EMPTY_BLOCK : block, offset, length);
+            relative += length;
+            count -= length;
+         }
+      }
+   
+       public void storeWords(int relative, IntBuffer buffer, int count) {
+         while (count > 0) {
+            int[] block = writableBlock(relative / BLOCK_LENGTH_WORDS);
+            int offset = relative % BLOCK_LENGTH_WORDS;
+            int length = Math.min(count, BLOCK_LENGTH_WORDS - offset);
+            buffer.get(block, offset, length);
+            relative += length;
+            count -= length;
+         }
+      }
+   
+    // Get a block that can be written, allocating it or taking a private copy if need be.
+       private int[] writableBlock(int blockNumber) {
+         int[] block = blockTable[blockNumber];
+         if (block == null || shared[blockNumber]) {
+            // First time writing to this block, so allocate the space, or first time
+            // since it was shared, so take a private copy.
+            block = (block == null) ? new int[BLOCK_LENGTH_WORDS] : block.clone();
+            blockTable[blockNumber] = block;
+            shared[blockNumber] = false;
+            replacements++;
+            if (!dirty[blockNumber]) {
+               dirty[blockNumber] = true;
+               dirtyBlocks[dirtyCount++] = blockNumber;
+            }
+         }
+         return block;
+      }
+   
+       public SegmentStorage copy() {
+         BlockTableStorage copy = new BlockTableStorage(blockTable.length);
+         for (int i = 0; i < blockTable.length; i++) {
+            if (blockTable[i] != null) {
+               copy.blockTable[i] = blockTable[i];
+               copy.shared[i] = true;
+               shared[i] = true;
+            }
+         }
+         setLastCopy(copy);
+         return copy;
+      }
+   
+    // If the snapshot is the last copy taken and has not been written since, only the
+    // blocks this storage replaced since then differ from it.  Otherwise every block is
+    // compared, which is still just a reference comparison per table entry.
+       public boolean restore(SegmentStorage snapshot) {
+         if (!(snapshot instanceof BlockTableStorage) || 
+             ((BlockTableStorage) snapshot).blockTable.length != blockTable.length) {
+            return false;
+         }
+         BlockTableStorage saved = (BlockTableStorage) snapshot;
+         if (saved == lastCopy && saved.replacements == lastCopyReplacements) {
+            for (int i = 0; i < dirtyCount; i++) {
+               restoreBlock(saved, dirtyBlocks[i]);
+            }
+         } 
+         else {
+            for (int i = 0; i < blockTable.length; i++) {
+               if (blockTable[i] != saved.blockTable[i]) {
+                  restoreBlock(saved, i);
+               }
+            }
+         }
+         setLastCopy(saved);
+         return true;
+      }
+   
+       private void restoreBlock(BlockTableStorage saved, int blockNumber) {
+         blockTable[blockNumber] = saved.blockTable[blockNumber];
+         if (blockTable[blockNumber] != null) {
+            shared[blockNumber] = true;
+            saved.shared[blockNumber] = true;
+         }
+      }
+   
+    // From now on, track blocks that come to differ from the given copy.
+       private void setLastCopy(BlockTableStorage copy) {
+         for (int i = 0; i < dirtyCount; i++) {
+            dirty[dirtyBlocks[i]] = false;
+         }
+         dirtyCount = 0;
+         lastCopy = copy;
+         lastCopyReplacements = copy.replacements;
+      }
+   
+       public int getLengthWords() {
+         return blockTable.length * BLOCK_LENGTH_WORDS;
+      }
+   }
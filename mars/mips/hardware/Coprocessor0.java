@@ -182,6 +182,36 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
    
+   	/**
+   	  *  Copies the register values so they can be put back later by restoreState().
+   	  *  Used by SimulationContext when it switches from one context to another.
+   	  *  @return array holding the register values, for restoreState()
+   	  **/
+   	
+       public static int[] saveState(){
+         int[] state = new int[registers.length];
+         for (int i=0; i< registers.length; i++){
+            state[i] = registers[i].getValueNoNotify();
+         }
+         return state;
+      }
+      
+   	/**
+   	  *  Puts back register values copied by saveState().  Given null, resets every
+   	  *  register, the state of a fresh context.
+   	  *  @param state array returned by saveState(), or null
+   	  **/
+   	
+       public static void restoreState(int[] state){
+         if (state == null) {
+            resetRegisters();
+            return;
+         }
+         for (int i=0; i< registers.length; i++){
+            registers[i].setValue(state[i]);
+         }
+      }
+      
    	/**
    	  *  Method to reinitialize the values of the registers.
    	  **/
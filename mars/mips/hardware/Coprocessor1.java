@@ -377,7 +377,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static Register getRegister(String rName) {
          Register reg = null;
-         if (rName.charAt(0) == 'S' && rName.length() > 1) {
+         // Only a possible number after the S is parsed, not names such as SUB or STUR.
+         if (rName.charAt(0) == 'S' && rName.length() > 1 && mayBeRegisterNumber(rName.charAt(1))) {
             try {
                    // check for register number 0-31.
                reg = registers[Binary.stringToInt(rName.substring(1))];    // KENV 1/6/05
@@ -400,7 +401,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return reg;
       }
    
+    // True if c may begin a number accepted by Binary.stringToInt().
+       private static boolean mayBeRegisterNumber(char c) {
+         return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '#';
+      }
+   
+   	
+   	/**
+   	  *  Copies the register values so they can be put back later by restoreState().
+   	  *  Used by SimulationContext when it switches from one context to another.
+   	  *  @return array holding the register values, for restoreState()
+   	  **/
    	
+       public static int[] saveState(){
+         int[] state = new int[registers.length + 1];
+         for (int i=0; i< registers.length; i++){
+            state[i] = registers[i].getValueNoNotify();
+         }
+         state[registers.length] = condition.getValueNoNotify();
+         return state;
+      }
+      
+   	/**
+   	  *  Puts back register values copied by saveState().  Given null, resets every
+   	  *  register, the state of a fresh context.
+   	  *  @param state array returned by saveState(), or null
+   	  **/
+   	
+       public static void restoreState(int[] state){
+         if (state == null) {
+            resetRegisters();
+            return;
+         }
+         for (int i=0; i< registers.length; i++){
+            registers[i].setValue(state[i]);
+         }
+         condition.setValue(state[registers.length]);
+      }
+      
    	/**
    	  *  Method to reinitialize the values of the registers.
    	  **/
@@ -0,0 +1,233 @@
+   package mars.mips.hardware;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/*
+Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Segment storage that maps the whole segment onto a single ByteBuffer, with words
+ * kept in little-endian order.  A word access is one index computation and one
+ * bounds check, with no block table in between.  With MARS's default (little-endian)
+ * byte order, the buffer of a data, kernel data or MMIO segment holds its bytes in
+ * address order, so a memory-mapped file of one is a byte-for-byte image of the
+ * segment.  The stack is indexed down from its base address, as in the block table, so
+ * its file holds the word at the stack base first and each lower word after it.
+ * <p>
+ * A heap buffer is allocated at full segment size (4MB for the data segment) when
+ * the segment is first written; until then every word reads as zero.  A mapped file
+ * is mapped when the storage is created.  To keep fetchWordOrNull() compatible with
+ * BlockTableStorage, which the dump feature relies on, a flag records which 4K blocks
+ * have been written.
+ *
+ * @see SegmentStorage
+ * @version October 2026
+ */
+
+    public class FlatStorage implements SegmentStorage {
+      private ByteBuffer buffer; // null until first write, for a heap buffer
+      private int lengthWords;
+      private boolean[] blockWritten;
+   
+   /**
+    * Create storage for a segment in a heap ByteBuffer, allocated on first write.
+    * @param lengthWords capacity in words
+    */
+       public FlatStorage(int lengthWords) {
+         this((ByteBuffer) null, lengthWords, false);
+      }
+   
+   /**
+    * Create storage for a segment backed by a memory-mapped file.  The file is created
+    * if necessary and sized to the segment.  If contents are kept, whatever the file
+    * already holds becomes the segment's contents without being copied, which is how
+    * a segment image saved by an earlier run is reloaded.  Otherwise the file is
+    * cleared first.
+    * @param file the file to map
+    * @param lengthWords capacity in words
+    * @param keepContents true to use the existing file contents, false to start with zeros
+    * @throws IOException if the file cannot be opened or mapped
+    */
+       public FlatStorage(File file, int lengthWords, boolean keepContents) throws IOException {
+         this(map(file, lengthWords * Memory.WORD_LENGTH_BYTES, keepContents), lengthWords, keepContents);
+      }
+   
+       private FlatStorage(ByteBuffer buffer, int lengthWords, boolean allWritten) {
+         this.buffer = buffer;
+         if (buffer != null) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+         }
+         this.lengthWords = lengthWords;
+         blockWritten = new boolean[(lengthWords + BlockTableStorage.BLOCK_LENGTH_WORDS - 1) / BlockTableStorage.BLOCK_LENGTH_WORDS];
+         if (allWritten) {
+            java.util.Arrays.fill(blockWritten, true);
+         }
+      }
+   
+       private static ByteBuffer map(File file, int lengthBytes, boolean keepContents) throws IOException {
+         RandomAccessFile raf = new RandomAccessFile(file, "rw");
+         try {
+            if (!keepContents) {
+               raf.setLength(0);
+            }
+            raf.setLength(lengthBytes);
+            // The mapping stays valid after the channel is closed.
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, lengthBytes);
+         } 
+         finally {
+            raf.close();
+         }
+      }
+   
+    // The buffer, allocating it if this is the first write.
+       private ByteBuffer writableBuffer() {
+         if (buffer == null) {
+            buffer = ByteBuffer.allocate(lengthWords * Memory.WORD_LENGTH_BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+         }
+         return buffer;
+      }
+   
+       public int fetchWord(int relative) {
+         if (buffer == null) {
+            if (relative < 0 || relative >= lengthWords) {
+               throw new IndexOutOfBoundsException();
+            }
+            return 0;
+         }
+         return buffer.getInt(relative << 2);
+      }
+   
+       public Integer fetchWordOrNull(int relative) {
+         if (!blockWritten[relative / BlockTableStorage.BLOCK_LENGTH_WORDS]) {
+            return null;
+         }
+         return Integer.valueOf(buffer.getInt(relative << 2));
+      }
+   
+       public int storeWord(int relative, int value) {
+         ByteBuffer bytes = writableBuffer();
+         int oldValue = bytes.getInt(relative << 2);
+         bytes.putInt(relative << 2, value);
+         blockWritten[relative / BlockTableStorage.BLOCK_LENGTH_WORDS] = true;
+         return oldValue;
+      }
+   
+       public void fetchWords(int relative, IntBuffer buffer, int count) {
+         if (this.buffer == null) {
+            if (relative < 0 || relative + count > lengthWords) {
+               throw new IndexOutOfBoundsException();
+            }
+            for (int i = 0; i < count; i++) {
+               buffer.put(0);
+            }
+            return;
+         }
+         buffer.put(words(relative, count));
+      }
+   
+       public void storeWords(int relative, IntBuffer buffer, int count) {
+         int limit = buffer.limit();
+         buffer.limit(buffer.position() + count);
+         writableBuffer();
+         words(relative, count).put(buffer);
+         buffer.limit(limit);
+         int blockLengthWords = BlockTableStorage.BLOCK_LENGTH_WORDS;
+         for (int i = relative / blockLengthWords; i <= (relative + count - 1) / blockLengthWords; i++) {
+            blockWritten[i] = true;
+         }
+      }
+   
+    // View of part of the buffer as words.  The view of a buffer takes its byte order.
+       private IntBuffer words(int relative, int count) {
+         ByteBuffer bytes = buffer.duplicate();
+         bytes.order(ByteOrder.LITTLE_ENDIAN);
+         bytes.limit((relative + count) << 2);
+         bytes.position(relative << 2);
+         return bytes.asIntBuffer();
+      }
+   
+    // The copy is always a heap buffer, even if this one is a mapped file, and only
+    // the blocks that have been written are copied into it.
+       public SegmentStorage copy() {
+         int blockLengthBytes = BlockTableStorage.BLOCK_LENGTH_WORDS * Memory.WORD_LENGTH_BYTES;
+         FlatStorage copy = new FlatStorage(lengthWords);
+         for (int i = 0; i < blockWritten.length; i++) {
+            if (blockWritten[i]) {
+               int start = i * blockLengthBytes;
+               ByteBuffer block = buffer.duplicate();
+               block.limit(Math.min(start + blockLengthBytes, buffer.capacity()));
+               block.position(start);
+               ByteBuffer target = copy.writableBuffer();
+               target.position(start);
+               target.put(block);
+               copy.blockWritten[i] = true;
+            }
+         }
+         return copy;
+      }
+   
+    // Copies back every block written in either storage.  This backend has no block
+    // sharing, so both copy() and restore() take time proportional to the data used.
+       public boolean restore(SegmentStorage snapshot) {
+         if (!(snapshot instanceof FlatStorage) || 
+             ((FlatStorage) snapshot).lengthWords != lengthWords) {
+            return false;
+         }
+         FlatStorage saved = (FlatStorage) snapshot;
+         int blockLengthBytes = BlockTableStorage.BLOCK_LENGTH_WORDS * Memory.WORD_LENGTH_BYTES;
+         int lengthBytes = lengthWords * Memory.WORD_LENGTH_BYTES;
+         byte[] zeros = null;
+         for (int i = 0; i < blockWritten.length; i++) {
+            int start = i * blockLengthBytes;
+            int end = Math.min(start + blockLengthBytes, lengthBytes);
+            if (saved.blockWritten[i]) {
+               ByteBuffer block = saved.buffer.duplicate();
+               block.limit(end);
+               block.position(start);
+               ByteBuffer target = writableBuffer();
+               target.position(start);
+               target.put(block);
+            } 
+            else if (blockWritten[i]) {
+               if (zeros == null) {
+                  zeros = new byte[blockLengthBytes];
+               }
+               buffer.position(start);
+               buffer.put(zeros, 0, end - start);
+            }
+            blockWritten[i] = saved.blockWritten[i];
+         }
+         return true;
+      }
+   
+       public int getLengthWords() {
+         return lengthWords;
+      }
+   }
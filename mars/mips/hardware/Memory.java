@@ -4,6 +4,7 @@
    import mars.simulator.*;
    import mars.mips.instructions.*;
    import java.util.*;
+   import java.nio.*;
 	
 	/*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -104,6 +105,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // on target address being ANYWHERE IN THE RANGE (not an exact key match).
       
       Collection observables = getNewMemoryObserversCollection();
+      
+    // True while at least one observer is registered.  When false, memory accesses
+    // skip notification entirely ("quiet" mode, the normal case for command-line runs).
+    // Set by addObserver, recomputed by deleteObserver, so a tool that attaches in the
+    // middle of a run starts getting notices with the next access.
+      private volatile boolean observed = false;
    
     // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
     // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
@@ -128,11 +135,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // (I don't have a reference for that offhand...)  Using my scheme, 0x10040000 falls at
     // the start of the 65'th block -- table entry 64.  That leaves (1024-64) * 4096 = 3,932,160
     // bytes of space available without going indirect.
+    //
+    // The block table is kept by BlockTableStorage.  FlatStorage instead holds a segment in
+    // one ByteBuffer; the MemoryBackend setting selects which is used.
     
-      private static final int BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
+      private static final int BLOCK_LENGTH_WORDS = BlockTableStorage.BLOCK_LENGTH_WORDS;  // allocated blocksize 1024 ints == 4K bytes
       private static final int BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
-      private int[][] dataBlockTable;
-      private int[][] kernelDataBlockTable;
+      private SegmentStorage dataBlockTable;
+      private SegmentStorage kernelDataBlockTable;
     
     // The stack is modeled similarly to the data segment.  It cannot share the same
     // data structure because the stack base address is very large.  To store it in the
@@ -149,7 +159,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // Everything else works the same, so it shares some private helper methods with
     // data segment algorithms.
     
-      private int[][] stackBlockTable;
+      private SegmentStorage stackBlockTable;
    
     // Memory mapped I/O is simulated with a separate table using the same structure and
     // logic as data segment.  Memory is allocated in 4K byte blocks.  But since MMIO
@@ -162,7 +172,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // into a table offset, this is of no concern.
    
       private static final int MMIO_TABLE_LENGTH = 16; // Each entry of table points to a 4K block.
-      private int[][] memoryMapBlockTable;
+      private SegmentStorage memoryMapBlockTable;
    	    
     // I use a similar scheme for storing instructions.  MIPS text segment ranges from
     // 0x00400000 all the way to data segment (0x10000000) a range of about 250 MB!  So
@@ -174,6 +184,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int TEXT_BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
       private ProgramStatement[][] textBlockTable;
       private ProgramStatement[][] kernelTextBlockTable;
+   // True if the text block tables may also be referenced by a copy or snapshot of this
+   // Memory.  They are then copied before the next statement is stored.
+      private boolean textTablesShared = false;
+   // Heap address when this Memory was copied, for use when it serves as a snapshot.
+      private int heapAddressAtCopy;
     
     // Set "top" address boundary to go with each "base" address.  This determines permissable
     // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
@@ -206,6 +221,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          initialize();
       }
    
+    /*
+     * Private constructor for a copy of given Memory.  See copy().
+     **/
+       private Memory(Memory original) {
+         textBlockTable = original.textBlockTable;
+         kernelTextBlockTable = original.kernelTextBlockTable;
+         textTablesShared = original.textTablesShared = true;
+         heapAddressAtCopy = heapAddress;
+         dataBlockTable = original.dataBlockTable.copy();
+         kernelDataBlockTable = original.kernelDataBlockTable.copy();
+         stackBlockTable = original.stackBlockTable.copy();
+         memoryMapBlockTable = original.memoryMapBlockTable.copy();
+      }
+   
+    // Copy of a text block table, made before storing into one that is shared.  The
+    // statements themselves are not changed once stored, so they can be shared.
+       private static ProgramStatement[][] copyTextBlockTable(ProgramStatement[][] table) {
+         ProgramStatement[][] copy = new ProgramStatement[table.length][];
+         for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+               copy[i] = table[i].clone();
+            }
+         }
+         return copy;
+      }
+   
      /**
       * Returns the unique Memory instance, which becomes in essence global.
    	*/
@@ -214,6 +255,60 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return uniqueMemoryInstance;
       }
    	
+     /**
+      * Returns a new Memory instance, separate from the one returned by getInstance().
+      * Used by SimulationContext so that each context has a memory image of its own.
+      * The segment addresses are shared by all instances.
+   	*/
+   	
+       public static Memory createInstance() {
+         return new Memory();
+      }
+   	
+     /**
+      * Returns a copy of this memory: the same contents in every segment, but separate
+      * storage, so that later stores to either one are not seen by the other.  Observers
+      * are not copied.  The copy may be used as a memory of its own (SimulationContext.fork()
+      * does this) or kept as a snapshot to be given to restore().
+      * <p>
+      * With the default block table storage the two share their 4K blocks copy-on-write,
+      * so this takes time proportional to the number of blocks in use, not their size;
+      * a block is duplicated only when first stored into by either side.
+   	*/
+   	
+       public synchronized Memory copy() {
+         return new Memory(this);
+      }
+   
+     /**
+      * Puts the contents of every segment back the way they were when the given snapshot
+      * was taken by copy(), along with the heap address.  Observers are not notified.
+      * With the default block table storage, restoring to the most recent snapshot takes
+      * time proportional to the number of blocks stored into since it was taken.
+      * @param snapshot Memory returned by an earlier call to copy(), normally of this Memory.
+   	*/
+   	
+       public synchronized void restore(Memory snapshot) {
+         synchronized (snapshot) {
+            if (textBlockTable != snapshot.textBlockTable || kernelTextBlockTable != snapshot.kernelTextBlockTable) {
+               textBlockTable = snapshot.textBlockTable;
+               kernelTextBlockTable = snapshot.kernelTextBlockTable;
+               textTablesShared = snapshot.textTablesShared = true;
+            }
+            dataBlockTable = restoreSegment(dataBlockTable, snapshot.dataBlockTable);
+            kernelDataBlockTable = restoreSegment(kernelDataBlockTable, snapshot.kernelDataBlockTable);
+            stackBlockTable = restoreSegment(stackBlockTable, snapshot.stackBlockTable);
+            memoryMapBlockTable = restoreSegment(memoryMapBlockTable, snapshot.memoryMapBlockTable);
+            heapAddress = snapshot.heapAddressAtCopy;
+         }
+      }
+   
+    // Storage holding the snapshot's contents: the given one restored if possible,
+    // otherwise (backend setting changed since) a copy of the snapshot's.
+       private static SegmentStorage restoreSegment(SegmentStorage storage, SegmentStorage snapshot) {
+         return storage.restore(snapshot) ? storage : snapshot.copy();
+      }
+   	
    	/**
    	 * Explicitly clear the contents of memory.  Typically done at start of assembly.
    	 */
@@ -287,13 +382,37 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private void initialize() {
          heapAddress = heapBaseAddress;
          textBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-         dataBlockTable  = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
          kernelTextBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-         kernelDataBlockTable  = new int[BLOCK_TABLE_LENGTH][];      
-         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
-         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+         dataBlockTable  = createSegmentStorage("data", BLOCK_TABLE_LENGTH);
+         kernelDataBlockTable  = createSegmentStorage("kdata", BLOCK_TABLE_LENGTH);      
+         stackBlockTable = createSegmentStorage("stack", BLOCK_TABLE_LENGTH);
+         memoryMapBlockTable = createSegmentStorage("mmio", MMIO_TABLE_LENGTH);
          System.gc(); // call garbage collector on any Table memory just deallocated. 	  
       }  
+   
+    // Create storage for a data-like segment using the backend selected by the MemoryBackend
+    // setting.  Size is given in 4K blocks.  For the flat backend, if a directory is set for
+    // memory-mapped segments then each segment is mapped from a file named for it there
+    // (e.g. data.seg), keeping what the file holds if the MemoryMappedKeepContents setting
+    // is on and clearing it otherwise; if that fails we fall back to a heap buffer.
+       private SegmentStorage createSegmentStorage(String name, int blocks) {
+         Settings settings = Globals.getSettings();
+         if (settings == null || !Settings.MEMORY_BACKEND_FLAT.equalsIgnoreCase(settings.getMemoryBackend())) {
+            return new BlockTableStorage(blocks);
+         }
+         int lengthWords = blocks * BLOCK_LENGTH_WORDS;
+         String directory = settings.getMemoryMappedDirectory();
+         if (directory != null && directory.length() > 0) {
+            try {
+               return new FlatStorage(new java.io.File(directory, name + ".seg"), lengthWords,
+                                      settings.getBooleanSetting(Settings.MEMORY_MAPPED_KEEP_CONTENTS));
+            } 
+                catch (java.io.IOException e) {
+                  System.err.println("Unable to map "+name+" segment into directory "+directory+": "+e);
+               }
+         }
+         return new FlatStorage(lengthWords);
+      }
      
    	/**
    	 * Returns the next available word-aligned heap address.  There is no recycling and
@@ -577,6 +696,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
          if (Globals.debug) System.out.println("memory["+address+"] set to "+statement.getBinaryStatement());
+         if (textTablesShared) {
+            textBlockTable = copyTextBlockTable(textBlockTable);
+            kernelTextBlockTable = copyTextBlockTable(kernelTextBlockTable);
+            textTablesShared = false;
+         }
          if (inTextSegment(address)) {
             storeProgramStatement(address, statement, textBaseAddress, textBlockTable);
          } 
@@ -875,6 +999,246 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public int getByte(int address) throws AddressErrorException {
          return get(address, 1);
       }
+
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /**
+     *  Reads bytes starting at the given address into an array, the same as calling
+     *  getByte() for each, for syscalls that take a string or buffer.  Unless observers
+     *  are watching the range (they are notified of each byte, as by getByte()), the
+     *  bytes are fetched a word at a time where the word lies within one segment.  Like InputStream.read(), may read fewer bytes
+     *  than asked for: it stops before a byte that cannot be read, and only if that is
+     *  the first byte is an exception thrown.  Call again to get the rest or the exception.
+     *
+     * @param address Address of the first byte to be read.
+     * @param bytes Array to put the bytes in.
+     * @param offset Position in the array for the first byte.
+     * @param length Largest number of bytes to read.
+     * @param stopAtNull If true, stop before the first null (zero) byte, which is not read.
+     * @return Number of bytes read.  0 only if length is 0, or stopAtNull is set and the first byte is null.
+     * @throws AddressErrorException If the first byte cannot be read.
+     **/
+       public int getBytes(int address, byte[] bytes, int offset, int length, boolean stopAtNull)
+                             throws AddressErrorException {
+         int lastAddress = address + length - 1;
+         boolean notify = (lastAddress < address) ? observed : hasObserversInRange(address, lastAddress);
+         int count = 0;
+         int segmentStart = 0;
+         int segmentEnd = -1;
+         int wordAddress = 0;
+         int word = 0;
+         boolean haveWord = false;
+         try {
+            while (count < length) {
+               int byteAddress = address + count;
+               int value;
+               if (!notify && !(haveWord && (byteAddress & ~3) == wordAddress) &&
+                   !(segmentStart <= byteAddress && byteAddress <= segmentEnd)) {
+                  segmentStart = getSegmentStart(byteAddress);
+                  segmentEnd = getSegmentEnd(byteAddress);
+               }
+               if (notify || (byteAddress & ~3) < segmentStart || (byteAddress | 3) > segmentEnd) {
+                  // one byte at a time, where observers are told or the word is not all in one segment
+                  value = get(byteAddress, 1, notify);
+                  haveWord = false;
+               }
+               else {
+                  if (!haveWord || (byteAddress & ~3) != wordAddress) {
+                     wordAddress = byteAddress & ~3;
+                     word = get(wordAddress, WORD_LENGTH_BYTES, false);
+                     haveWord = true;
+                  }
+                  // fetching a word puts the byte at offset p in bits 8p..8p+7 in either byte order
+                  value = word >>> ((byteAddress - wordAddress) << 3);
+               }
+               value &= 0xFF;
+               if (stopAtNull && value == 0) {
+                  break;
+               }
+               bytes[offset + count++] = (byte) value;
+            }
+         }
+             catch (AddressErrorException e) {
+               if (count == 0) {
+                  get(address, 1, false); // to report the address of the byte, not its word
+                  throw e;
+               }
+            }
+         return count;
+      }
+   
+    // First and last addresses of the data segment get() reads the given address from, checked
+    // in the same order as there.  If none, the address itself as both, so it is read a byte
+    // at a time; that includes the text segment, where get() reads statements, not bytes.
+       private static int getSegmentStart(int address) {
+         if (inDataSegment(address)) {
+            return dataSegmentBaseAddress;
+         } 
+         else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            return stackLimitAddress + 1;
+         } 
+         else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+            return memoryMapBaseAddress;
+         } 
+         else if (inKernelDataSegment(address)) {
+            return kernelDataBaseAddress;
+         }
+         return address;
+      }
+   
+       private static int getSegmentEnd(int address) {
+         if (inDataSegment(address)) {
+            return dataSegmentLimitAddress - 1;
+         } 
+         else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            return stackBaseAddress;
+         } 
+         else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+            return memoryMapLimitAddress - 1;
+         } 
+         else if (inKernelDataSegment(address)) {
+            return kernelDataSegmentLimitAddress - 1;
+         }
+         return address;
+      }
+   
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /**
+     *  Reads bytes starting at the given address into a buffer, from its position up to
+     *  its limit, the same as calling getByte() for each.  Unless observers are watching
+     *  the range, words in the data segment, kernel data segment and memory mapped I/O
+     *  are copied whole blocks at a time; other bytes are read one at a time.
+     *
+     * @param address Address of the first byte to be read.
+     * @param buffer Buffer to put the bytes in.  Its position is advanced past the bytes
+     * read, including when an exception is thrown.
+     * @throws AddressErrorException If a byte in the range cannot be read.
+     **/
+   
+       public synchronized void readRange(int address, ByteBuffer buffer) throws AddressErrorException {
+         int lastAddress = address + buffer.remaining() - 1;
+         boolean notify = buffer.hasRemaining() && 
+                          ((lastAddress < address) ? observed : hasObserversInRange(address, lastAddress));
+         while (buffer.hasRemaining()) {
+            int words = notify ? 0 : transferWords(address, buffer, FETCH);
+            if (words > 0) {
+               address += words * WORD_LENGTH_BYTES;
+            }
+            else {
+               buffer.put((byte) get(address, 1, notify));
+               address++;
+            }
+         }
+      }
+   
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /**
+     *  Checks that every byte in a range can be read, as readRange() would read them, 
+     *  without reading them or notifying observers.  Bytes in the data segment, stack, 
+     *  kernel data segment and memory mapped I/O are checked a segment at a time.
+     *
+     * @param address Address of the first byte.
+     * @param length Number of bytes.
+     * @throws AddressErrorException For the first byte in the range that cannot be read.
+     **/
+   
+       public synchronized void checkReadableRange(int address, int length) throws AddressErrorException {
+         int remaining = length;
+         while (remaining > 0) {
+            int segmentEnd = getSegmentEnd(address);
+            int count;
+            if (segmentEnd != address || getSegmentStart(address) != address) {
+               count = (int) Math.min(remaining, (long) segmentEnd - address + 1);
+            }
+            else {
+               get(address, 1, false); // throws if the byte cannot be read
+               count = 1;
+            }
+            address += count;
+            remaining -= count;
+         }
+      }
+   
+    ///////////////////////////////////////////////////////////////////////////////////////
+    /**
+     *  Writes the bytes in a buffer, from its position up to its limit, starting at the
+     *  given address, the same as calling setByte() for each.  Unless observers are
+     *  watching the range or back-stepping is enabled, words in the data segment, kernel
+     *  data segment and memory mapped I/O are copied whole blocks at a time; other bytes
+     *  are written one at a time.
+     *
+     * @param address Address at which to write the first byte.
+     * @param buffer Buffer to take the bytes from.  Its position is advanced past the
+     * bytes written, including when an exception is thrown.
+     * @throws AddressErrorException If a byte in the range cannot be written.
+     **/
+   
+       public synchronized void writeRange(int address, ByteBuffer buffer) throws AddressErrorException {
+         int lastAddress = address + buffer.remaining() - 1;
+         boolean oneByOne = buffer.hasRemaining() && (Globals.getSettings().getBackSteppingEnabled() || 
+                            ((lastAddress < address) ? observed : hasObserversInRange(address, lastAddress)));
+         while (buffer.hasRemaining()) {
+            int words = oneByOne ? 0 : transferWords(address, buffer, STORE);
+            if (words > 0) {
+               address += words * WORD_LENGTH_BYTES;
+            }
+            else {
+               setByte(address, buffer.get(buffer.position()));
+               buffer.position(buffer.position() + 1);
+               address++;
+            }
+         }
+      }
+   
+    // Move whole words between the buffer and a segment, as many as are left in the buffer
+    // and lie in the segment from the given address, and advance the buffer past them.
+    // Returns the number of words, which is 0 unless the address is word aligned and in the
+    // data segment, kernel data segment or memory mapped I/O.  (Words are stored in the
+    // stack in reverse order.)  Stored words hold the byte at address offset p in bits
+    // 8p..8p+7 in little-endian byte order and 24-8p..31-8p in big-endian, so they are
+    // put in and taken from the buffer in that byte order.
+       private int transferWords(int address, ByteBuffer buffer, boolean op) {
+         if ((address & 3) != 0 || buffer.remaining() < WORD_LENGTH_BYTES) {
+            return 0;
+         }
+         SegmentStorage storage;
+         int base;
+         int limit;
+         if (inDataSegment(address)) {
+            storage = dataBlockTable;
+            base = dataSegmentBaseAddress;
+            limit = dataSegmentLimitAddress;
+         } 
+         else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            return 0;
+         } 
+         else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+            storage = memoryMapBlockTable;
+            base = memoryMapBaseAddress;
+            limit = memoryMapLimitAddress;
+         } 
+         else if (inKernelDataSegment(address)) {
+            storage = kernelDataBlockTable;
+            base = kernelDataBaseAddress;
+            limit = kernelDataSegmentLimitAddress;
+         } 
+         else {
+            return 0;
+         }
+         int words = Math.min(buffer.remaining(), limit - address) / WORD_LENGTH_BYTES;
+         if (words > 0) {
+            ByteBuffer bytes = buffer.duplicate();
+            bytes.order((byteOrder == LITTLE_ENDIAN) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            int relative = (address - base) >> 2;
+            if (op == FETCH) {
+               storage.fetchWords(relative, bytes.asIntBuffer(), words);
+            }
+            else {
+               storage.storeWords(relative, bytes.asIntBuffer(), words);
+            }
+            buffer.position(buffer.position() + words * WORD_LENGTH_BYTES);
+         }
+         return words;
+      }
    
    ////////////////////////////////////////////////////////////////////////////////
    /**
@@ -1119,6 +1483,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
          }
          observables.add(new MemoryObservable(obs, startAddr, endAddr));
+         observed = true;
       }
    
       /**
@@ -1128,15 +1493,43 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return observables.size();
       }
    
+      /**
+   	 *  Determine whether any observer is registered for a memory address in the
+   	 *  given range.  Range is inclusive; the last byte included is the last byte
+   	 *  of the word specified by the ending address, same as addObserver().
+   	 *  @param startAddr the low end of memory address range
+   	 *  @param endAddr the high end of memory address range
+   	 *  @return true if at least one observer would be notified of an access in range
+   	 */
+       public boolean hasObserversInRange(int startAddr, int endAddr) {
+         if (!observed) {
+            return false;
+         }
+         Iterator<?> it = observables.iterator();
+         while (it.hasNext()) {
+            MemoryObservable mo = (MemoryObservable)it.next();
+            if (mo.countObservers() > 0 && mo.overlaps(startAddr, endAddr)) {
+               return true;
+            }
+         }
+         return false;
+      }
+   
    	/**
    	 *  Remove specified memory observers
    	 *  @param obs  Observer to be removed
    	 */   		
        public void deleteObserver(Observer obs) {
+         boolean stillObserved = false;
          Iterator it = observables.iterator();
          while (it.hasNext()) {
-            ((MemoryObservable)it.next()).deleteObserver(obs);
+            MemoryObservable mo = (MemoryObservable)it.next();
+            mo.deleteObserver(obs);
+            if (mo.countObservers() > 0) {
+               stillObserved = true;
+            }
          }	
+         observed = stillObserved;
       }
    	
    	/**
@@ -1145,6 +1538,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void deleteObservers() {
          // just drop the collection
          observables = getNewMemoryObserversCollection();
+         observed = false;
       }
    	
    	/**
@@ -1188,6 +1582,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return (address >= lowAddress && address <= highAddress-1+WORD_LENGTH_BYTES);
          }
       	
+          public boolean overlaps(int startAddr, int endAddr) {
+            return (lowAddress <= endAddr-1+WORD_LENGTH_BYTES && highAddress-1+WORD_LENGTH_BYTES >= startAddr);
+         }
+      	
           public void notifyObserver(MemoryAccessNotice notice) {
             this.setChanged();
             this.notifyObservers(notice);
@@ -1221,7 +1619,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // The "|| Globals.getGui()==null" is a hack added 19 July 2012 DPS.  IF MIPS simulation
    // is from command mode, Globals.program is null but still want ability to observe.
        private void notifyAnyObservers(int type, int address, int length, int value) {
-         if ((Globals.program != null || Globals.getGui()==null) && this.observables.size() > 0) {
+         if (observed && (Globals.program != null || Globals.getGui()==null) && this.observables.size() > 0) {
             Iterator it = this.observables.iterator();
             MemoryObservable mo;
             while (it.hasNext()) {
@@ -1244,8 +1642,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final boolean STORE = true;
       private static final boolean FETCH = false;
    	 
-       private int storeBytesInTable(int [][] blockTable, 
+       private int storeBytesInTable(SegmentStorage blockTable, 
                                    int relativeByteAddress, int length, int value) {
+         int bytePosition = bytePositionInWord(blockTable, relativeByteAddress);
+         if (byteOrder == LITTLE_ENDIAN && bytePosition + length <= WORD_LENGTH_BYTES) {
+            return storeBytesInWord(blockTable, wordOfByte(blockTable, relativeByteAddress, bytePosition),
+                                    bytePosition, length, value);
+         }
          return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, value, STORE);
       }
    	
@@ -1257,10 +1660,60 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // and block size.
    //	
    
-       private int fetchBytesFromTable(int[][] blockTable, int relativeByteAddress, int length) {
+       private int fetchBytesFromTable(SegmentStorage blockTable, int relativeByteAddress, int length) {
+         int bytePosition = bytePositionInWord(blockTable, relativeByteAddress);
+         if (byteOrder == LITTLE_ENDIAN && bytePosition + length <= WORD_LENGTH_BYTES) {
+            return fetchBytesFromWord(blockTable, wordOfByte(blockTable, relativeByteAddress, bytePosition),
+                                      bytePosition, length);
+         }
          return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, 0, FETCH);
       }
    
+   ////////////////////////////////////////////////////////////////////////////////
+   //
+   // Fast path for the two helpers above, taken when all the bytes fall within one word
+   // (this includes every aligned word, halfword and byte access) and byte order is
+   // little-endian.  The word is read, and for a store written, once as a whole instead
+   // of once per byte.  In little-endian order the byte at address offset p within
+   // the word is bits 8p..8p+7 of the stored int, so a value of "length" bytes is
+   // simply shifted and masked.  Unaligned accesses that cross a word boundary, and
+   // big-endian, still go through storeOrFetchBytesInTable().
+   //
+   // Segment base addresses are word aligned, so the byte's position within its word
+   // is the low 2 bits of the relative address -- except in the stack, where relative
+   // addresses are counted downward from the stack base (see comments at top).  There
+   // the word holding a byte at relative address r is (r + p) / 4.
+   
+       private int bytePositionInWord(SegmentStorage blockTable, int relativeByteAddress) {
+         return (blockTable == stackBlockTable) ? (-relativeByteAddress) & 3 : relativeByteAddress & 3;
+      }
+   
+       private int wordOfByte(SegmentStorage blockTable, int relativeByteAddress, int bytePosition) {
+         return (blockTable == stackBlockTable) ? (relativeByteAddress + bytePosition) >> 2 : relativeByteAddress >> 2;
+      }
+   
+       private synchronized int storeBytesInWord(SegmentStorage blockTable, int relativeWord, 
+                                   int bytePosition, int length, int value) {
+         if (length == WORD_LENGTH_BYTES) {
+            return blockTable.storeWord(relativeWord, value);
+         }
+         int shift = bytePosition << 3;
+         int mask = ((1 << (length << 3)) - 1) << shift;
+         int word = blockTable.fetchWord(relativeWord);
+         blockTable.storeWord(relativeWord, (word & ~mask) | ((value << shift) & mask));
+         return (word & mask) >>> shift;
+      }
+   
+       private synchronized int fetchBytesFromWord(SegmentStorage blockTable, int relativeWord, 
+                                   int bytePosition, int length) {
+         int word = blockTable.fetchWord(relativeWord);
+         if (length == WORD_LENGTH_BYTES) {
+            return word;
+         }
+         int shift = bytePosition << 3;
+         return (word >>> shift) & ((1 << (length << 3)) - 1);
+      }
+   
    ////////////////////////////////////////////////////////////////////////////////		
    //
    // The helper's helper.  Works for either storing or fetching, little or big endian. 
@@ -1269,9 +1722,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // client using STORE or FETCH in last arg.
    // Modified 29 Dec 2005 to return old value of replaced bytes, for STORE.
    //
-       private synchronized int storeOrFetchBytesInTable(int [][] blockTable, 
+       private synchronized int storeOrFetchBytesInTable(SegmentStorage blockTable, 
                                    int relativeByteAddress, int length, int value, boolean op) {
-         int relativeWordAddress, block, offset, bytePositionInMemory, bytePositionInValue;
+         int relativeWordAddress, word, bytePositionInMemory, bytePositionInValue;
          int oldValue = 0; // for STORE, return old values of replaced bytes
          int loopStopper = 3-length;
       	// IF added DPS 22-Dec-2008. NOTE: has NOT been tested with Big-Endian.
@@ -1290,23 +1743,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          for (bytePositionInValue = 3; bytePositionInValue > loopStopper; bytePositionInValue--) {
             bytePositionInMemory = relativeByteAddress % 4;
             relativeWordAddress = relativeByteAddress >> 2;
-            block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
-            offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
-            if (blockTable[block] == null) {
-               if (op==STORE) 
-                  blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-               else 
-                  return 0;
-            }
+            word = blockTable.fetchWord(relativeWordAddress);
             if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
             if (op == STORE) {
-               oldValue = replaceByte(blockTable[block][offset], bytePositionInMemory,
+               oldValue = replaceByte(word, bytePositionInMemory,
                   								oldValue, bytePositionInValue);
-               blockTable[block][offset] = replaceByte(value, bytePositionInValue, 
-                                         blockTable[block][offset], bytePositionInMemory);
+               blockTable.storeWord(relativeWordAddress, replaceByte(value, bytePositionInValue, 
+                                         word, bytePositionInMemory));
             } 
             else {// op == FETCH
-               value = replaceByte(blockTable[block][offset], bytePositionInMemory, 
+               value = replaceByte(word, bytePositionInMemory, 
                                                           value, bytePositionInValue);
             }
             relativeByteAddress++;
@@ -1322,17 +1768,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // and block size.  Assumes address is word aligned, no endian processing.
    // Modified 29 Dec 2005 to return overwritten value.
          
-       private synchronized int storeWordInTable(int[][] blockTable, int relative, int value) {
-         int  block, offset, oldValue;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-               // First time writing to this block, so allocate the space.
-            blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-         }
-         oldValue = blockTable[block][offset];
-         blockTable[block][offset] = value;
-         return oldValue;
+       private synchronized int storeWordInTable(SegmentStorage blockTable, int relative, int value) {
+         return blockTable.storeWord(relative, value);
       }
       
    ////////////////////////////////////////////////////////////////////////////////
@@ -1343,19 +1780,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // and block size.  Assumes word alignment, no endian processing.
    //
    
-       private synchronized int fetchWordFromTable(int[][] blockTable, int relative) {
-         int value = 0;
-         int block, offset;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-                   // first reference to an address in this block.  Assume initialized to 0.
-            value = 0;
-         } 
-         else {
-            value = blockTable[block][offset];
-         }
-         return value;
+       private synchronized int fetchWordFromTable(SegmentStorage blockTable, int relative) {
+         return blockTable.fetchWord(relative);
       }     
        
        ////////////////////////////////////////////////////////////////////////////////
@@ -1370,19 +1796,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 // by Greg Gibeling of UC Berkeley, fall 2007.
        //
        
-       private synchronized Integer fetchWordOrNullFromTable(int[][] blockTable, int relative) {
-         int value = 0;
-         int block, offset;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-                       // first reference to an address in this block.  Assume initialized to 0.
-            return null;
-         } 
-         else {
-            value = blockTable[block][offset];
-         }
-         return new Integer(value);
+       private synchronized Integer fetchWordOrNullFromTable(SegmentStorage blockTable, int relative) {
+         return blockTable.fetchWordOrNull(relative);
       }
    	   
    ////////////////////////////////////////////////////////////////////////////////////
@@ -39,11 +39,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     public class Register extends Observable {
       private String name;
       private int number, resetValue;
-   	// volatile should be enough to allow safe multi-threaded access  
-   	// w/o the use of synchronized methods.  getValue and setValue
-   	// are the only methods here used by the register collection
-   	// (RegisterFile, Coprocessor0, Coprocessor1) methods. 
-      private volatile int value;
+   	// The value lives in storage[slot].  A register normally has a one-element
+   	// array of its own, but a register collection may supply a shared array so it
+   	// can read and write values by index without going through this object
+   	// (RegisterFile does this).  getValue and setValue are the only methods here
+   	// used by the register collection (RegisterFile, Coprocessor0, Coprocessor1) methods. 
+      private int[] storage;
+      private int slot;
+   	// True while at least one observer is registered.  When false, getValue and
+   	// setValue take a "quiet" path with no locking and no notification.  It is
+   	// maintained by the addObserver/deleteObserver overrides below, so an observer
+   	// that attaches in the middle of a run is notified from its next access on.
+      private volatile boolean observed = false;
       
    	 /**
         *  Creates a new register with specified name, number, and value.
@@ -53,9 +60,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
         */
    	  
        public Register(String n, int num, int val){
+         this(n, num, val, new int[1], 0);
+      }
+      
+   	 /**
+        *  Creates a new register with specified name, number, and value, whose value
+        *  is kept in an element of the given array rather than in the register itself.
+        *  Reads and writes through either are seen by the other.
+        *   @param n The name of the register.
+        *   @param num The number of the register.
+        *   @param val The inital (and reset) value of the register.
+        *   @param storage Array that holds the register value.
+        *   @param slot Index of the register value in storage.
+        */
+   	  
+       public Register(String n, int num, int val, int[] storage, int slot){
          name= n;
          number=num;
-         value= val;
+         this.storage = storage;
+         this.slot = slot;
+         storage[slot]= val;
          resetValue = val;
       }
       
@@ -74,9 +98,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return value The value of the Register.
    	  */
    	  
-       public synchronized int getValue(){
+       public int getValue(){
+         if (!observed) {
+            return storage[slot];
+         }
+         return getValueAndNotify();
+      }
+      
+       private synchronized int getValueAndNotify(){
          notifyAnyObservers(AccessNotice.READ);
-         return value;
+         return storage[slot];
       }
 
       
@@ -86,8 +117,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return value The value of the Register.
    	  */
    	  
-       public synchronized int getValueNoNotify(){
-         return value;
+       public int getValueNoNotify(){
+         return storage[slot];
       }
 		
    
@@ -115,9 +146,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return previous value of register
    	  */
    	  
-       public synchronized int setValue(int val){
-         int old = value;
-         value = val;
+       public int setValue(int val){
+         if (!observed) {
+            int old = storage[slot];
+            storage[slot] = val;
+            return old;
+         }
+         return setValueAndNotify(val);
+      }
+      
+       private synchronized int setValueAndNotify(int val){
+         int old = storage[slot];
+         storage[slot] = val;
          notifyAnyObservers(AccessNotice.WRITE);
          return old;
       }
@@ -128,7 +168,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  */
    	  
        public synchronized void resetValue(){
-         value = resetValue;
+         storage[slot] = resetValue;
       }
    	
    	/**
@@ -140,6 +180,45 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          resetValue = reset;
       }
    
+   	/**
+   	 *  Determine whether any observer is registered.  Register collections check
+   	 *  this before accessing a value directly in their storage array, since
+   	 *  observers must be notified of each access.
+   	 *  @return true if at least one observer is registered, false otherwise
+   	 */
+       public boolean hasObservers() {
+         return observed;
+      }
+   
+   	/**
+   	 *  Register an observer.  Overrides inherited method so the register leaves
+   	 *  its quiet (no notification) mode.
+   	 *  @param obs the observer
+   	 */
+       @SuppressWarnings("deprecation")
+       public synchronized void addObserver(Observer obs) {
+         super.addObserver(obs);
+         observed = true;
+      }
+   
+   	/**
+   	 *  Remove an observer.  Register returns to quiet mode if none are left.
+   	 *  @param obs the observer
+   	 */
+       @SuppressWarnings("deprecation")
+       public synchronized void deleteObserver(Observer obs) {
+         super.deleteObserver(obs);
+         observed = countObservers() > 0;
+      }
+   
+   	/**
+   	 *  Remove all observers.  Register returns to quiet mode.
+   	 */
+       public synchronized void deleteObservers() {
+         super.deleteObservers();
+         observed = false;
+      }
+   
    //
    // Method to notify any observers of register operation that has just occurred.
    //
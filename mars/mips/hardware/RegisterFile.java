@@ -52,24 +52,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static boolean flagV = false;
       private static boolean flagC = false;
    
+      // Register values, indexed by register number.  The simulator reads and writes
+      // these directly; the Register objects below are views onto the same array for
+      // use by RegistersWindow, tools and anything else that wants an Observable.
+      // XZR is hard-wired: reads of register 31 return 0 and writes are ignored.
+      public static final int ZERO_REGISTER = 31;
+      private static int [] values = new int[32];
+   
       private static Register [] regFile = 
-          { new Register("X0", 0, 0),new Register("X1", 1, 0),
-         	new Register("X2", 2, 0),new Register("X3", 3, 0),
-         	new Register("X4", 4, 0),new Register("X5", 5, 0),
-         	new Register("X6", 6, 0),new Register("X7", 7, 0),
-         	new Register("X8", 8, 0),new Register("X9", 9, 0),
-         	new Register("X10", 10, 0),new Register("X11", 11, 0), 
-         	new Register("X12", 12, 0),new Register("X13", 13, 0),
-         	new Register("X14", 14, 0),new Register("X15", 15, 0),
-         	new Register("X16", 16, 0),new Register("X17", 17, 0),
-         	new Register("X18", 18, 0),new Register("X19", 19, 0),
-         	new Register("X20", 20, 0),new Register("X21", 21, 0),
-         	new Register("X22", 22, 0),new Register("X23", 23, 0),
-         	new Register("X24", 24, 0),new Register("X25", 25, 0),
-         	new Register("X26", 26, 0),new Register("X27", 27, 0),
-         	new Register("X28", 28, Memory.stackPointer),
-         	new Register("X29", 29, 0),
-         	new Register("X30", 30, 0),new Register("XZR", 31, 0)
+          { new Register("X0", 0, 0, values, 0),new Register("X1", 1, 0, values, 1),
+         	new Register("X2", 2, 0, values, 2),new Register("X3", 3, 0, values, 3),
+         	new Register("X4", 4, 0, values, 4),new Register("X5", 5, 0, values, 5),
+         	new Register("X6", 6, 0, values, 6),new Register("X7", 7, 0, values, 7),
+         	new Register("X8", 8, 0, values, 8),new Register("X9", 9, 0, values, 9),
+         	new Register("X10", 10, 0, values, 10),new Register("X11", 11, 0, values, 11),
+         	new Register("X12", 12, 0, values, 12),new Register("X13", 13, 0, values, 13),
+         	new Register("X14", 14, 0, values, 14),new Register("X15", 15, 0, values, 15),
+         	new Register("X16", 16, 0, values, 16),new Register("X17", 17, 0, values, 17),
+         	new Register("X18", 18, 0, values, 18),new Register("X19", 19, 0, values, 19),
+         	new Register("X20", 20, 0, values, 20),new Register("X21", 21, 0, values, 21),
+         	new Register("X22", 22, 0, values, 22),new Register("X23", 23, 0, values, 23),
+         	new Register("X24", 24, 0, values, 24),new Register("X25", 25, 0, values, 25),
+         	new Register("X26", 26, 0, values, 26),new Register("X27", 27, 0, values, 27),
+         	new Register("X28", 28, Memory.stackPointer, values, 28),new Register("X29", 29, 0, values, 29),
+         	new Register("X30", 30, 0, values, 30),new Register("XZR", 31, 0, values, 31)
            };
 
       private static Register programCounter= new Register("pc", 32, Memory.textBaseAddress);
@@ -166,18 +172,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	 **/
 
 	public static int updateRegister(int num, int val) {
-		int old = 0;
-		if (num == 31) {
-			// System.out.println("You can not change the value of the zero  register.");
+		if (num < 0 || num >= ZERO_REGISTER) {
+			// XZR (or no such register), nothing to change.
+			return 0;
+		}
+		int old;
+		if (regFile[num].hasObservers()) {
+			old = regFile[num].setValue(val);
 		} else {
-			for (int i = 0; i < regFile.length; i++) {
-				if (regFile[i].getNumber() == num) {
-					old = (Globals.getSettings().getBackSteppingEnabled())
-							? Globals.program.getBackStepper().addRegisterFileRestore(num, regFile[i].setValue(val))
-							: regFile[i].setValue(val);
-					break;
-				}
-			}
+			old = values[num];
+			values[num] = val;
+		}
+		if (Globals.getSettings().getBackSteppingEnabled()) {
+			Globals.program.getBackStepper().addRegisterFileRestore(num, old);
 		}
 		return old;
 	}
@@ -214,8 +221,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	 **/
 
 	public static int getValue(int num) {
-		return regFile[num].getValue();
-
+		if (num == ZERO_REGISTER) {
+			return 0;
+		}
+		return regFile[num].hasObservers() ? regFile[num].getValue() : values[num];
 	}
 
 	/**
@@ -258,26 +267,48 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	 **/
 
 	public static Register getUserRegister(String Rname) {
-		Register reg = null;
-		if (Rname.charAt(0) == 'X') {
-			try {
-				// check for register number 0-31.
-				reg = regFile[Binary.stringToInt(Rname.substring(1))]; // KENV
-																		// 1/6/05
-			} catch (Exception e) {
-				// handles both NumberFormat and ArrayIndexOutOfBounds
-				// check for register mnemonic $zero thru $ra
-				reg = null; // just to be sure
-				// just do linear search; there aren't that many registers
-				for (int i = 0; i < regFile.length; i++) {
-					if (Rname.equals(regFile[i].getName())) {
-						reg = regFile[i];
-						break;
-					}
+		if (Rname.charAt(0) != 'X') {
+			return null;
+		}
+		// Usual case: register number 0-31 in one or two decimal digits.  Parsed
+		// here rather than by catching NumberFormatException, since the tokenizer
+		// asks about every token, and most that begin with X are not numbers.
+		char first = (Rname.length() > 1) ? Rname.charAt(1) : '#';
+		if (first >= '0' && first <= '9' && Rname.length() <= 3) {
+			int number = first - '0';
+			if (Rname.length() == 3) {
+				char second = Rname.charAt(2);
+				if (second < '0' || second > '9') {
+					return findRegisterByName(Rname);
 				}
+				number = number * 10 + (second - '0');
 			}
+			return (number < regFile.length) ? regFile[number] : null;
+		}
+		// Register mnemonic such as XZR (or any identifier beginning with X).
+		if (first != '-' && first != '+' && first != '#' && (first < '0' || first > '9')) {
+			return findRegisterByName(Rname);
+		}
+		// Anything else that might be a number (e.g. X0x1F) is left to Binary.
+		// Note it takes X alone as X0.
+		try {
+			// check for register number 0-31.
+			return regFile[Binary.stringToInt(Rname.substring(1))]; // KENV
+																	// 1/6/05
+		} catch (Exception e) {
+			// handles both NumberFormat and ArrayIndexOutOfBounds
+			return findRegisterByName(Rname);
 		}
-		return reg;
+	}
+
+	// just do linear search; there aren't that many registers
+	private static Register findRegisterByName(String Rname) {
+		for (int i = 0; i < regFile.length; i++) {
+			if (Rname.equals(regFile[i].getName())) {
+				return regFile[i];
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -364,6 +395,55 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		return programCounter.getResetValue();
 	}
 
+	/**
+	 * Copies the register values, program counter and condition flags, so they
+	 * can be put back later by restoreState(). Used by SimulationContext when it
+	 * switches from one context to another. Observers are not notified.
+	 * 
+	 * @return array holding the register file state, for restoreState()
+	 **/
+
+	public static int[] saveState() {
+		int[] state = new int[values.length + 2];
+		for (int i = 0; i < regFile.length; i++) {
+			state[i] = regFile[i].getValueNoNotify();
+		}
+		state[values.length] = programCounter.getValueNoNotify();
+		state[values.length + 1] = (flagN ? 8 : 0) | (flagZ ? 4 : 0) | (flagV ? 2 : 0) | (flagC ? 1 : 0);
+		return state;
+	}
+
+	/**
+	 * Puts back register values, program counter and condition flags copied by
+	 * saveState(). Given null, sets every register and the program counter to
+	 * its reset value and clears the flags, the state of a fresh context.
+	 * Otherwise each register is set through its Register object, so observers
+	 * such as the Registers window see the values put back.
+	 * 
+	 * @param state
+	 *            array returned by saveState(), or null
+	 **/
+
+	public static void restoreState(int[] state) {
+		if (state == null) {
+			for (int i = 0; i < regFile.length; i++) {
+				regFile[i].resetValue();
+			}
+			programCounter.resetValue();
+			flagN = flagZ = flagV = flagC = false;
+			return;
+		}
+		for (int i = 0; i < regFile.length; i++) {
+			regFile[i].setValue(state[i]);
+		}
+		programCounter.setValue(state[values.length]);
+		int flags = state[values.length + 1];
+		flagN = (flags & 8) != 0;
+		flagZ = (flags & 4) != 0;
+		flagV = (flags & 2) != 0;
+		flagC = (flags & 1) != 0;
+	}
+
 	/**
 	 * Method to reinitialize the values of the registers. <b>NOTE:</b> Should
 	 * <i>not</i> be called from command-mode MARS because this this method uses
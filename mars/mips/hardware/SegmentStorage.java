@@ -0,0 +1,115 @@
+   package mars.mips.hardware;
+   import java.nio.*;
+
+/*
+Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Storage for the words of one data-like memory segment (data, kernel data, stack or
+ * memory mapped I/O).  Memory decodes an address to a segment and a word index relative
+ * to that segment's base, then hands the index to the segment's storage.  Words are
+ * stored and fetched "raw": no byte order adjustment is done here.
+ * <p>
+ * Two implementations are available: BlockTableStorage, the original table of lazily
+ * allocated 4K blocks, and FlatStorage, a single little-endian ByteBuffer that may be
+ * backed by a memory-mapped file.  Which one Memory uses is selected by the
+ * MemoryBackend setting.
+ * <p>
+ * Implementations need not be thread-safe; Memory synchronizes access.  copy() and
+ * restore() provide Memory's snapshots; BlockTableStorage does them copy-on-write.
+ *
+ * @see Memory
+ * @version October 2026
+ */
+
+    public interface SegmentStorage {
+   
+   /**
+    * Fetch the word at given index.  A word that was never written reads as 0.
+    * @param relative word index relative to segment base
+    * @return value of the word
+    */
+       public int fetchWord(int relative);
+   
+   /**
+    * Fetch the word at given index, or null if nothing has ever been written to the
+    * 4K block containing it.  Used by the memory dump feature to find the end of
+    * the used part of a segment.
+    * @param relative word index relative to segment base
+    * @return value of the word, or null
+    */
+       public Integer fetchWordOrNull(int relative);
+   
+   /**
+    * Store a word at given index.
+    * @param relative word index relative to segment base
+    * @param value value to store
+    * @return previous value of the word
+    */
+       public int storeWord(int relative, int value);
+   
+   /**
+    * Fetch consecutive words into a buffer, as by fetchWord() for each.  Used by
+    * Memory.readRange() to move whole blocks at a time.
+    * @param relative word index of the first word relative to segment base
+    * @param buffer buffer to put the words in, starting at its position, which is advanced
+    * @param count number of words
+    */
+       public void fetchWords(int relative, IntBuffer buffer, int count);
+   
+   /**
+    * Store consecutive words from a buffer, as by storeWord() for each.  Used by
+    * Memory.writeRange() to move whole blocks at a time.
+    * @param relative word index of the first word relative to segment base
+    * @param buffer buffer to take the words from, starting at its position, which is advanced
+    * @param count number of words
+    */
+       public void storeWords(int relative, IntBuffer buffer, int count);
+   
+   /**
+    * Make an independent copy of this storage.  Later stores to either one are not
+    * seen by the other.  A copy also serves as a snapshot for restore().
+    * @return the copy
+    */
+       public SegmentStorage copy();
+   
+   /**
+    * Make the contents of this storage the same as those of the given snapshot, which
+    * is normally a copy made earlier of this storage.
+    * @param snapshot storage to take contents from; it is not changed.
+    * @return true if done, false if the snapshot is of a different kind or size, in
+    * which case this storage is unchanged.
+    */
+       public boolean restore(SegmentStorage snapshot);
+   
+   /**
+    * Get the capacity of this storage.
+    * @return number of words that can be stored
+    */
+       public int getLengthWords();
+   }
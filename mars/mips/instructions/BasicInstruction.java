@@ -45,6 +45,8 @@ public class BasicInstruction extends Instruction {
 
 	private int opcodeMask;  // integer with 1's where constants required (0/1 become 1, f/s/t become 0)
 	private int opcodeMatch; // integer matching constants required (0/1 become 0/1, f/s/t become 0)
+	private int[] operandShift;     // bit position of low end of each operand's field, -1 if it has none
+	private int[] operandFieldMask; // right-justified mask as wide as each operand's field
 	/**
 	 * BasicInstruction constructor.
 	 * 
@@ -82,6 +84,19 @@ public class BasicInstruction extends Instruction {
 
 		this.opcodeMask = (int) Long.parseLong(this.operationMask.replaceAll("[01]", "1").replaceAll("[^01]", "0"), 2);
 		this.opcodeMatch = (int) Long.parseLong(this.operationMask.replaceAll("[^1]", "0"), 2);
+		this.operandShift = new int[Instruction.operandMask.length];
+		this.operandFieldMask = new int[Instruction.operandMask.length];
+		for (int i = 0; i < Instruction.operandMask.length; i++) {
+		   int startPos = this.operationMask.indexOf(Instruction.operandMask[i]);
+		   int endPos = this.operationMask.lastIndexOf(Instruction.operandMask[i]);
+		   if (startPos < 0) {
+		      this.operandShift[i] = -1;
+		   } else {
+		      int width = endPos - startPos + 1;
+		      this.operandShift[i] = this.operationMask.length() - 1 - endPos;
+		      this.operandFieldMask[i] = (width >= 32) ? -1 : (1 << width) - 1;
+		   }
+		}
 	}
 	
 	  // Temporary constructor so that instructions without description yet will compile.
@@ -139,4 +154,27 @@ public class BasicInstruction extends Instruction {
 	public int getOpcodeMatch() {
 		return this.opcodeMatch;
 	}
+
+	/**
+	 * Gets the bit position of the least significant bit of an operand's field in the
+	 * machine instruction, as given by the operation mask.  The field of the first operand
+	 * is where the mask has 'f', and so on.
+	 *
+	 * @param operand Operand position (first operand is position 0).
+	 * @return Number of bits the operand value is shifted left, or -1 if the mask has no field for it.
+	 **/
+	public int getOperandShift(int operand) {
+		return (operand < this.operandShift.length) ? this.operandShift[operand] : -1;
+	}
+
+	/**
+	 * Gets a mask of 1's as wide as an operand's field in the machine instruction,
+	 * not yet shifted into position.  Operand values are truncated to this width.
+	 *
+	 * @param operand Operand position (first operand is position 0).
+	 * @return Right-justified field mask, or 0 if the mask has no field for the operand.
+	 **/
+	public int getOperandFieldMask(int operand) {
+		return (operand < this.operandFieldMask.length) ? this.operandFieldMask[operand] : 0;
+	}
 }
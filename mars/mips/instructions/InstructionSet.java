@@ -48,6 +48,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    {
       private ArrayList<Instruction> instructionList;
 	  private ArrayList<MatchMap> opcodeMatchMaps;
+      private HashMap<String, ArrayList<Instruction>> operatorIndex;
       private SyscallLoader syscallLoader;
       private static final String DOUBLE_SIZE_REGISTER_ERROR = "All floating-point registers must be even-numbered or use the D0,D1,etc syntax";
     /**
@@ -1641,6 +1642,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          syscallLoader = new SyscallLoader();
          syscallLoader.loadSyscalls();
       	
+        // Index instructions by mnemonic, for matchOperator().  Keys are upper case.
+        // Must come first since tokenizing the instruction examples uses it.
+         operatorIndex = new HashMap<String, ArrayList<Instruction>>();
+         for (int i = 0; i < instructionList.size(); i++)
+         {
+            Instruction inst = instructionList.get(i);
+            String key = inst.getName().toUpperCase(Locale.ROOT);
+            ArrayList<Instruction> matchingInstructions = operatorIndex.get(key);
+            if (matchingInstructions == null)
+            {
+               matchingInstructions = new ArrayList<Instruction>();
+               operatorIndex.put(key, matchingInstructions);
+            }
+            matchingInstructions.add(inst);
+         }
+      
         // Initialization step.  Create token list for each instruction example.  This is
         // used by parser to determine user program correct syntax.
          for (int i = 0; i < instructionList.size(); i++)
@@ -1683,24 +1700,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
     /**
      *  Given an operator mnemonic, will return the corresponding Instruction object(s)
-     *  from the instruction set.  Uses straight linear search technique.
+     *  from the instruction set.  Case-insensitive.  Looked up in an index built by
+     *  populate(), so the list returned is shared and must not be modified.
      *  @param name operator mnemonic (e.g. addi, sw,...)
      *  @return list of corresponding Instruction object(s), or null if not found.
      */
        public ArrayList<Instruction> matchOperator(String name)
       {
-         ArrayList<Instruction> matchingInstructions = null;
-        // Linear search for now....
-         for (int i = 0; i < instructionList.size(); i++)
-         {
-            if (((Instruction) instructionList.get(i)).getName().equalsIgnoreCase(name))
-            {
-               if (matchingInstructions == null) 
-                  matchingInstructions = new ArrayList<Instruction>();
-               matchingInstructions.add(instructionList.get(i));
-            }
-         }
-         return matchingInstructions;
+         // toUpperCase() returns the same string when already upper case, as mnemonics
+         // usually are, so the common case costs only the hash lookup.  Locale.ROOT on
+         // both sides, so that mnemonics such as ADDI match in any default locale.
+         return operatorIndex.get(name.toUpperCase(Locale.ROOT));
       }
    
    
@@ -1731,21 +1741,45 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
    	/*
    	 * Method to find and invoke a syscall given its service number.  Each syscall
-   	 * function is represented by an object in an array list.  Each object is of
-   	 * a class that implements Syscall or extends AbstractSyscall.
+   	 * function is represented by an object in a table indexed by service number.  Each
+   	 * object is of a class that implements Syscall or extends AbstractSyscall.
    	 */
    	 
        private void findAndSimulateSyscall(int number, ProgramStatement statement) 
                                                         throws ProcessingException {
-         Syscall service = syscallLoader.findSyscall(number);
-         if (service != null) {
-            service.simulate(statement);
+         if (syscallLoader.simulateSyscall(number, statement)) {
             return;
          }
          throw new ProcessingException(statement,
               "invalid or unimplemented syscall service: " +
               number + " ", Exceptions.SYSCALL_EXCEPTION);
       }
+   
+   /**
+    * Turn timing of syscalls on or off.  Each syscall is counted whether or not it is
+    * timed, but timing adds to the cost of every syscall, so it is off unless asked for.
+    * @param timing true to time syscalls, for getSyscallProfile()
+    */
+       public void setSyscallTiming(boolean timing) {
+         syscallLoader.setTiming(timing);
+      }
+   
+   /**
+    * Get the number of times each syscall service has been invoked since the profile
+    * was last reset, and the time those took while timing was on.
+    * @return ArrayList of SyscallProfile, one for each service invoked, in service
+    * number order
+    */
+       public ArrayList<SyscallProfile> getSyscallProfile() {
+         return syscallLoader.getProfile();
+      }
+   
+   /**
+    * Set the count and time of every syscall service back to zero.
+    */
+       public void resetSyscallProfile() {
+         syscallLoader.resetProfile();
+      }
    	
    	/*
    	 * Method to process a successful branch condition.  DO NOT USE WITH JUMP
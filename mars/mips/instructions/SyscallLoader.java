@@ -48,8 +48,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final String SYSCALL_INTERFACE = "Syscall.class";
       private static final String SYSCALL_ABSTRACT = "AbstractSyscall.class";
       private static final String CLASS_EXTENSION = "class";
+      // Service numbers below this are looked up in an array, others in a HashMap.
+      private static final int DISPATCH_TABLE_SIZE = 256;
       
-      private ArrayList syscallList;
+      private ArrayList<Syscall> syscallList;
+      private Service[] dispatchTable;
+      private HashMap<Integer,Service> sparseTable; // service number -> Service, for numbers outside dispatchTable
+      private boolean timing; // whether to time each syscall, as well as count it
    	
    /*
       *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
@@ -58,11 +63,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       *  in Java".  Also see the "loadMarsTools()" method from ToolLoader class.
       */
        void loadSyscalls() {
-         syscallList = new ArrayList();
+         syscallList = new ArrayList<Syscall>();
          // grab all class files in the same directory as Syscall
-         ArrayList candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
+         ArrayList<?> candidates = FilenameFinder.getFilenameList(this.getClass( ).getClassLoader(),
                                               SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
-		   HashMap syscalls = new HashMap();
+		   HashMap<String,String> syscalls = new HashMap<String,String>();
+         HashMap<Integer,Syscall> numbers = new HashMap<Integer,Syscall>(); // service number -> Syscall
          for( int i = 0; i < candidates.size(); i++) {
             String file = (String) candidates.get(i); 
 				// Do not add class if already encountered (happens if run in MARS development directory)
@@ -76,18 +82,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                try {
                   // grab the class, make sure it implements Syscall, instantiate, add to list
                   String syscallClassName = CLASS_PREFIX+file.substring(0, file.indexOf(CLASS_EXTENSION)-1);
-                  Class clas = Class.forName(syscallClassName);
+                  Class<?> clas = Class.forName(syscallClassName);
                   if (!Syscall.class.isAssignableFrom(clas)) {
                      continue;
                   }
                   Syscall syscall = (Syscall) clas.newInstance();
-                  if (findSyscall(syscall.getNumber()) == null) {
+                  Integer number = Integer.valueOf(syscall.getNumber());
+                  if (!numbers.containsKey(number)) {
+                     numbers.put(number, syscall);
                      syscallList.add(syscall);
                   } 
                   else {
                      throw new Exception("Duplicate service number: "+syscall.getNumber()+
                             " already registered to "+
-                            findSyscall(syscall.getNumber()).getName());
+                            numbers.get(number).getName());
                   }
                } 
                    catch (Exception e) {
@@ -97,49 +105,58 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
          }
          syscallList = processSyscallNumberOverrides(syscallList);
+         buildDispatchTable();
          return;
       }
          
        // Will get any syscall number override specifications from MARS config file and
        // process them.  This will alter syscallList entry for affected names.
-       private ArrayList processSyscallNumberOverrides(ArrayList syscallList) {
-         ArrayList overrides = new Globals().getSyscallOverrides();
+       private ArrayList<Syscall> processSyscallNumberOverrides(ArrayList<Syscall> syscallList) {
+         ArrayList<?> overrides = new Globals().getSyscallOverrides();
          SyscallNumberOverride override;
          Syscall syscall;
+         HashMap<String,ArrayList<Syscall>> names = new HashMap<String,ArrayList<Syscall>>(); // name -> Syscalls having that name
+         for (int i=0; i < syscallList.size(); i++) {
+            syscall = syscallList.get(i);
+            ArrayList<Syscall> named = names.get(syscall.getName());
+            if (named == null) {
+               named = new ArrayList<Syscall>();
+               names.put(syscall.getName(), named);
+            }
+            named.add(syscall);
+         }
          for (int index=0; index < overrides.size(); index++) {
             override = (SyscallNumberOverride) overrides.get(index);
-            boolean match = false; 
-            for (int i=0; i < syscallList.size(); i++) {
-               syscall = (Syscall) syscallList.get(i);
-               if (override.getName().equals(syscall.getName())) {
-                      // we have a match to service name, assign new number
-                  syscall.setNumber(override.getNumber());
-                  match = true;
-               } 
-            }
-            if (!match) {
+            ArrayList<Syscall> named = names.get(override.getName());
+            if (named == null) {
                System.out.println("Error: syscall name '"+override.getName()+
                      "' in config file does not match any name in syscall list");
                System.exit(0);
             }
+            for (int i=0; i < named.size(); i++) {
+                   // we have a match to service name, assign new number
+               named.get(i).setNumber(override.getNumber());
+            }
          }
          	// Wait until end to check for duplicate numbers.  To do so earlier
          	// would disallow for instance the exchange of numbers between two
-         	// services.  This is N-squared operation but N is small.
+         	// services.
       		// This will also detect duplicates that accidently occur from addition
       		// of a new Syscall subclass to the collection, even if the config file
       		// does not contain any overrides.
-         Syscall syscallA, syscallB;
+         HashMap<Integer,Syscall> numbers = new HashMap<Integer,Syscall>(); // service number -> first Syscall having it
          boolean duplicates = false;
          for (int i = 0; i < syscallList.size(); i++) {
-            syscallA = (Syscall)syscallList.get(i);
-            for (int j = i+1; j < syscallList.size(); j++) {
-               syscallB = (Syscall)syscallList.get(j);
-               if ( syscallA.getNumber() == syscallB.getNumber()) {
-                  System.out.println("Error: syscalls "+syscallA.getName()+" and "+
-                        syscallB.getName()+" are both assigned same number "+syscallA.getNumber());
-                  duplicates = true;
-               }
+            syscall = syscallList.get(i);
+            Integer number = Integer.valueOf(syscall.getNumber());
+            Syscall first = numbers.get(number);
+            if (first != null) {
+               System.out.println("Error: syscalls "+first.getName()+" and "+
+                     syscall.getName()+" are both assigned same number "+syscall.getNumber());
+               duplicates = true;
+            }
+            else {
+               numbers.put(number, syscall);
             }
          }
          if (duplicates) {
@@ -148,22 +165,119 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return syscallList;
       }
       
+       // Index the syscalls by service number.  Must be done again if any number changes.
+       private void buildDispatchTable() {
+         dispatchTable = new Service[DISPATCH_TABLE_SIZE];
+         sparseTable = new HashMap<Integer,Service>();
+         for (int i = 0; i < syscallList.size(); i++) {
+            Syscall syscall = syscallList.get(i);
+            int number = syscall.getNumber();
+            if (number >= 0 && number < DISPATCH_TABLE_SIZE) {
+               dispatchTable[number] = new Service(syscall);
+            }
+            else {
+               sparseTable.put(Integer.valueOf(number), new Service(syscall));
+            }
+         }
+      }
+      
+       // Service having the given number, or null if none.
+       private Service findService(int number) {
+         if (syscallList==null) {
+            loadSyscalls();
+         }
+         if (number >= 0 && number < DISPATCH_TABLE_SIZE) {
+            return dispatchTable[number];
+         }
+         return sparseTable.get(Integer.valueOf(number));
+      }
+      
    	/*
    	 * Method to find Syscall object associated with given service number.
    	 * Returns null if no associated object found.
    	 */
        Syscall findSyscall(int number) {
-         // linear search is OK since number of syscalls is small.
-         Syscall service, match = null;
+         Service service = findService(number);
+         return (service == null) ? null : service.syscall;
+      }
+      
+   	/*
+   	 * Method to invoke the Syscall object associated with given service number,
+   	 * counting the call and, if timing is on, adding the time it took to its total.
+   	 * Returns false if no associated object found.
+   	 */
+       boolean simulateSyscall(int number, ProgramStatement statement) throws ProcessingException {
+         Service service = findService(number);
+         if (service == null) {
+            return false;
+         }
+         service.count++;
+         if (!timing) {
+            service.syscall.simulate(statement);
+            return true;
+         }
+         long start = System.nanoTime();
+         try {
+            service.syscall.simulate(statement);
+         }
+         finally {
+            service.time += System.nanoTime() - start;
+         }
+         return true;
+      }
+      
+   	/*
+   	 * Method to turn timing of syscalls on or off.  They are always counted.
+   	 */
+       void setTiming(boolean timing) {
+         this.timing = timing;
+      }
+      
+   	/*
+   	 * Method to get the count and total time of each syscall invoked since the
+   	 * profile was last reset, as an ArrayList of SyscallProfile in service number order.
+   	 */
+       ArrayList<SyscallProfile> getProfile() {
          if (syscallList==null) {
             loadSyscalls();
          }
-         for (int index=0; index < syscallList.size(); index++) {
-            service = (Syscall) syscallList.get(index);
-            if (service.getNumber() == number) {
-               match = service;
-            }
+         ArrayList<SyscallProfile> profile = new ArrayList<SyscallProfile>();
+         for (int number = 0; number < DISPATCH_TABLE_SIZE; number++) {
+            addProfile(profile, dispatchTable[number]);
+         }
+         TreeMap<Integer,Service> sparse = new TreeMap<Integer,Service>(sparseTable);
+         for (Iterator<Service> i = sparse.values().iterator(); i.hasNext(); ) {
+            addProfile(profile, i.next());
+         }
+         return profile;
+      }
+      
+       private static void addProfile(ArrayList<SyscallProfile> profile, Service service) {
+         if (service != null && service.count > 0) {
+            profile.add(new SyscallProfile(service.syscall.getNumber(), service.syscall.getName(),
+                                           service.count, service.time));
+         }
+      }
+      
+   	/*
+   	 * Method to set the count and total time of every syscall back to zero.
+   	 */
+       void resetProfile() {
+         if (syscallList==null) {
+            loadSyscalls();
+         }
+         buildDispatchTable();
+      }
+      
+       // A syscall in the dispatch table, with the number of times it has been invoked
+       // and the total time in nanoseconds those took.
+       private static class Service {
+         Syscall syscall;
+         long count;
+         long time;
+      
+          Service(Syscall syscall) {
+            this.syscall = syscall;
          }
-         return match;
       }
    }
@@ -0,0 +1,87 @@
+   package mars.mips.instructions;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Number of times a syscall service was invoked, and the time those took, as
+ * gathered by the InstructionSet for profiling.  Time is only gathered while timing
+ * is on; see InstructionSet.setSyscallTiming().
+ *
+ * @see InstructionSet#getSyscallProfile()
+ * @version October 2026
+ */
+
+    public class SyscallProfile {
+      private int number;
+      private String name;
+      private long count;
+      private long time;
+
+   /**
+    * Create a profile entry.
+    * @param number service number of the syscall
+    * @param name name of the syscall
+    * @param count number of times it was invoked
+    * @param time total time, in nanoseconds, those took
+    */
+       public SyscallProfile(int number, String name, long count, long time) {
+         this.number = number;
+         this.name = name;
+         this.count = count;
+         this.time = time;
+      }
+
+   /**
+    * @return service number of the syscall
+    */
+       public int getNumber() {
+         return number;
+      }
+
+   /**
+    * @return name of the syscall
+    */
+       public String getName() {
+         return name;
+      }
+
+   /**
+    * @return number of times the syscall was invoked
+    */
+       public long getCount() {
+         return count;
+      }
+
+   /**
+    * @return total time, in nanoseconds, taken by the invocations that were timed
+    */
+       public long getTime() {
+         return time;
+      }
+   }
@@ -0,0 +1,79 @@
+   package mars.mips.instructions.syscalls;
+   import mars.util.*;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.*;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/** 
+ * Service to get the size, position and flags of the file with descriptor given in $a0,
+ * into the block of six words at the address given in $a1.  $v0 is set to 0, or -1 if
+ * error.
+ *
+ * @version October 2026
+ */
+ 
+    public class SyscallFstat extends AbstractSyscall {
+   /**
+    * Build an instance of the Fstat syscall.  Default service number
+    * is 38 and name is "Fstat".
+    */
+       public SyscallFstat() {
+         super(38, "Fstat");
+      }
+      
+   /**
+   * Performs syscall function to get the status of the file with descriptor given in $a0.
+   * The word-aligned block at the address given in $a1 receives, in order: the size of
+   * the file in bytes (low order word, then high order word), the current position (the
+   * same), the flags the file was opened with, and 1 for a file opened with syscall 13 or
+   * 0 for standard input, output or error.  The block is left as is if there is an error.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         long[] status = new long[4];
+         int retValue = SystemIO.getFileStatus(RegisterFile.getValue(arg1), status);
+         if (retValue == 0) {
+            int address = RegisterFile.getValue(arg2);
+            try {
+               Globals.memory.setWord(address, Binary.lowOrderLongToInt(status[0]));
+               Globals.memory.setWord(address + 4, Binary.highOrderLongToInt(status[0]));
+               Globals.memory.setWord(address + 8, Binary.lowOrderLongToInt(status[1]));
+               Globals.memory.setWord(address + 12, Binary.highOrderLongToInt(status[1]));
+               Globals.memory.setWord(address + 16, (int) status[2]);
+               Globals.memory.setWord(address + 20, (int) status[3]);
+            } 
+                catch (AddressErrorException e) {
+                  throw new ProcessingException(statement, e);
+               }
+         }
+         RegisterFile.updateRegister(2, retValue); // set returned value in register
+      }
+   }
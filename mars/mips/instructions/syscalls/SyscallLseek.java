@@ -0,0 +1,66 @@
+   package mars.mips.instructions.syscalls;
+   import mars.util.*;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.*;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/** 
+ * Service to set the position in the file with descriptor given in $a0 of the next
+ * read or write.  $a1 specifies the offset and $a2 where it is counted from.  The new
+ * position is returned in $v0.
+ *
+ * @version October 2026
+ */
+ 
+    public class SyscallLseek extends AbstractSyscall {
+   /**
+    * Build an instance of the Lseek syscall.  Default service number
+    * is 37 and name is "Lseek".
+    */
+       public SyscallLseek() {
+         super(37, "Lseek");
+      }
+      
+   /**
+   * Performs syscall function to set the position in the file with descriptor given in
+   * $a0.  $a1 specifies the offset in bytes, and $a2 whether it is from the start of the
+   * file (0), the current position (1) or the end of the file (2).  The new position, or
+   * -1 if error, is returned in $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int retValue = SystemIO.seekFile(
+                                 RegisterFile.getValue(arg1), // fd
+                                 RegisterFile.getValue(arg2), // offset
+                                 RegisterFile.getValue(arg3)); // whence
+         RegisterFile.updateRegister(2, retValue); // set returned value in register
+      }
+   }
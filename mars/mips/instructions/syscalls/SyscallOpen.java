@@ -51,9 +51,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
    /**
    * Performs syscall function to open file name specified by $a0. File descriptor returned
-	* in $v0.  Only supported flags ($a1) are read-only (0), write-only (1) and 
-	* write-append (9). write-only flag creates file if it does not exist, so it is technically
-	* write-create.  write-append will start writing at end of existing file.
+	* in $v0.  Only supported flags ($a1) are read-only (0), write-only (1), 
+	* write-append (9) and read/write (2). write-only flag creates file if it does not exist, so it is technically
+	* write-create.  write-append will start writing at end of existing file.  read/write
+	* creates file if it does not exist but, unlike write-only, keeps its contents.
 	* Mode ($a2) is ignored. 
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
@@ -65,7 +66,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           // This code implements the flags:
           // Read          flag = 0
           // Write         flag = 1
-          // Read/Write    NOT IMPLEMENTED
+          // Read/Write    flag = 2
 			 // Write/append  flag = 9
           // This code implements the modes:
           // NO MODES IMPLEMENTED  -- MODE IS IGNORED
@@ -37,6 +37,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
  
     public class SyscallPrintString extends AbstractSyscall {
+      private static final int BUFFER_SIZE = 256;
+   
    /**
     * Build an instance of the Print String syscall.  Default service number
     * is 4 and name is "PrintString".
@@ -50,16 +52,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
          int byteAddress = RegisterFile.getValue(arg1);
-         char ch = 0;
+         byte[] bytes = new byte[BUFFER_SIZE];
+         char[] chars = new char[BUFFER_SIZE];
          try
          {
-            ch = (char) Globals.memory.getByte(byteAddress);
-                              // won't stop until NULL byte reached!
-            while (ch != 0)
+            // Read and print the string a piece at a time; won't stop until NULL byte reached!
+            int count = Globals.memory.getBytes(byteAddress, bytes, 0, BUFFER_SIZE, true);
+            while (count > 0)
             {
-               SystemIO.printString(new Character(ch).toString());
-               byteAddress++;
-               ch = (char) Globals.memory.getByte(byteAddress);
+               for (int i = 0; i < count; i++) {
+                  chars[i] = (char) (bytes[i] & 0xFF);
+               }
+               SystemIO.printString(new String(chars, 0, count));
+               byteAddress += count;
+               count = Globals.memory.getBytes(byteAddress, bytes, 0, BUFFER_SIZE, true);
             }
          } 
              catch (AddressErrorException e)
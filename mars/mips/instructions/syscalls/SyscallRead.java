@@ -3,6 +3,7 @@
    import mars.mips.hardware.*;
    import mars.simulator.*;
    import mars.*;
+   import java.nio.*;
 
 /*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -55,14 +56,38 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
          int byteAddress = RegisterFile.getValue(arg2); // destination of characters read from file
-         byte b = 0;
-         int index = 0;
-         byte myBuffer[] = new byte[RegisterFile.getValue(arg3)]; // specified length
-         // Call to SystemIO.xxxx.read(xxx,xxx,xxx)  returns actual length
-         int retLength = SystemIO.readFromFile(
-                                 RegisterFile.getValue(arg1), // fd
-                                 myBuffer, // buffer
-                                 RegisterFile.getValue(arg3)); // length
+         int fd = RegisterFile.getValue(arg1);
+         int length = Math.max(RegisterFile.getValue(arg3), 0); // specified length
+         // Bytes are read straight into a buffer that is then copied into MARS memory a
+         // block at a time, one buffer after another until the length is read.  Reading
+         // less than a buffer (end of file, or no more input waiting) ends it early.
+         int retLength = 0;
+         do {
+            ByteBuffer buffer = SystemIO.getTransferBuffer(length - retLength);
+            int requested = buffer.remaining();
+            // Call to SystemIO.xxxx.read(xxx,xxx)  returns actual length
+            int bytesRead = SystemIO.readFromFile(fd, buffer); // buffer, length is its limit
+            if (bytesRead < 0) {
+               if (retLength == 0) {
+                  retLength = -1;
+               }
+               break;
+            }
+            // copy bytes from returned buffer into MARS memory
+            buffer.flip();
+            try
+            {
+               Globals.memory.writeRange(byteAddress + retLength, buffer);
+            } 
+                catch (AddressErrorException e)
+               {
+                  throw new ProcessingException(statement, e);
+               }
+            retLength += bytesRead;
+            if (bytesRead < requested) {
+               break;
+            }
+         } while (retLength < length);
          RegisterFile.updateRegister(2, retLength); // set returned value in register
 
          // Getting rid of processing exception.  It is the responsibility of the
@@ -77,18 +102,5 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                                     Exceptions.SYSCALL_EXCEPTION);
          }
 			*/                
-         // copy bytes from returned buffer into MARS memory
-         try
-         {
-            while (index < retLength)
-            {
-               Globals.memory.setByte(byteAddress++,
-                                        myBuffer[index++]);
-            }
-         } 
-             catch (AddressErrorException e)
-            {
-               throw new ProcessingException(statement, e);
-            }
       }
    }
\ No newline at end of file
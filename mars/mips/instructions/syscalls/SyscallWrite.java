@@ -3,6 +3,7 @@
    import mars.mips.hardware.*;
    import mars.simulator.*;
    import mars.*;
+   import java.nio.*;
 
 /*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -56,31 +57,46 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
          int byteAddress = RegisterFile.getValue(arg2); // source of characters to write to file
-         byte b = 0;
          int reqLength = RegisterFile.getValue(arg3); // user-requested length
-         int index = 0;
-         byte myBuffer[] = new byte[RegisterFile.getValue(arg3) + 1]; // specified length plus null termination
+         int fd = RegisterFile.getValue(arg1);
+         int length = Math.max(reqLength, 0);
+         // The whole range is checked first, so an address error writes nothing.  Then
+         // bytes are copied out of MARS memory a block at a time into a buffer that is
+         // written straight to the file, one buffer after another until the length is
+         // written.
          try
          {
-            b = (byte) Globals.memory.getByte(byteAddress);                            
-            while (index < reqLength) // Stop at requested length. Null bytes are included.
-                                 // while (index < reqLength && b != 0) // Stop at requested length OR null byte
-            {
-               myBuffer[index++] = b;
-               byteAddress++;
-               b = (byte) Globals.memory.getByte(byteAddress);
-            }
-                              
-            myBuffer[index] = 0; // Add string termination
-         } // end try
+            Globals.memory.checkReadableRange(byteAddress, length);
+         }
              catch (AddressErrorException e)
             {
                throw new ProcessingException(statement, e);
             }
-         int retValue = SystemIO.writeToFile(
-                                 RegisterFile.getValue(arg1), // fd
-                                 myBuffer, // buffer
-                                 RegisterFile.getValue(arg3)); // length
+         int copied = 0;
+         int remaining = length;
+         int retValue = 0;
+         while (remaining > 0) {
+            ByteBuffer buffer = SystemIO.getTransferBuffer(remaining);
+            try
+            {
+               Globals.memory.readRange(byteAddress + copied, buffer); // Null bytes are included.
+            } // end try
+                catch (AddressErrorException e)
+               {
+                  throw new ProcessingException(statement, e);
+               }
+            buffer.flip();
+            copied += buffer.remaining();
+            remaining -= buffer.remaining();
+            int bytesWritten = SystemIO.writeToFile(fd, buffer); // buffer, length is its limit
+            if (bytesWritten < 0) {
+               if (retValue == 0) {
+                  retValue = -1;
+               }
+               break;
+            }
+            retValue += bytesWritten;
+         }
          RegisterFile.updateRegister(2, retValue); // set returned value in register
 
          // Getting rid of processing exception.  It is the responsibility of the
@@ -39,9 +39,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * @version February 2006
  */
  
+ // History is kept in two circular buffers of primitives.  The first holds undo actions,
+ // one per value written: action type and up to two parameters, in parallel int arrays.
+ // The second holds one record per executed instruction: its address, how many of the
+ // undo actions are its own, and whether it ran in a delay slot.  An instruction that
+ // writes nothing (nop, branch not taken) still gets a record, so backstepping does not
+ // skip over it.  The arrays start small and grow as needed up to the BackstepLimit.
+ 
     public class BackStepper {
       // The types of "undo" actions.  Under 1.5, these would be enumerated type.
-   	// These fit better in the BackStep class below but inner classes cannot have static members.
       private static final int MEMORY_RESTORE_RAW_WORD = 0;
       private static final int MEMORY_RESTORE_WORD = 1;
       private static final int MEMORY_RESTORE_HALF = 2;
@@ -52,21 +58,33 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int COPROC1_REGISTER_RESTORE = 7;
       private static final int COPROC1_CONDITION_CLEAR = 8;
       private static final int COPROC1_CONDITION_SET = 9;
-      private static final int DO_NOTHING = 10;  // instruction does not write anything.
    
-      // Flag to mark BackStep object as prepresenting specific situation: user manipulates
-   	// memory/register value via GUI after assembling program but before running it.
+      // Marks an instruction record as representing a specific situation: user manipulates
+   	// memory/register value via GUI after assembling program but before running it, or
+   	// while it is paused.  Its actions are undone without changing the program counter.
       private static final int NOT_PC_VALUE = -1;
+   
+      // Initial size of the buffers.  They double when full, up to the limit.
+      private static final int INITIAL_LENGTH = 256;
    	
       private boolean engaged;
-      private BackstepStack backSteps;
-   	
-   	// One can argue using java.util.Stack, given its clumsy implementation.
-   	// A homegrown linked implementation will be more streamlined, but
-   	// I anticipate that backstepping will only be used during timed
-   	// (currently max 30 instructions/second) or stepped execution, where
-   	// performance is not an issue.  Its Vector implementation may result
-   	// in quicker garbage collection than a pure linked list implementation.
+      private int capacity;
+   
+      // Undo actions, circular.  actionTop is where the next one goes.
+      private int[] action;
+      private int[] param1;
+      private int[] param2;
+      private int actionTop;
+      private int actionSize;
+      // Number of actions, at the top, not yet claimed by an instruction record.
+      private int pendingActions;
+   
+      // Instruction records, circular.  instructionTop is where the next one goes.
+      private int[] instructionPc;
+      private int[] instructionActions;
+      private boolean[] instructionInDelaySlot;
+      private int instructionTop;
+      private int instructionSize;
    
        /**
    	  * Create a fresh BackStepper.  It is enabled, which means all
@@ -75,7 +93,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  */
        public BackStepper() {
          engaged = true;
-         backSteps = new BackstepStack(Globals.maximumBacksteps);
+         capacity = Math.max(1, Globals.maximumBacksteps);
+         int length = Math.min(capacity, INITIAL_LENGTH);
+         action = new int[length];
+         param1 = new int[length];
+         param2 = new int[length];
+         instructionPc = new int[length];
+         instructionActions = new int[length];
+         instructionInDelaySlot = new boolean[length];
       }
    
        /**
@@ -98,8 +123,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 * Test whether there are steps that can be undone.
    	 * @return true if there are no steps to be undone, false otherwise.
    	 */
-       public boolean empty() {
-         return backSteps.empty();
+       public synchronized boolean empty() {
+         return actionSize == 0 && instructionSize == 0;
       }
    	
    	/**
@@ -109,8 +134,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 * false otherwise.
    	 */
    	// Added 25 June 2007
-       public boolean inDelaySlot() {
-         return !empty() && backSteps.peek().inDelaySlot;
+       public synchronized boolean inDelaySlot() {
+         return pendingActions == 0 && instructionSize > 0 && 
+                instructionInDelaySlot[previous(instructionTop, instructionPc.length)];
       }
    	
       /**
@@ -121,78 +147,115 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 // Note that there may be more than one "step" in an instruction execution; for
    	 // instance the multiply, divide, and double-precision floating point operations 
    	 // all store their result in register pairs which results in two store operations.  
-   	 // Both must be undone transparently, so we need to detect that multiple steps happen
-   	 // together and carry out all of them here.  
-   	 // Use a do-while loop based on the backstep's program statement reference.
+   	 // Both must be undone transparently.  The instruction record says how many there are.
+   	 // Actions not claimed by any instruction (GUI edits while paused) are undone first,
+   	 // as a step of their own.
    	 
-       public void backStep() {
-         if (engaged && !backSteps.empty()) {
-            ProgramStatement statement = ((BackStep)backSteps.peek()).ps;
+       public synchronized void backStep() {
+         if (engaged && !empty()) {
             engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
-            do {
-               BackStep step = (BackStep) backSteps.pop();
-            /*
-            	System.out.println("backstep POP: action "+step.action+" pc "+mars.util.Binary.intToHexString(step.pc)+
-            	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
-            							 " parm1 "+step.param1+" parm2 "+step.param2);
-            */
-               if (step.pc != NOT_PC_VALUE) {
-                  RegisterFile.setProgramCounter(step.pc);
-               }
-               try {
-                  switch (step.action) {
-                     case MEMORY_RESTORE_RAW_WORD : 
-                        Globals.memory.setRawWord(step.param1, step.param2);
-                        break;
-                     case MEMORY_RESTORE_WORD : 
-                        Globals.memory.setWord(step.param1, step.param2);
-                        break;
-                     case MEMORY_RESTORE_HALF :
-                        Globals.memory.setHalf(step.param1, step.param2);
-                        break;
-                     case MEMORY_RESTORE_BYTE :
-                        Globals.memory.setByte(step.param1, step.param2);
-                        break;
-                     case REGISTER_RESTORE :
-                        RegisterFile.updateRegister(step.param1, step.param2);
-                        break;
-                     case PC_RESTORE : 
-                        RegisterFile.setProgramCounter(step.param1);
-                        break;
-                     case COPROC0_REGISTER_RESTORE :
-                        Coprocessor0.updateRegister(step.param1, step.param2);
-                        break;
-                     case COPROC1_REGISTER_RESTORE :
-                        Coprocessor1.updateRegister(step.param1, step.param2);
-                        break;
-                     case COPROC1_CONDITION_CLEAR :
-                        Coprocessor1.clearConditionFlag(step.param1);
-                        break;
-                     case COPROC1_CONDITION_SET :
-                        Coprocessor1.setConditionFlag(step.param1);
-                        break;
-                     case DO_NOTHING :
-                        break;
-                  }
+            try {
+               if (pendingActions > 0) {
+                  undoActions(pendingActions);
+                  pendingActions = 0;
                } 
-                   catch (Exception e) { 
-                  // if the original action did not cause an exception this will not either.
-                     System.out.println("Internal MARS error: address exception while back-stepping.");
-                     System.exit(0);
+               else {
+                  instructionTop = previous(instructionTop, instructionPc.length);
+                  instructionSize--;
+                  undoActions(instructionActions[instructionTop]);
+                  if (instructionPc[instructionTop] != NOT_PC_VALUE) {
+                     RegisterFile.setProgramCounter(instructionPc[instructionTop]);
                   }
-            } while (!backSteps.empty() && statement == ((BackStep)backSteps.peek()).ps);
-            engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
+               }
+            } 
+                catch (Exception e) { 
+               // if the original action did not cause an exception this will not either.
+                  System.out.println("Internal MARS error: address exception while back-stepping.");
+                  System.exit(0);
+               }
+            finally {
+               engaged = true;  // RESET IT (was disabled at top of method -- see comment)
+            }
          }
       }
-  
-     
-      /* Convenience method called below to get program counter value.  If it needs to be
-   	 * be modified (e.g. to subtract 4) that can be done here in one place.
-   	 */
-   	 
-       private int pc() {
-       // PC incremented prior to instruction simulation, so need to adjust for that.
-         return RegisterFile.getProgramCounter()-Instruction.INSTRUCTION_LENGTH;
+   
+      // Pop and carry out the given number of undo actions.
+       private void undoActions(int count) throws AddressErrorException {
+         for (int i = 0; i < count; i++) {
+            actionTop = previous(actionTop, action.length);
+            actionSize--;
+            int p1 = param1[actionTop];
+            int p2 = param2[actionTop];
+            switch (action[actionTop]) {
+               case MEMORY_RESTORE_RAW_WORD : 
+                  Globals.memory.setRawWord(p1, p2);
+                  break;
+               case MEMORY_RESTORE_WORD : 
+                  Globals.memory.setWord(p1, p2);
+                  break;
+               case MEMORY_RESTORE_HALF :
+                  Globals.memory.setHalf(p1, p2);
+                  break;
+               case MEMORY_RESTORE_BYTE :
+                  Globals.memory.setByte(p1, p2);
+                  break;
+               case REGISTER_RESTORE :
+                  RegisterFile.updateRegister(p1, p2);
+                  break;
+               case PC_RESTORE : 
+                  RegisterFile.setProgramCounter(p1);
+                  break;
+               case COPROC0_REGISTER_RESTORE :
+                  Coprocessor0.updateRegister(p1, p2);
+                  break;
+               case COPROC1_REGISTER_RESTORE :
+                  Coprocessor1.updateRegister(p1, p2);
+                  break;
+               case COPROC1_CONDITION_CLEAR :
+                  Coprocessor1.clearConditionFlag(p1);
+                  break;
+               case COPROC1_CONDITION_SET :
+                  Coprocessor1.setConditionFlag(p1);
+                  break;
+            }
+         }
+      }
+   
+       /**
+   	  * Record the end of an instruction's execution.  Called by the simulator after each
+   	  * instruction when backstepping is enabled.  The undo actions added since the previous
+   	  * call become this instruction's, to be undone together by one backStep(), which then
+   	  * sets the program counter back to the instruction's address.  An instruction that
+   	  * added none is recorded too, so that backstepping visits every instruction.
+   	  * @param pc address of the instruction just executed
+   	  */
+       public synchronized void endInstruction(int pc) {
+         addInstruction(pc, Simulator.inDelaySlot());
+      }
+   
+       /**
+   	  * Group any undo actions not yet claimed by an instruction, such as those from
+   	  * editing memory or registers in the GUI, into a step of their own that does not
+   	  * change the program counter when undone.  Called by the simulator when it starts,
+   	  * so such edits are not taken for part of the first instruction executed.
+   	  */
+       public synchronized void endEdits() {
+         if (pendingActions > 0) {
+            addInstruction(NOT_PC_VALUE, false);
+         }
+      }
+   	
+       /**
+   	  * Formerly added a "do nothing" entry for an instruction that wrote nothing.  Every
+   	  * instruction is now recorded, so this does the same as endInstruction().
+   	  * @param pc address of the instruction just executed
+   	  * @return 0
+   	  * @deprecated Use <code>endInstruction(int pc)</code>.
+   	  */
+       @Deprecated
+       public int addDoNothing(int pc) {
+         endInstruction(pc);
+         return 0;
       }
    
        /**
@@ -203,7 +266,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addMemoryRestoreRawWord(int address, int value) {
-         backSteps.push(MEMORY_RESTORE_RAW_WORD, pc(), address, value);
+         push(MEMORY_RESTORE_RAW_WORD, address, value);
          return value;
       }   
    	
@@ -215,7 +278,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addMemoryRestoreWord(int address, int value) {
-         backSteps.push(MEMORY_RESTORE_WORD, pc(), address, value);
+         push(MEMORY_RESTORE_WORD, address, value);
          return value;
       }   
    
@@ -227,7 +290,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addMemoryRestoreHalf(int address, int value) {
-         backSteps.push(MEMORY_RESTORE_HALF, pc(), address, value);
+         push(MEMORY_RESTORE_HALF, address, value);
          return value;
       }
    
@@ -239,7 +302,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addMemoryRestoreByte(int address, int value) {
-         backSteps.push(MEMORY_RESTORE_BYTE, pc(), address, value);
+         push(MEMORY_RESTORE_BYTE, address, value);
          return value;
       }   
    
@@ -251,7 +314,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addRegisterFileRestore(int register, int value) {
-         backSteps.push(REGISTER_RESTORE, pc(), register, value);
+         push(REGISTER_RESTORE, register, value);
          return value;
       } 
    
@@ -264,9 +327,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public int addPCRestore(int value) {
          // adjust for value reflecting incremented PC.  
          value -= Instruction.INSTRUCTION_LENGTH; 
-         // Use "value" insead of "pc()" for second arg because RegisterFile.getProgramCounter() 
-         // returns branch target address at this point.
-         backSteps.push(PC_RESTORE, value, value); 
+         push(PC_RESTORE, value, 0); 
          return value;
       }		
    
@@ -278,7 +339,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addCoprocessor0Restore(int register, int value) {
-         backSteps.push(COPROC0_REGISTER_RESTORE, pc(), register, value);
+         push(COPROC0_REGISTER_RESTORE, register, value);
          return value;
       }		
    
@@ -290,7 +351,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addCoprocessor1Restore(int register, int value) {
-         backSteps.push(COPROC1_REGISTER_RESTORE, pc(), register, value);
+         push(COPROC1_REGISTER_RESTORE, register, value);
          return value;
       }		
    
@@ -301,7 +362,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addConditionFlagSet(int flag) {
-         backSteps.push(COPROC1_CONDITION_SET, pc(), flag);
+         push(COPROC1_CONDITION_SET, flag, 0);
          return flag;
       }	
    
@@ -312,149 +373,101 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return the argument value
    	  */
        public int addConditionFlagClear(int flag) {
-         backSteps.push(COPROC1_CONDITION_CLEAR, pc(), flag);
+         push(COPROC1_CONDITION_CLEAR, flag, 0);
          return flag;
       }	
-   		
-       /**
-   	  * Add a new "back step" (the undo action) to the stack.  The action here
-   	  * is to do nothing!  This is just a place holder so when user is backstepping
-   	  * through the program no instructions will be skipped.  Cosmetic. If the top of the
-   	  * stack has the same PC counter, the do-nothing action will not be added.  
-   	  * @return 0
-   	  */
-       public int addDoNothing(int pc) {
-         if (backSteps.empty() || backSteps.peek().pc != pc) { 
-            backSteps.push(DO_NOTHING, pc);
-         }
-         return 0;
-      }
-   	
-   		   	 	
-   	// Represents a "back step" (undo action) on the stack.
-       private class BackStep {
-         private int action;  // what do do MEMORY_RESTORE_WORD, etc
-         private int pc;      // program counter value when original step occurred
-         private ProgramStatement ps;   // statement whose action is being "undone" here
-         private int param1;  // first parameter required by that action
-         private int param2;  // optional second parameter required by that action
-         private boolean inDelaySlot; // true if instruction executed in "delay slot" (delayed branching enabled)
-      
-         // it is critical that BackStep object get its values by calling this method
-      	// rather than assigning to individual members, because of the technique used
-      	// to set its ps member (and possibly pc).
-          private void assign(int act, int programCounter, int parm1, int parm2) {
-            action = act;
-            pc     = programCounter;
-            try {
-            // Client does not have direct access to program statement, and rather than making all
-            // of them go through the methods below to obtain it, we will do it here.  
-            // Want the program statement but do not want observers notified.
-               ps = Globals.memory.getStatementNoNotify(programCounter);
-            } 
-                catch (Exception e) {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                  ps = null;
-                  pc = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
-               } 
-            param1 = parm1;
-            param2 = parm2;
-            inDelaySlot = Simulator.inDelaySlot(); // ADDED 25 June 2007
-         /*				
-            System.out.println("backstep PUSH: action "+action+" pc "+mars.util.Binary.intToHexString(pc)+
-         		                   " source "+((ps==null)? "none":ps.getSource())+
-         								 " parm1 "+param1+" parm2 "+param2);
-         */
-         }
-      }
-   	
+   
    	// *****************************************************************************
-   	// special purpose stack class for backstepping.  You've heard of circular queues
-   	// implemented with an array, right?  This is a circular stack!  When full, the
-   	// newly-pushed item overwrites the oldest item, with circular top!  All operations 
-   	// are constant time.  It's synchronized too, to be safe (is used by both the 
-   	// simulation thread and the GUI thread for the back-step button).
-   	// Upon construction, it is filled with newly-created empty BackStep objects which
-   	// will exist for the life of the stack.  Push does not create a BackStep object 
-   	// but instead overwrites the contents of the existing one.  Thus during MIPS
-   	// program (simulated) execution, BackStep objects are never created or junked
-   	// regardless of how many steps are executed.  This will speed things up a bit
-   	// and make life easier for the garbage collector.
-   	
-       private class BackstepStack {
-         private int capacity;
-         private int size;
-         private int top;
-         private BackStep[] stack;
-      
-          // Stack is created upon successful assembly or reset.  The one-time overhead of
-      	 // creating all the BackStep objects will not be noticed by the user, and enhances
-      	 // runtime performance by not having to create or recycle them during MIPS
-      	 // program execution.
-          private BackstepStack(int capacity) {
-            this.capacity = capacity;
-            this.size = 0;
-            this.top = -1;
-            this.stack = new BackStep[capacity];
-            for (int i=0; i<capacity; i++) {
-               this.stack[i] = new BackStep();
-            }
-         }
-      	
-          private synchronized boolean empty() {
-            return size==0;
-         }
-         
-          private synchronized void push(int act, int programCounter, int parm1, int parm2) {
-            if (size==0) {
-               top=0;
-               size++;
-            } 
-            else if (size < capacity) {
-               top = (top + 1) % capacity;
-               size++;
+   	// Buffer management.  Both buffers are circular: when full (at the limit), the
+   	// oldest instruction is forgotten to make room, along with its undo actions.  All
+   	// operations are constant time except for growing, which doubles the arrays.  
+   	// Synchronized since used by both the simulation thread and the GUI thread for the
+   	// back-step button.
+   
+       private synchronized void push(int act, int parm1, int parm2) {
+         if (actionSize == action.length) {
+            if (action.length < capacity) {
+               growActions();
             } 
-            else { // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
-               top = (top + 1) % capacity;
+            else {
+               while (actionSize == capacity) {
+                  forgetOldest();
+               }
             }
-         	// We'll re-use existing objects rather than create/discard each time.
-         	// Must use assign() method rather than series of assignment statements!
-            stack[top].assign(act, programCounter, parm1, parm2);
-         }
-      	
-          private synchronized void push(int act, int programCounter, int parm1) {
-            push(act, programCounter, parm1, 0);
-         }
-      	
-          private synchronized void push(int act, int programCounter) {
-            push(act, programCounter, 0, 0);
          }
-         
-      	// NO PROTECTION.  This class is used only within this file so there is no excuse
-      	// for trying to pop from empty stack.
-          private synchronized BackStep pop() {
-            BackStep bs;
-            bs = stack[top];
-            if (size==1) {
-               top = -1;
+         action[actionTop] = act;
+         param1[actionTop] = parm1;
+         param2[actionTop] = parm2;
+         actionTop = next(actionTop, action.length);
+         actionSize++;
+         pendingActions++;
+      }
+   
+       private void addInstruction(int pc, boolean inDelaySlot) {
+         if (instructionSize == instructionPc.length) {
+            if (instructionPc.length < capacity) {
+               growInstructions();
             } 
             else {
-               top = (top + capacity - 1) % capacity;
+               forgetOldest();
             }
-            size--;
-            return bs;
          }
-      
-      	// NO PROTECTION.  This class is used only within this file so there is no excuse
-      	// for trying to peek from empty stack.         
-          private synchronized BackStep peek() {
-            return stack[top];
+         instructionPc[instructionTop] = pc;
+         instructionActions[instructionTop] = pendingActions;
+         instructionInDelaySlot[instructionTop] = inDelaySlot;
+         instructionTop = next(instructionTop, instructionPc.length);
+         instructionSize++;
+         pendingActions = 0;
+      }
+   
+      // Drop the oldest instruction and its actions.  If there is none, all actions are
+      // pending and the oldest of them is dropped.
+       private void forgetOldest() {
+         if (instructionSize > 0) {
+            int oldest = (instructionTop - instructionSize + instructionPc.length) % instructionPc.length;
+            actionSize -= instructionActions[oldest];
+            instructionSize--;
+         } 
+         else {
+            actionSize--;
+            pendingActions--;
+         }
+      }
+   
+       private void growActions() {
+         int length = (int) Math.min((long) action.length * 2, capacity);
+         action = unroll(action, actionTop, actionSize, length);
+         param1 = unroll(param1, actionTop, actionSize, length);
+         param2 = unroll(param2, actionTop, actionSize, length);
+         actionTop = actionSize;
+      }
+   
+       private void growInstructions() {
+         int length = (int) Math.min((long) instructionPc.length * 2, capacity);
+         instructionPc = unroll(instructionPc, instructionTop, instructionSize, length);
+         instructionActions = unroll(instructionActions, instructionTop, instructionSize, length);
+         boolean[] delaySlot = new boolean[length];
+         for (int i = 0; i < instructionSize; i++) {
+            delaySlot[i] = instructionInDelaySlot[(instructionTop - instructionSize + i + instructionInDelaySlot.length) % instructionInDelaySlot.length];
+         }
+         instructionInDelaySlot = delaySlot;
+         instructionTop = instructionSize;
+      }
+   
+      // Copy of circular buffer with given top and size into a larger array, oldest first.
+       private static int[] unroll(int[] buffer, int top, int size, int length) {
+         int[] result = new int[length];
+         for (int i = 0; i < size; i++) {
+            result[i] = buffer[(top - size + i + buffer.length) % buffer.length];
          }
-      			
+         return result;
+      }
+   
+       private static int next(int index, int length) {
+         return (index + 1 == length) ? 0 : index + 1;
       }
    
-   }
\ No newline at end of file
+       private static int previous(int index, int length) {
+         return (index == 0) ? length - 1 : index - 1;
+      }
+   }
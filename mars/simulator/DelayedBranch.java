@@ -156,4 +156,31 @@ public class DelayedBranch {
 	    return branchTargetAddress;
 	}
 	
+  /**
+   *  Return the state of the delayed branch, so it can be put back later by
+	*  restoreState().  Used by SimulationContext when it switches from one context
+	*  to another.
+	*
+	*  @return array holding state and branch target address, for restoreState()
+	*/
+	public static int[] saveState() {
+	   return new int[] { state, branchTargetAddress };
+	}
+
+  /**
+   *  Put back the state of the delayed branch saved by saveState().  Given null,
+	*  clears the delayed branch.
+	*
+	*  @param saved array returned by saveState(), or null
+	*/
+	public static void restoreState(int[] saved) {
+	   if (saved == null) {
+		   clear();
+		} 
+		else {
+		   state = saved[0];
+		   branchTargetAddress = saved[1];
+		}
+	}
+	
 }  // DelayedBranch
\ No newline at end of file
@@ -122,6 +122,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             ProcessingException pe = simulatorThread.pe;
             boolean done = simulatorThread.done;
             if (done) SystemIO.resetFiles(); // close any files opened in MIPS progra
+            SystemIO.flushStandardOutput(); // program output before anything said about the run
             this.simulatorThread = null;
             if (pe != null) {
                throw pe;
@@ -292,34 +293,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	
          	// *******************  PS addition 26 July 2006  **********************
          	// A couple statements below were added for the purpose of assuring that when
-         	// "back stepping" is enabled, every instruction will have at least one entry
-         	// on the back-stepping stack.  Most instructions will because they write either
-         	// to a register or memory.  But "nop" and branches not taken do not.  When the
-         	// user is stepping backward through the program, the stack is popped and if
-         	// an instruction has no entry it will be skipped over in the process.  This has
-         	// no effect on the correctness of the mechanism but the visual jerkiness when
-         	// instruction highlighting skips such instrutions is disruptive.  Current solution
-         	// is to add a "do nothing" stack entry for instructions that do no write anything.
-         	// To keep this invisible to the "simulate()" method writer, we
-         	// will push such an entry onto the stack here if there is none for this instruction
-         	// by the time it has completed simulating.  This is done by the IF statement
-         	// just after the call to the simulate method itself.  The BackStepper method does
-         	// the aforementioned check and decides whether to push or not.  The result
-         	// is a a smoother interaction experience.  But it comes at the cost of slowing
-         	// simulation speed for flat-out runs, for every MIPS instruction executed even
-         	// though very few will require the "do nothing" stack entry.  For stepped or
-         	// timed execution the slower execution speed is not noticeable.
-         	//
-         	// To avoid this cost I tried a different technique: back-fill with "do nothings"
-         	// during the backstepping itself when this situation is recognized.  Problem
-         	// was in recognizing all possible situations in which the stack contained such
-         	// a "gap".  It became a morass of special cases and it seemed every weird test
-         	// case revealed another one.  In addition, when a program
-         	// begins with one or more such instructions ("nop" and branches not taken),
-         	// the backstep button is not enabled until a "real" instruction is executed.
-         	// This is noticeable in stepped mode.
+         	// "back stepping" is enabled, every instruction can be stepped back over, even
+         	// "nop" and branches not taken, which write nothing.  Otherwise instruction
+         	// highlighting skips such instructions when the user is stepping backward, and
+         	// when a program begins with one, the backstep button is not enabled until a
+         	// "real" instruction is executed.  BackStepper keeps one record per instruction,
+         	// made by endInstruction() once it has simulated (or raised an exception).  Values
+         	// edited in the GUI while paused are grouped by endEdits() first, so they are
+         	// undone as a step of their own.
          	// *********************************************************************
          	
+            if (Globals.getSettings().getBackSteppingEnabled()) {
+               Globals.program.getBackStepper().endEdits();
+            }
             int pc = 0;  // added: 7/26/06 (explanation above)
          
             while (statement != null) {
@@ -347,10 +333,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   	
                   	// IF statement added 7/26/06 (explanation above)
                      if (Globals.getSettings().getBackSteppingEnabled()) {
-                        Globals.program.getBackStepper().addDoNothing(pc);
+                        Globals.program.getBackStepper().endInstruction(pc);
                      }
                   } 
                       catch (ProcessingException pe) {
+                        if (Globals.getSettings().getBackSteppingEnabled()) {
+                           Globals.program.getBackStepper().endInstruction(pc);
+                        }
                         if (pe.errors() == null) {
                            this.constructReturnReason = NORMAL_TERMINATION;
                            this.done = true;
@@ -398,6 +387,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                if (stop == true) { 
                   this.constructReturnReason = PAUSE_OR_STOP;
                   this.done = false;
+                  SystemIO.flushFiles(); // files stay open, but hold what was written
                   Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                   return new Boolean(done);
                }
@@ -406,6 +396,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                (Arrays.binarySearch(breakPoints,RegisterFile.getProgramCounter()) >= 0)) {
                   this.constructReturnReason = BREAKPOINT;
                   this.done = false;
+                  SystemIO.flushFiles(); // files stay open, but hold what was written
                   Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                   return new Boolean(done); // false;
                }
@@ -415,6 +406,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   if (steps >= maxSteps) {
                      this.constructReturnReason = MAX_STEPS;
                      this.done = false;
+                     SystemIO.flushFiles(); // files stay open, but hold what was written
                      Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                      return new Boolean(done);// false;
                   }
@@ -0,0 +1,242 @@
+   package mars.util;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * A FileChannel with a buffer in front of it, for a file opened by a MIPS program.
+ * Programs often read and write a few bytes at a time; those reads are served from
+ * a block read ahead, and those writes collected into a block, so the file is only
+ * touched once per block.  Reads and writes as large as the buffer go straight to the
+ * file.
+ * <p>
+ * The buffer holds either bytes read ahead or bytes not yet written, never both.  A
+ * write after reads puts the file position back where the program's reads got to, and
+ * a read or a change of position after writes first writes them out.  Changing the
+ * position to somewhere within the bytes read ahead keeps them.
+ *
+ * @see SystemIO
+ * @version October 2026
+ */
+
+    public class BufferedFileChannel implements SeekableByteChannel {
+   /** Size of the buffer in front of each file */
+      public static final int BUFFER_SIZE = 8192;
+
+      private FileChannel channel;
+      private ByteBuffer buffer;
+      private boolean writing; // buffer holds bytes to write, otherwise bytes read ahead
+
+   /**
+    * Put a buffer in front of a file.
+    * @param channel the file
+    */
+       public BufferedFileChannel(FileChannel channel) {
+         this.channel = channel;
+         buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+         buffer.limit(0); // nothing read ahead
+      }
+
+   /**
+    * Read bytes from the current position until the buffer given is full or the end
+    * of the file is reached.
+    * @param dst buffer to contain the bytes read.  Its position is advanced past them.
+    * @return number of bytes read, or -1 if at the end of the file.
+    * @throws IOException if the file cannot be read.
+    */
+       public int read(ByteBuffer dst) throws IOException {
+         flush();
+         int count = 0;
+         while (dst.hasRemaining()) {
+            if (buffer.hasRemaining()) {
+               count += copy(buffer, dst);
+            }
+            else if (dst.remaining() >= buffer.capacity()) {
+               buffer.clear();
+               buffer.limit(0);
+               int bytesRead = channel.read(dst);
+               if (bytesRead <= 0) {
+                  break;
+               }
+               count += bytesRead;
+            }
+            else {
+               buffer.clear();
+               int bytesRead = channel.read(buffer);
+               buffer.flip();
+               if (bytesRead <= 0) {
+                  break;
+               }
+            }
+         }
+         return (count == 0 && dst.hasRemaining()) ? -1 : count;
+      }
+
+   /**
+    * Write bytes at the current position.  They reach the file when the buffer fills,
+    * or on flush(), close() or a read or change of position.
+    * @param src buffer holding the bytes to write.  Its position is advanced past them.
+    * @return number of bytes written, which is all of them.
+    * @throws IOException if the file cannot be written.
+    */
+       public int write(ByteBuffer src) throws IOException {
+         if (!writing) {
+            // forget the bytes read ahead, going back to where the program's reads got to
+            if (buffer.hasRemaining()) {
+               channel.position(channel.position() - buffer.remaining());
+            }
+            buffer.clear();
+            writing = true;
+         }
+         int count = src.remaining();
+         if (count > buffer.remaining()) {
+            writeBuffer();
+            if (count >= buffer.capacity()) {
+               while (src.hasRemaining()) {
+                  channel.write(src);
+               }
+               return count;
+            }
+         }
+         buffer.put(src);
+         return count;
+      }
+
+   /**
+    * Write out any bytes held in the buffer.
+    * @throws IOException if the file cannot be written.
+    */
+       public void flush() throws IOException {
+         if (writing) {
+            writeBuffer();
+            buffer.limit(0);
+            writing = false;
+         }
+      }
+
+   /**
+    * @return current position, counting bytes read ahead as not yet read and bytes
+    * held for writing as written.
+    * @throws IOException if the file is closed.
+    */
+       public long position() throws IOException {
+         return writing ? channel.position() + buffer.position()
+                        : channel.position() - buffer.remaining();
+      }
+
+   /**
+    * Set the position of the next read or write.
+    * @param newPosition offset from the start of the file.  It may be past the end.
+    * @return this channel
+    * @throws IOException if the held bytes cannot be written.
+    */
+       public SeekableByteChannel position(long newPosition) throws IOException {
+         if (newPosition < 0) {
+            throw new IllegalArgumentException();
+         }
+         if (!writing) {
+            long end = channel.position();
+            long start = end - buffer.limit();
+            if (newPosition >= start && newPosition <= end) {
+               buffer.position((int) (newPosition - start));
+               return this;
+            }
+         }
+         flush();
+         buffer.clear();
+         buffer.limit(0);
+         channel.position(newPosition);
+         return this;
+      }
+
+   /**
+    * @return size of the file, including bytes held for writing.
+    * @throws IOException if the file is closed.
+    */
+       public long size() throws IOException {
+         return (writing && buffer.position() > 0) ? Math.max(channel.size(), position()) : channel.size();
+      }
+
+   /**
+    * Cut the file to the given size, if it is longer.
+    * @param size new size of the file
+    * @return this channel
+    * @throws IOException if the held bytes cannot be written or the file cut.
+    */
+       public SeekableByteChannel truncate(long size) throws IOException {
+         long current = position();
+         flush();
+         buffer.clear();
+         buffer.limit(0);
+         channel.position(current);
+         channel.truncate(size);
+         return this;
+      }
+
+   /**
+    * @return whether the file is still open.
+    */
+       public boolean isOpen() {
+         return channel.isOpen();
+      }
+
+   /**
+    * Write out any bytes held, then close the file.
+    * @throws IOException if the held bytes cannot be written or the file closed.
+    */
+       public void close() throws IOException {
+         try {
+            flush();
+         }
+         finally {
+            channel.close();
+         }
+      }
+
+    // Write the bytes held in the buffer and empty it, ready for more.
+       private void writeBuffer() throws IOException {
+         buffer.flip();
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+         buffer.clear();
+      }
+
+    // Copy as many bytes as fit from one buffer to another.
+       private static int copy(ByteBuffer src, ByteBuffer dst) {
+         int count = Math.min(src.remaining(), dst.remaining());
+         int limit = src.limit();
+         src.limit(src.position() + count);
+         dst.put(src);
+         src.limit(limit);
+         return count;
+      }
+   }
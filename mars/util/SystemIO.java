@@ -1,6 +1,8 @@
    package mars.util;
    import mars.*;
    import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
    import javax.swing.*;
    import java.util.*;
 	
@@ -46,8 +48,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    {
     /** Buffer size for syscalls for file I/O */
       public static final int SYSCALL_BUFSIZE = 128;
-    /** Maximum number of files that can be open */
-      public static final int SYSCALL_MAXFILES = 32;
+    /** Maximum number of files that can be open, counting standard input, output and error */
+      public static final int SYSCALL_MAXFILES = 4096;
     /** String used for description of file error */
       public static String fileErrorString = new String("File operation OK");
    
@@ -58,6 +60,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int O_CREAT  = 0x00000200; // 512
       private static final int O_TRUNC  = 0x00000400; // 1024
       private static final int O_EXCL   = 0x00000800; // 2048
+   
+    /** Seek origin for seekFile(): the start of the file */
+      public static final int SEEK_SET = 0;
+    /** Seek origin for seekFile(): the current position */
+      public static final int SEEK_CUR = 1;
+    /** Seek origin for seekFile(): the end of the file */
+      public static final int SEEK_END = 2;
    	
    	// standard I/O channels
       private static final int STDIN  = 0;
@@ -68,6 +77,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// Added by DPS 28 Feb 2008.  See getInputReader() below.
       private static BufferedReader inputReader = null;
    
+      // Streams for standard input and output in command mode, normally those of the JVM.
+      // The batch runner points them elsewhere to feed and capture each run.
+      private static InputStream standardInput = System.in;
+      private static PrintStream standardOutput = System.out;
+   
+      // Print syscall output in command mode is collected here and written to standardOutput
+      // in pieces, as the OutputFlushPolicy setting allows, rather than a character at a time.
+      private static final int OUTPUT_BUFFER_SIZE = 8192;
+      private static StringBuilder pendingOutput = new StringBuilder(OUTPUT_BUFFER_SIZE);
+   
+      // See getTransferBuffer() below.
+      private static final int TRANSFER_BUFFER_SIZE = 65536;
+      private static ByteBuffer transferBuffer = null;
+   
+      // File descriptor table of the simulation context installed.  See saveFileState().
+      private static FileIOData files = new FileIOData();
+   
     /**
      * Implements syscall to read an integer value.  
      * Client is responsible for catching NumberFormatException.
@@ -178,7 +204,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       {
          if (Globals.getGui() == null)
          {
-            System.out.print(string);
+            synchronized (pendingOutput) {
+               pendingOutput.append(string);
+               if (pendingOutput.length() >= OUTPUT_BUFFER_SIZE || 
+                   (string.indexOf('\n') >= 0 && 
+                    Settings.OUTPUT_FLUSH_ON_NEWLINE.equals(Globals.getSettings().getOutputFlushPolicy()))) {
+                  flushStandardOutput();
+               }
+            }
          } 
          else
          {
@@ -186,6 +219,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       
       }
+   
+    /**
+     * Write out print syscall output held back in command mode, and flush the standard
+     * output stream.  Called when the program stops, before it reads standard input and
+     * before anything else is written to standard output.
+     */
+       public static void flushStandardOutput()
+      {
+         synchronized (pendingOutput) {
+            if (pendingOutput.length() > 0) {
+               standardOutput.print(pendingOutput);
+               pendingOutput.setLength(0);
+            }
+            standardOutput.flush();
+         }
+      }
    	
    	
     /**
@@ -296,14 +345,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        ///////////////////////////////////////////////////////////////////////////////////
        //// When running in command mode, code below works for either regular file or STDOUT/STDERR
       
-         if (!FileIOData.fdInUse(fd, 1)) // Check the existence of the "write" fd
+         if (!files.fdInUse(fd, 1)) // Check the existence of the "write" fd
          {
             fileErrorString = new String(
                     "File descriptor " + fd + " is not open for writing");
             return -1;
          }
+         if (files.getStreamInUse(fd) instanceof WritableByteChannel) // file opened by openFile()
+         {
+            if (lengthRequested < 0 || lengthRequested > myBuffer.length)
+            {
+               fileErrorString = new String(
+                    "IndexOutOfBoundsException on write of file with fd" + fd);
+               return -1;
+            }
+            return writeToFile(fd, ByteBuffer.wrap(myBuffer, 0, lengthRequested));
+         }
          // retrieve FileOutputStream from storage
-         OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+         OutputStream outputStream = (OutputStream) files.getStreamInUse(fd);
          try
          {
             // Oct. 9 2005 Ken Vollmar
@@ -318,10 +377,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             
             // Oct. 9 2005 Ken Vollmar  Force the write statement to write exactly
             // the number of bytes requested, even though those bytes include many ZERO values.
-            for (int ii = 0; ii < lengthRequested; ii++)
-            {
-               outputStream.write(myBuffer[ii]); 
+            // write(byte[],int,int) is used again now: it writes every byte, ZEROES included,
+            // and hands them to the stream in one piece rather than one at a time.
+            if (fd == STDOUT || fd == STDERR) {
+               flushStandardOutput(); // keep it in order with print syscall output
             }
+            outputStream.write(myBuffer, 0, lengthRequested);
             outputStream.flush();// DPS 7-Jan-2013
          } 
              catch (IOException e)
@@ -365,14 +426,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        ////////////////////////////////////////////////////////////////////////////////////
        //// When running in command mode, code below works for either regular file or STDIN
        
-         if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
+         if (!files.fdInUse(fd, 0)) // Check the existence of the "read" fd
          {
             fileErrorString = new String(
                     "File descriptor " + fd + " is not open for reading");
             return -1;
          }
+         if (fd == STDIN) {
+            flushBeforeRead();
+         }
+         if (files.getStreamInUse(fd) instanceof ReadableByteChannel) // file opened by openFile()
+         {
+            if (lengthRequested < 0 || lengthRequested > myBuffer.length)
+            {
+               fileErrorString = new String(
+                    "IndexOutOfBoundsException on read of file with fd" + fd);
+               return -1;
+            }
+            return readFromFile(fd, ByteBuffer.wrap(myBuffer, 0, lengthRequested));
+         }
         // retrieve FileInputStream from storage
-         InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+         InputStream InputStream = (InputStream) files.getStreamInUse(fd);
          try
          {
             // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
@@ -400,29 +474,121 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       } // end readFromFile
    
    
+    /**
+     * Write the bytes in a buffer, from its position up to its limit, to file.  A file
+     * opened by openFile() is written through its BufferedFileChannel, which takes large
+     * writes straight from the buffer; for standard output and error, this is the same
+     * as writeToFile(int,byte[],int).
+     *
+     * @param fd file descriptor
+     * @param buffer buffer holding the bytes to write.  Its position is advanced past
+     * the bytes written.
+     * @return number of bytes written, or -1 on error
+     */
+       public static int writeToFile(int fd, ByteBuffer buffer)
+      {
+         int length = buffer.remaining();
+         Object stream = files.fdInUse(fd, 1) ? files.getStreamInUse(fd) : null;
+         if (!(stream instanceof WritableByteChannel))
+         {
+            byte[] bytes = new byte[length + 1]; // plus null termination, as SyscallWrite had
+            buffer.get(bytes, 0, length);
+            return writeToFile(fd, bytes, length);
+         }
+         try
+         {
+            while (buffer.hasRemaining())
+            {
+               ((WritableByteChannel) stream).write(buffer);
+            }
+         } 
+             catch (IOException e)
+            {
+               fileErrorString = new String(
+                    "IO Exception on write of file with fd " + fd);
+               return -1;
+            }
+         return length;
+      }
+   
+   
+    /**
+     * Read bytes from file into a buffer, from its position up to its limit.  A file
+     * opened by openFile() is read through its BufferedFileChannel, which reads large
+     * requests straight into the buffer; for standard input, this is the same as
+     * readFromFile(int,byte[],int).
+     *
+     * @param fd file descriptor
+     * @param buffer buffer to contain bytes read.  Its position is advanced past them.
+     * @return number of bytes read, 0 on EOF, or -1 on error
+     */
+       public static int readFromFile(int fd, ByteBuffer buffer)
+      {
+         Object stream = files.fdInUse(fd, 0) ? files.getStreamInUse(fd) : null;
+         if (!(stream instanceof ReadableByteChannel))
+         {
+            byte[] bytes = new byte[buffer.remaining()];
+            int retValue = readFromFile(fd, bytes, bytes.length);
+            if (retValue > 0) {
+               buffer.put(bytes, 0, retValue);
+            }
+            return retValue;
+         }
+         try
+         {
+            int retValue = ((ReadableByteChannel) stream).read(buffer);
+            return (retValue == -1) ? 0 : retValue; // 0 for EOF, as above
+         } 
+             catch (IOException e)
+            {
+               fileErrorString = new String(
+                    "IO Exception on read of file with fd " + fd);
+               return -1;
+            }
+      }
+   
+   
+    /**
+     * Get a buffer for moving bytes between MIPS memory and a file.  The same direct
+     * buffer is returned each time, so a channel reads into it and writes from it
+     * without an intermediate copy.  It is never larger than TRANSFER_BUFFER_SIZE
+     * bytes; more than that is moved a buffer at a time.
+     *
+     * @param length number of bytes still to be moved
+     * @return buffer with position 0 and limit length, or its capacity if less
+     */
+       public static ByteBuffer getTransferBuffer(int length)
+      {
+         if (transferBuffer == null) {
+            transferBuffer = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+         }
+         transferBuffer.clear();
+         transferBuffer.limit(Math.min(length, TRANSFER_BUFFER_SIZE));
+         return transferBuffer;
+      }
+   
+   
    /**
-    * Open a file for either reading or writing. Note that read/write flag is NOT
-    * IMPLEMENTED.  Also note that file permission modes are also NOT IMPLEMENTED. 
+    * Open a file for reading, writing or both. Note that file permission modes are
+    * NOT IMPLEMENTED.  Each file is read and written through a BufferedFileChannel.
     *
     * @param filename string containing filename
-    * @param flag 0 for read, 1 for write
+    * @param flags 0 for read, 1 for write, 9 for write-append, 2 for read/write
     * @return file descriptor in the range 0 to SYSCALL_MAXFILES-1, or -1 if error
     * @author Ken Vollmar
     */
        public static int openFile(String filename, int flags)
       {
         // Internally, a "file descriptor" is an index into a table
-        // of the filename, flag, and the File???putStream associated with
+        // of the filename, flag, and the channel associated with
         // that file descriptor.
       
          int retValue = -1;
-         char ch[] = { ' '}; // Need an array to convert to String
-         FileInputStream inputStream;
-         FileOutputStream outputStream;
+         FileChannel channel = null;
          int fdToUse;
       
         // Check internal plausibility of opening this file
-         fdToUse = FileIOData.nowOpening(filename, flags);
+         fdToUse = files.nowOpening(filename, flags);
          retValue = fdToUse; // return value is the fd
          if (fdToUse < 0)
          { 
@@ -435,8 +601,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             try
             {
                 // Set up input stream from disk file
-               inputStream = new FileInputStream(filename);
-               FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
+               channel = new FileInputStream(filename).getChannel();
             } 
                 catch (FileNotFoundException e)
                {
@@ -445,13 +610,25 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   retValue = -1;
                }
          } 
+         else if (flags == O_RDWR) // Open for reading and writing, creating if need be
+         {
+            try
+            {
+               channel = new RandomAccessFile(filename, "rw").getChannel();
+            } 
+                catch (FileNotFoundException e)
+               {
+                  fileErrorString = new String(
+                        "File " + filename + " not found, open for input and output.");
+                  retValue = -1;
+               }
+         }
          else if ( (flags & O_WRONLY) != 0 ) // Open for writing only
          {
             // Set up output stream to disk file
             try
             { 
-               outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0) );
-               FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
+               channel = new FileOutputStream(filename, ((flags & O_APPEND) != 0) ).getChannel();
             } 
                 catch (FileNotFoundException e)
                {
@@ -460,17 +637,120 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   retValue = -1;
                }
          }
+         if (retValue < 0)
+         {
+            files.close(fdToUse); // give back the file descriptor
+         }
+         else
+         {
+            files.setStreamInUse(fdToUse, new BufferedFileChannel(channel)); // Save channel for later use
+         }
          return retValue; // return the "file descriptor"
       
       }
    
+    /**
+     * Set the position in a file of the next read or write.  The position may be set
+     * past the end of the file; writing there fills the gap with zeroes.
+     *
+     * @param fd file descriptor of a file opened by openFile()
+     * @param offset offset, in bytes, from the place given by whence
+     * @param whence SEEK_SET (0) for the start of the file, SEEK_CUR (1) for the current
+     * position or SEEK_END (2) for the end of the file
+     * @return the new position, or -1 if error
+     */
+       public static int seekFile(int fd, int offset, int whence)
+      {
+         Object stream = (files.fdInUse(fd, O_RDONLY) || files.fdInUse(fd, O_WRONLY)) ? files.getStreamInUse(fd) : null;
+         if (!(stream instanceof BufferedFileChannel))
+         {
+            fileErrorString = new String(
+                    "File descriptor " + fd + " is not open for seeking");
+            return -1;
+         }
+         BufferedFileChannel channel = (BufferedFileChannel) stream;
+         try
+         {
+            long position;
+            if (whence == SEEK_SET) {
+               position = offset;
+            } 
+            else if (whence == SEEK_CUR) {
+               position = channel.position() + offset;
+            } 
+            else if (whence == SEEK_END) {
+               position = channel.size() + offset;
+            } 
+            else {
+               fileErrorString = new String(
+                    "Unknown seek origin " + whence + " for file with fd " + fd);
+               return -1;
+            }
+            if (position < 0 || position > Integer.MAX_VALUE)
+            {
+               fileErrorString = new String(
+                    "Seek position " + position + " out of range for file with fd " + fd);
+               return -1;
+            }
+            channel.position(position);
+            return (int) position;
+         } 
+             catch (IOException e)
+            {
+               fileErrorString = new String(
+                    "IO Exception on seek of file with fd " + fd);
+               return -1;
+            }
+      }
+   
+    /**
+     * Get the size, position and open flags of a file.  For standard input, output and
+     * error the size and position are 0.
+     *
+     * @param fd file descriptor
+     * @param status array to hold, in order, the size of the file in bytes, the current
+     * position, the flags it was opened with and 1 for a file opened by openFile() or 0
+     * for a standard stream
+     * @return 0, or -1 if error
+     */
+       public static int getFileStatus(int fd, long[] status)
+      {
+         if (!files.fdInUse(fd, O_RDONLY) && !files.fdInUse(fd, O_WRONLY))
+         {
+            fileErrorString = new String(
+                    "File descriptor " + fd + " is not open");
+            return -1;
+         }
+         Object stream = files.getStreamInUse(fd);
+         status[0] = 0;
+         status[1] = 0;
+         status[2] = files.getFlags(fd);
+         status[3] = 0;
+         if (stream instanceof BufferedFileChannel)
+         {
+            try
+            {
+               status[0] = ((BufferedFileChannel) stream).size();
+               status[1] = ((BufferedFileChannel) stream).position();
+               status[3] = 1;
+            } 
+                catch (IOException e)
+               {
+                  fileErrorString = new String(
+                       "IO Exception on status of file with fd " + fd);
+                  return -1;
+               }
+         }
+         return 0;
+      }
+   
     /** Close the file with specified file descriptor 
      *
      * @param fd the file descriptor of an open file
      */
        public static void closeFile(int fd)
       {
-         FileIOData.close(fd);
+         files.close(fd);
       }
    
     /** 
@@ -478,7 +758,75 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static void resetFiles()
       {
-         FileIOData.resetFiles();
+         files.resetFiles();
+      }
+   
+    /** 
+     * Write out what is buffered for every open file, leaving them open.  Done when
+     * the simulator stops short of the end of the program, so the files can be looked at.
+     */
+       public static void flushFiles()
+      {
+         files.flushFiles();
+      }
+   
+    /** 
+     * Set the streams used for standard input and output when running from the command
+     * line, in place of System.in and System.out.  Affects the read and print syscalls
+     * and reads and writes on file descriptors 0 and 1.  Has no effect in the IDE, where
+     * the Run I/O pane is used.
+     * @param input stream to read standard input from
+     * @param output stream to write standard output to
+     */
+       public static void setStandardStreams(InputStream input, PrintStream output)
+      {
+         flushStandardOutput();
+         standardInput = input;
+         standardOutput = output;
+         inputReader = null;
+         files.setStreamInUse(STDIN, input);
+         files.setStreamInUse(STDOUT, output);
+      }
+   
+    /** 
+     * Get the file descriptor table, standard streams and input reader, so they can
+     * be put back later by restoreFileState().  Used by SimulationContext when it
+     * switches from one context to another.  The table itself goes with the context,
+     * not a copy, so each context has descriptors of its own.  Open files stay open.
+     * @return object holding the file state, for restoreFileState()
+     */
+       public static Object saveFileState()
+      {
+         flushStandardOutput();
+         return new Object[] { files, inputReader, fileErrorString,
+                               standardInput, standardOutput };
+      }
+   
+    /** 
+     * Put back the file descriptor table, standard streams and input reader saved by
+     * saveFileState().  Given null, sets up a new table holding only the JVM's standard
+     * streams, without closing any files in the current table (they belong to the
+     * context being switched out).
+     * @param state object returned by saveFileState(), or null
+     */
+       public static void restoreFileState(Object state)
+      {
+         flushStandardOutput();
+         if (state == null) {
+            files = new FileIOData();
+            standardInput = System.in;
+            standardOutput = System.out;
+            files.setupStdio();
+            inputReader = null;
+            fileErrorString = "File operation OK";
+            return;
+         }
+         Object[] saved = (Object[]) state;
+         files = (FileIOData) saved[0];
+         inputReader = (BufferedReader) saved[1];
+         fileErrorString = (String) saved[2];
+         standardInput = (InputStream) saved[3];
+         standardOutput = (PrintStream) saved[4];
       }
    
      /**
@@ -498,135 +846,176 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
    	
        private static BufferedReader getInputReader() {
+         flushBeforeRead();
          if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));  
+            inputReader = new BufferedReader(new InputStreamReader(standardInput));  
          }
          return inputReader;
       }
+   
+      // Show the user any prompt they are to answer, unless the OutputFlushPolicy
+      // setting says to hold all output until the program stops.
+       private static void flushBeforeRead() {
+         if (!Settings.OUTPUT_FLUSH_ON_EXIT.equals(Globals.getSettings().getOutputFlushPolicy())) {
+            flushStandardOutput();
+         }
+      }
    	
    	
     // //////////////////////////////////////////////////////////////////////////////
     // Maintain information on files in use. The index to the arrays is the "file descriptor."
     // Ken Vollmar, August 2005
+    // The arrays grow as more files are opened, up to SYSCALL_MAXFILES.  The lowest free
+    // descriptor is found a word of the BitSet at a time rather than by scanning the
+    // table, and a filename is looked up in a HashMap.  Each simulation context has a
+    // table of its own; see saveFileState().
     
        private static class FileIOData
       {
-         private static String[] fileNames = new String[ SYSCALL_MAXFILES ]; // The filenames in use. Null if file descriptor i is not in use.
-         private static int[] fileFlags = new int[ SYSCALL_MAXFILES ]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-         private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+         private static final int INITIAL_FILES = 16;
+         private String[] fileNames = new String[ INITIAL_FILES ]; // The filenames in use. Null if file descriptor i is not in use.
+         private int[] fileFlags = new int[ INITIAL_FILES ]; // The flags of this file, 0=READ, 1=WRITE, 2=READ/WRITE. Invalid if this file descriptor is not in use.
+         private Object[] streams = new Object[ INITIAL_FILES ]; // The streams in use, associated with the filenames
+         private BitSet inUse = new BitSet(); // the file descriptors in use
+         private int lowestFree = 0; // no file descriptor below this one is free
+         private HashMap<String,Integer> descriptors = new HashMap<String,Integer>(); // file descriptor of each filename in use
       
         // Reset all file information. Closes any open files and resets the arrays
-          private static void resetFiles()
+          private void resetFiles()
          {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++)
+            for (int fd = inUse.nextSetBit(STDERR + 1); fd >= 0; fd = inUse.nextSetBit(fd + 1))
             {
-               close(i);
+               close(fd);
             }
             setupStdio();
          }
       	// DPS 8-Jan-2013
-          private static void setupStdio() {
-            fileNames[STDIN]  = "STDIN";
-            fileNames[STDOUT] = "STDOUT";
-            fileNames[STDERR] = "STDERR";
-            fileFlags[STDIN]  = SystemIO.O_RDONLY;
-            fileFlags[STDOUT] = SystemIO.O_WRONLY;
-            fileFlags[STDERR] = SystemIO.O_WRONLY;
-            streams[STDIN]  = System.in;
-            streams[STDOUT] = System.out;
-            streams[STDERR] = System.err;
-            System.out.flush();
+          private void setupStdio() {
+            enter(STDIN, "STDIN", SystemIO.O_RDONLY, standardInput);
+            enter(STDOUT, "STDOUT", SystemIO.O_WRONLY, standardOutput);
+            enter(STDERR, "STDERR", SystemIO.O_WRONLY, System.err);
+            flushStandardOutput();
             System.err.flush();
          }
       
+        // Put a file in the table, making the table larger if need be.
+          private void enter(int fd, String filename, int flag, Object stream)
+         {
+            if (fd >= fileNames.length)
+            {
+               int length = Math.max(2 * fileNames.length, fd + 1);
+               fileNames = Arrays.copyOf(fileNames, length);
+               fileFlags = Arrays.copyOf(fileFlags, length);
+               streams = Arrays.copyOf(streams, length);
+            }
+            if (fileNames[fd] != null)
+            {
+               descriptors.remove(fileNames[fd]);
+            }
+            fileNames[fd] = filename;
+            fileFlags[fd] = flag;
+            streams[fd] = stream;
+            descriptors.put(filename, Integer.valueOf(fd));
+            inUse.set(fd);
+            if (fd == lowestFree)
+            {
+               lowestFree = fd + 1;
+            }
+         }
+      
         // Preserve a stream that is in use
-          private static void setStreamInUse(int fd, Object s)
+          private void setStreamInUse(int fd, Object s)
          {
             streams[fd] = s;
          
          }
       
         // Retrieve a stream for use
-          private static Object getStreamInUse(int fd)
+          private Object getStreamInUse(int fd)
          {
             return streams[fd];
          
          }
       
+        // Retrieve the flags a file was opened with
+          private int getFlags(int fd)
+         {
+            return fileFlags[fd];
+         }
+      
         // Determine whether a given filename is already in use.
-          private static boolean filenameInUse(String requestedFilename)
+          private boolean filenameInUse(String requestedFilename)
          {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++)
-            {
-               if (fileNames[i] != null
-                        && fileNames[i].equals(requestedFilename))
-               {
-                    // System.out.println("Mars.SystemIO.FileIOData.filenameInUse: rtng TRUE for " + requestedFilename);
-                  return true;
-               }
-            }
-         
-            // System.out.println("Mars.SystemIO.FileIOData.filenameInUse: rtng TRUE for " + requestedFilename);
-            return false;
-         
+            return descriptors.containsKey(requestedFilename);
          }
       
         // Determine whether a given fd is already in use with the given flag.
-          private static boolean fdInUse(int fd, int flag)
+          private boolean fdInUse(int fd, int flag)
          {
-            if (fd < 0 || fd >= SYSCALL_MAXFILES)
+            if (fd < 0 || fd >= fileNames.length || fileNames[fd] == null)
             {
                return false;
             } 
-            else if (fileNames[fd] != null && fileFlags[fd] == 0 && flag == 0)
-            {  // O_RDONLY read-only
-               return true;
+            else if (flag == O_RDONLY)
+            {  // O_RDONLY read-only or O_RDWR read/write
+               return fileFlags[fd] == O_RDONLY || (fileFlags[fd] & O_RDWR) != 0;
+            }
+            else
+            {  // O_WRONLY write-only or O_RDWR read/write
+               return (fileFlags[fd] & (O_WRONLY | O_RDWR)) != 0;
             }
-            else if (fileNames[fd] != null && ((fileFlags[fd] & flag & O_WRONLY) == O_WRONLY) )
-            {  // O_WRONLY write-only
-               return true;
-            }         
-            return false;
          
          }
       
         // Close the file with file descriptor fd. No errors are recoverable -- if the user's
         // made an error in the call, it will come back to him.
-          private static void close(int fd)
+          private void close(int fd)
          {
             // Can't close STDIN, STDOUT, STDERR, or invalid fd
-            if (fd <= STDERR || fd >= SYSCALL_MAXFILES) 
+            if (fd <= STDERR || fd >= fileNames.length || fileNames[fd] == null) 
                return;
                
+            descriptors.remove(fileNames[fd]);
             fileNames[fd] = null;
+            fileFlags[fd] = -1;
+            inUse.clear(fd);
+            lowestFree = Math.min(lowestFree, fd);
          	// All this code will be executed only if the descriptor is open.
-            if (streams[fd] != null)
+            Object keepStream = streams[fd];
+            streams[fd] = null;
+            if (keepStream != null)
             {
-               int keepFlag = fileFlags[fd];
-               Object keepStream = streams[fd];
-               fileFlags[fd] = -1;
-               streams[fd] = null;
                try {
-                  if (keepFlag == O_RDONLY)
-                     ((FileInputStream)keepStream).close();
-                  else
-                     ((FileOutputStream)keepStream).close();
+                  ((Channel)keepStream).close(); // writes out what is buffered, closes its file stream
                } 
                    catch (IOException ioe) {
                   // not concerned with this exception
                   }
             } 
-            else {
-               fileFlags[fd] = -1; // just to be sure... streams[fd] known to be null
+         }
+      
+        // Write out what is buffered for every open file.
+          private void flushFiles()
+         {
+            for (int fd = inUse.nextSetBit(STDERR + 1); fd >= 0; fd = inUse.nextSetBit(fd + 1))
+            {
+               if (streams[fd] instanceof BufferedFileChannel)
+               {
+                  try {
+                     ((BufferedFileChannel)streams[fd]).flush();
+                  } 
+                      catch (IOException ioe) {
+                     // reported, if it persists, by the next write or close
+                     }
+               }
             }
          }
       
         // Attempt to open a new file with the given flag, using the lowest available file descriptor.
         // Check that filename is not in use, flag is reasonable, and there is an available file descriptor.
         // Return: file descriptor in 0...(SYSCALL_MAXFILES-1), or -1 if error
-          private static int nowOpening(String filename, int flag)
+          private int nowOpening(String filename, int flag)
          {
-            int i = 0;
             if (filenameInUse(filename))
             {
                fileErrorString = new String(
@@ -634,7 +1023,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                return -1;
             }
          
-            if (flag != O_RDONLY && flag != O_WRONLY && flag != (O_WRONLY | O_APPEND) ) // Only read and write are implemented
+            if (flag != O_RDONLY && flag != O_WRONLY && flag != (O_WRONLY | O_APPEND) && flag != O_RDWR ) // Only read, write and read/write are implemented
             {
                fileErrorString = new String(
                         "File name " + filename
@@ -642,10 +1031,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                return -1;
             }
          
-            while (fileNames[i] != null && i < SYSCALL_MAXFILES)
-            {
-               i++;
-            } // Attempt to find available file descriptor
+            int i = inUse.nextClearBit(lowestFree); // Attempt to find available file descriptor
          
             if (i >= SYSCALL_MAXFILES) // no available file descriptors
             {
@@ -657,8 +1043,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }    
          
             // Must be OK -- put filename in table
-            fileNames[i] = new String(filename); // our table has its own copy of filename
-            fileFlags[i] = flag;
+            enter(i, new String(filename), flag, null); // our table has its own copy of filename
+            lowestFree = i + 1;
             fileErrorString = new String("File operation OK");
             return i;
          
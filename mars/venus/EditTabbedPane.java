@@ -445,6 +445,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
        public void remove(EditPane editPane) {
          super.remove(editPane);
+         mars.assembler.Tokenizer.forgetLines(editPane.getPathname());
          editPane = getCurrentEditTab(); // is now next tab or null
          if (editPane == null) {
             FileStatus.set(FileStatus.NO_FILE);
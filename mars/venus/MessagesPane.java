@@ -5,6 +5,8 @@
    import java.awt.*;
    import java.awt.event.*;
    import java.util.concurrent.ArrayBlockingQueue;
+   import java.util.concurrent.ConcurrentLinkedQueue;
+   import java.util.concurrent.atomic.AtomicBoolean;
    import javax.swing.event.DocumentListener;
    import javax.swing.undo.UndoableEdit;
    import mars.simulator.Simulator;
@@ -52,9 +54,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// seems to slow things down as new text is appended).  Once it
    	// reaches MAXIMUM_SCROLLED_CHARACTERS in length then cut off 
    	// the first NUMBER_OF_CHARACTERS_TO_CUT characters.  The latter
-   	// must obviously be smaller than the former.
+   	// must obviously be smaller than the former.  The run area is
+   	// instead kept at MAXIMUM_SCROLLED_CHARACTERS; its RingBufferContent
+   	// cuts text from the front without moving the rest.
       public static final int MAXIMUM_SCROLLED_CHARACTERS = Globals.maximumMessageCharacters;
       public static final int NUMBER_OF_CHARACTERS_TO_CUT = Globals.maximumMessageCharacters/10 ; // 10%
+   	// Run messages wait in a queue until a timer on the event thread appends
+   	// all of them at once, at most once each RUN_OUTPUT_DELAY milliseconds.
+      private static final int RUN_OUTPUT_DELAY = 33; // about 30 times a second
+      private ConcurrentLinkedQueue<String> runOutput = new ConcurrentLinkedQueue<String>();
+      private AtomicBoolean runOutputScheduled = new AtomicBoolean(false);
+      private Timer runOutputTimer;
    
    /**
      *  Constructor for the class, sets up two fresh tabbed text areas for program feedback.
@@ -64,7 +74,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          super();
          this.setMinimumSize(new Dimension(0,0));
          assemble= new JTextArea();
-         run= new JTextArea();
+         run= new JTextArea(new PlainDocument(new RingBufferContent(MAXIMUM_SCROLLED_CHARACTERS + 1)));
          assemble.setEditable(false); 
          run.setEditable(false);
       	// Set both text areas to mono font.  For assemble
@@ -74,6 +84,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          Font monoFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
          assemble.setFont(monoFont);
          run.setFont(monoFont);      	
+         runOutputTimer = new Timer(RUN_OUTPUT_DELAY, 
+                new ActionListener() {
+                   public void actionPerformed(ActionEvent e){ 
+                     appendRunOutput();
+                  }
+               });
+         runOutputTimer.setRepeats(false);
       	
          JButton assembleTabClearButton = new JButton("Clear");
          assembleTabClearButton.setToolTipText("Clear the Mars Messages area");
@@ -292,32 +309,54 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *
    	 *  @param message String to append to runtime display text
    	 */
-   	// The work of this method is done by "invokeLater" because
+   	// The work of this method is done on the event thread because
    	// its JTextArea is maintained by the main event thread
    	// but also used, via this method, by the execution thread for 
-   	// "print" syscalls. "invokeLater" schedules the code to be
-   	// run under the event-processing thread no matter what.
-   	// DPS, 23 Aug 2005.
+   	// "print" syscalls.  DPS, 23 Aug 2005.
+   	// Messages are queued, and the first one queued since the last
+   	// append starts runOutputTimer, so a program printing in a tight
+   	// loop costs the event thread one append per timer period rather
+   	// than one per syscall.
        public void postRunMessage(String message) {
-         final String mess = message;
-         SwingUtilities.invokeLater(
-                new Runnable() { 
-                   public void run() { 
-                     setSelectedComponent(runTab);
-                     run.append(mess);
-                  // can do some crude cutting here.  If the document gets "very large", 
-                  // let's cut off the oldest text. This will limit scrolling but the limit 
-                  // can be set reasonably high.
-                     if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
-                        try {
-                           run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
-                        } 
-                            catch (BadLocationException ble) { 
-                           // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
-                           }
-                     }
-                  } 
-               });
+         runOutput.offer(message);
+         if (runOutputScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(
+                   new Runnable() { 
+                      public void run() { 
+                        runOutputTimer.restart();
+                     } 
+                  });
+         }
+      }
+   
+      // Append all queued run messages to the run display.  Must be called on the event
+   	// thread.  Anything posted after the flag is cleared starts the timer again.
+       private void appendRunOutput() {
+         runOutputScheduled.set(false);
+         StringBuilder text = new StringBuilder();
+         String message;
+         while ((message = runOutput.poll()) != null) {
+            text.append(message);
+         }
+         if (text.length() == 0) {
+            return;
+         }
+         setSelectedComponent(runTab);
+         // Text that would be cut at once is not appended at all.
+         if (text.length() >= MAXIMUM_SCROLLED_CHARACTERS) {
+            text.delete(0, text.length() - MAXIMUM_SCROLLED_CHARACTERS);
+            run.setText("");
+         }
+         run.append(text.toString());
+         int excess = run.getDocument().getLength() - MAXIMUM_SCROLLED_CHARACTERS;
+         if (excess > 0) {
+            try {
+               run.getDocument().remove(0, excess);
+            } 
+                catch (BadLocationException ble) { 
+               // cannot happen, excess is less than the length
+               }
+         }
       }
    	
    	/**
@@ -452,6 +491,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
             };
           public void run() { // must be invoked from the GUI thread
+            appendRunOutput(); // output before the input, so it is not taken as input
             setSelectedComponent(runTab);
             run.setEditable(true);
             run.requestFocusInWindow();
@@ -0,0 +1,307 @@
+   package mars.venus;
+   import javax.swing.text.*;
+   import javax.swing.undo.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2010,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Text storage for a document that grows at the end and is cut at the front, as the
+ * Run I/O area is.  The characters are kept in a circular buffer, so removing text
+ * from the front moves no characters, and appending moves none but those appended.
+ * Insertions and removals elsewhere move the characters after them, as in any array.
+ * <p>
+ * Positions are recorded by how many characters precede them since the content was
+ * made, counting those since removed from the front.  Removing from the front then
+ * changes no position: those in the removed text simply become offset 0, which no
+ * later change can move, and are forgotten.  The rest are kept in order, so an insert
+ * near the end updates only the few positions after it.
+ *
+ * @see MessagesPane
+ * @version October 2026
+ */
+
+    public class RingBufferContent implements AbstractDocument.Content {
+      private char[] buffer;
+      private int head;     // position in buffer of the first character
+      private int length;   // number of characters, including the final newline
+      private long removed; // number of characters ever removed from the front
+      private ArrayList<Mark> marks; // in order; those before "first" are forgotten
+      private int first;
+
+   /**
+    * Create content holding only the newline a document always ends with.
+    * @param capacity number of characters the content is expected to hold.  It will
+    * hold more if need be.
+    */
+       public RingBufferContent(int capacity) {
+         buffer = new char[Math.max(capacity, 16)];
+         buffer[0] = '\n';
+         length = 1;
+         marks = new ArrayList<Mark>();
+      }
+
+   /**
+    * Create a position that follows the text around it as text is inserted and removed.
+    * @param offset offset in the content
+    * @return the position
+    * @throws BadLocationException if offset is beyond the end of the content.
+    */
+       public Position createPosition(int offset) throws BadLocationException {
+         if (offset < 0 || offset > length) {
+            throw new BadLocationException("Invalid position", offset);
+         }
+         Mark mark = new Mark(removed + offset);
+         if (offset > 0) {
+            int low = first;
+            int high = marks.size();
+            while (low < high) {
+               int middle = (low + high) >>> 1;
+               if (marks.get(middle).index <= mark.index) {
+                  low = middle + 1;
+               }
+               else {
+                  high = middle;
+               }
+            }
+            marks.add(low, mark);
+         }
+         return mark;
+      }
+
+   /**
+    * @return number of characters, including the final newline.
+    */
+       public int length() {
+         return length;
+      }
+
+   /**
+    * Insert text.
+    * @param where offset at which to insert
+    * @param str the text
+    * @return edit to undo the insertion
+    * @throws BadLocationException if where is beyond the end of the content.
+    */
+       public UndoableEdit insertString(int where, String str) throws BadLocationException {
+         if (where < 0 || where > length) {
+            throw new BadLocationException("Invalid insert", where);
+         }
+         int count = str.length();
+         if (length + count > buffer.length) {
+            char[] larger = new char[Math.max(length + count, 2 * buffer.length)];
+            copyOut(0, length, larger, 0);
+            buffer = larger;
+            head = 0;
+         }
+         for (int i = length - 1; i >= where; i--) {
+            buffer[position(i + count)] = buffer[position(i)];
+         }
+         for (int i = 0; i < count; i++) {
+            buffer[position(where + i)] = str.charAt(i);
+         }
+         length += count;
+         // Positions at the insert move with the text after it, except at offset 0.
+         int from = Math.max(where, 1);
+         for (int i = marks.size() - 1; i >= first; i--) {
+            Mark mark = marks.get(i);
+            if (mark.getOffset() < from) {
+               break;
+            }
+            mark.index += count;
+         }
+         return new Edit(where, str, true);
+      }
+
+   /**
+    * Remove text.  Removing from the front takes the same time however long the
+    * content is.
+    * @param where offset of the first character to remove
+    * @param nitems number of characters to remove
+    * @return edit to undo the removal
+    * @throws BadLocationException if the range is not within the content, or includes
+    * the final newline.
+    */
+       public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+         if (where < 0 || nitems < 0 || where + nitems >= length) {
+            throw new BadLocationException("Invalid remove", length + 1);
+         }
+         String text = getString(where, nitems);
+         if (where == 0) {
+            head = position(nitems);
+            length -= nitems;
+            removed += nitems;
+            while (first < marks.size() && marks.get(first).index <= removed) {
+               marks.set(first++, null);
+            }
+            if (first > 64 && first > marks.size() / 2) {
+               marks.subList(0, first).clear();
+               first = 0;
+            }
+         }
+         else {
+            for (int i = where + nitems; i < length; i++) {
+               buffer[position(i - nitems)] = buffer[position(i)];
+            }
+            length -= nitems;
+            // Positions in the removed text go to where it was.
+            int end = where + nitems;
+            for (int i = marks.size() - 1; i >= first; i--) {
+               Mark mark = marks.get(i);
+               int offset = mark.getOffset();
+               if (offset >= end) {
+                  mark.index -= nitems;
+               }
+               else if (offset >= where) {
+                  mark.index = removed + where;
+               }
+               else {
+                  break;
+               }
+            }
+         }
+         return new Edit(where, text, false);
+      }
+
+   /**
+    * Get part of the text as a String.
+    * @param where offset of the first character
+    * @param len number of characters
+    * @return the text
+    * @throws BadLocationException if the range is not within the content.
+    */
+       public String getString(int where, int len) throws BadLocationException {
+         checkRange(where, len);
+         char[] chars = new char[len];
+         copyOut(where, len, chars, 0);
+         return new String(chars);
+      }
+
+   /**
+    * Get part of the text into a Segment.  The Segment refers to the buffer itself
+    * unless the text wraps around its end; then, if the Segment accepts part of the
+    * text, it gets the part up to the end of the buffer, and otherwise a copy.
+    * @param where offset of the first character
+    * @param len number of characters
+    * @param txt the Segment
+    * @throws BadLocationException if the range is not within the content.
+    */
+       public void getChars(int where, int len, Segment txt) throws BadLocationException {
+         checkRange(where, len);
+         int start = position(where);
+         if (start + len <= buffer.length) {
+            txt.array = buffer;
+            txt.offset = start;
+            txt.count = len;
+         }
+         else if (txt.isPartialReturn()) {
+            txt.array = buffer;
+            txt.offset = start;
+            txt.count = buffer.length - start;
+         }
+         else {
+            txt.array = new char[len];
+            copyOut(where, len, txt.array, 0);
+            txt.offset = 0;
+            txt.count = len;
+         }
+      }
+
+       private void checkRange(int where, int len) throws BadLocationException {
+         if (where < 0 || len < 0 || where + len > length) {
+            throw new BadLocationException("Invalid location", length + 1);
+         }
+      }
+
+    // Position in buffer of the character at the given offset.
+       private int position(int offset) {
+         int position = head + offset;
+         return (position >= buffer.length) ? position - buffer.length : position;
+      }
+
+    // Copy characters out of the buffer in order, in at most two pieces.
+       private void copyOut(int where, int len, char[] chars, int offset) {
+         int start = position(where);
+         int firstPart = Math.min(len, buffer.length - start);
+         System.arraycopy(buffer, start, chars, offset, firstPart);
+         System.arraycopy(buffer, 0, chars, offset + firstPart, len - firstPart);
+      }
+
+    // A position, counting characters removed from the front.  Once that count passes
+    // it, the position is at offset 0.
+       private class Mark implements Position {
+         long index;
+
+          Mark(long index) {
+            this.index = index;
+         }
+
+          public int getOffset() {
+            return (int) Math.max(0, index - removed);
+         }
+      }
+
+    // Edit that undoes an insert by removing the text, or a removal by inserting it.
+       private class Edit extends AbstractUndoableEdit {
+         private static final long serialVersionUID = 1L;
+         private int where;
+         private String text;
+         private boolean inserted;
+
+          Edit(int where, String text, boolean inserted) {
+            this.where = where;
+            this.text = text;
+            this.inserted = inserted;
+         }
+
+          public void undo() throws CannotUndoException {
+            super.undo();
+            change(inserted);
+         }
+
+          public void redo() throws CannotRedoException {
+            super.redo();
+            change(!inserted);
+         }
+
+          private void change(boolean remove) {
+            try {
+               if (remove) {
+                  RingBufferContent.this.remove(where, text.length());
+               }
+               else {
+                  insertString(where, text);
+               }
+            }
+                catch (BadLocationException e) {
+                  throw new CannotUndoException();
+               }
+         }
+      }
+   }
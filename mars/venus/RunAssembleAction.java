@@ -1,6 +1,7 @@
    package mars.venus;
    import mars.*;
    import mars.util.*;
+   import mars.assembler.*;
    import mars.mips.hardware.*;
    import java.util.*;
    import java.io.*;
@@ -92,13 +93,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                    Globals.getSettings().getExceptionHandler().length() > 0) {
                   exceptionHandler = Globals.getSettings().getExceptionHandler();
                }
-               MIPSprogramsToAssemble = Globals.program.prepareFilesForAssembly(filesToAssemble, FileStatus.getFile().getPath(), exceptionHandler);					
-               mainUI.messagesPane.postMarsMessage(buildFileNameList(name+": assembling ", MIPSprogramsToAssemble));
-               // added logic to receive any warnings and output them.... DPS 11/28/06
-               ErrorList warnings = Globals.program.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled,
-                                                             warningsAreErrors);
-               if (warnings.warningsOccurred()) {
-                  mainUI.messagesPane.postMarsMessage(warnings.generateWarningReport());
+               if (ObjectFile.isObjectFile(FileStatus.getFile().getPath())) {
+                  // already assembled, so load it as is
+                  MIPSprogramsToAssemble = Globals.program.loadObject(FileStatus.getFile().getPath());
+                  mainUI.messagesPane.postMarsMessage(name+": loading object file "+FileStatus.getFile().getPath()+"\n\n");
+               } 
+               else {
+                  MIPSprogramsToAssemble = Globals.program.loadFromAssemblyCache(filesToAssemble, 
+                                              FileStatus.getFile().getPath(), exceptionHandler, extendedAssemblerEnabled);
+                  if (MIPSprogramsToAssemble != null) {
+                     mainUI.messagesPane.postMarsMessage(buildFileNameList(name+": unchanged since assembled, loading ", MIPSprogramsToAssemble));
+                  }
+               }
+               if (MIPSprogramsToAssemble == null) {
+                  MIPSprogramsToAssemble = Globals.program.prepareFilesForAssembly(filesToAssemble, FileStatus.getFile().getPath(), exceptionHandler);					
+                  mainUI.messagesPane.postMarsMessage(buildFileNameList(name+": assembling ", MIPSprogramsToAssemble));
+                  // added logic to receive any warnings and output them.... DPS 11/28/06
+                  ErrorList warnings = Globals.program.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled,
+                                                                warningsAreErrors);
+                  if (warnings.warningsOccurred()) {
+                     mainUI.messagesPane.postMarsMessage(warnings.generateWarningReport());
+                  }
                }
                mainUI.messagesPane.postMarsMessage(
                           name+": operation completed successfully.\n\n");
@@ -57,19 +57,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	// 2. Simply re-assemble the program upon reset, and the assembler will 
       	//    build a new data segment.  Reset can only be done after a successful
       	//    assembly, so there is "no" chance of assembler error.
-      	// I am choosing the second approach although it will slow down the reset
-      	// operation.  The first approach requires additional Memory class methods.
-         try {
-            Globals.program.assemble(RunAssembleAction.getMIPSprogramsToAssemble(),
-				                         RunAssembleAction.getExtendedAssemblerEnabled(),
-												 RunAssembleAction.getWarningsAreErrors());
-         } 
-             catch (ProcessingException pe) {
-				 mainUI.getMessagesPane().postMarsMessage(
-				   //pe.errors().generateErrorReport());
-               "Unable to reset.  Please close file then re-open and re-assemble.\n");
-               return;
-            }
+      	// Originally the second approach.  Now the first reset re-assembles and takes a
+      	// copy-on-write snapshot of memory, and later resets restore it, which costs only
+      	// the blocks changed since.
+         if (!Globals.program.restoreAssembledMemory()) {
+            try {
+               Globals.program.assemble(RunAssembleAction.getMIPSprogramsToAssemble(),
+				                            RunAssembleAction.getExtendedAssemblerEnabled(),
+												    RunAssembleAction.getWarningsAreErrors());
+               Globals.program.saveAssembledMemory();
+            } 
+                catch (ProcessingException pe) {
+				    mainUI.getMessagesPane().postMarsMessage(
+				      //pe.errors().generateErrorReport());
+                  "Unable to reset.  Please close file then re-open and re-assemble.\n");
+                  return;
+               }
+         }
          RegisterFile.resetRegisters();
          Coprocessor1.resetRegisters();
          Coprocessor0.resetRegisters();
@@ -80,6 +84,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          executePane.getCoprocessor1Window().updateRegisters();
          executePane.getCoprocessor0Window().clearHighlighting();
 			executePane.getCoprocessor0Window().updateRegisters();
+			executePane.getDataSegmentWindow().updateValues();
 			executePane.getDataSegmentWindow().highlightCellForAddress(Memory.dataBaseAddress); 
          executePane.getDataSegmentWindow().clearHighlighting();
 			executePane.getTextSegmentWindow().resetModifiedSourceCode();